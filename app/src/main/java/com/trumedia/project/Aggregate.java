@@ -0,0 +1,73 @@
+package com.trumedia.project;
+
+public class Aggregate
+{
+	public enum Function { COUNT, SUM, AVG, MIN, MAX }
+
+	private final Function m_function;
+	private final String m_colName;
+	private final String m_name;
+
+	private Aggregate(Function function, String colName, String name)
+	{
+		m_function = function;
+		m_colName = colName;
+		m_name = name;
+	}
+
+	public static Aggregate count()
+	{
+		return new Aggregate(Function.COUNT, null, "count");
+	}
+
+	public static Aggregate count(String colName)
+	{
+		return new Aggregate(Function.COUNT, colName, "count_" + colName);
+	}
+
+	public static Aggregate sum(String colName)
+	{
+		return new Aggregate(Function.SUM, colName, "sum_" + colName);
+	}
+
+	public static Aggregate avg(String colName)
+	{
+		return new Aggregate(Function.AVG, colName, "avg_" + colName);
+	}
+
+	public static Aggregate min(String colName)
+	{
+		return new Aggregate(Function.MIN, colName, "min_" + colName);
+	}
+
+	public static Aggregate max(String colName)
+	{
+		return new Aggregate(Function.MAX, colName, "max_" + colName);
+	}
+
+	public Aggregate as(String name)
+	{
+		return new Aggregate(m_function, m_colName, name);
+	}
+
+	public Function getFunction()
+	{
+		return m_function;
+	}
+
+	public String getColName()
+	{
+		return m_colName;
+	}
+
+	public String getName()
+	{
+		return m_name;
+	}
+
+	@Override
+	public String toString()
+	{
+		return m_name + "=" + m_function + "(" + ((m_colName != null) ? m_colName : "*") + ")";
+	}
+}
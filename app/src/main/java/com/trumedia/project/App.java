@@ -2,12 +2,8 @@ package com.trumedia.project;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.time.LocalDate;
 
 import org.json.JSONObject;
 
@@ -15,21 +11,33 @@ public class App {
     public static void main(String[] args) {
         System.out.println("Hello world!");
         try {
-            testStatsAPI();
+            if (args.length >= 2) {
+                runIncremental(LocalDate.parse(args[0]), LocalDate.parse(args[1]), new File(args.length > 2 ? args[2] : "output"));
+            } else {
+                testStatsAPI();
+            }
         } catch (Exception e) {
             System.err.println("Something went wrong");
             e.printStackTrace();
         }
     }
 
-    private static void testStatsAPI() throws URISyntaxException, IOException, InterruptedException {
-        String isoDate = "2024-06-18";
-        var client = HttpClient.newBuilder().build();
-        var uri = new URI("https://statsapi.mlb.com/api/v1/schedule?sportId=1&date="+isoDate);
-        var request = HttpRequest.newBuilder(uri).build();
+    private static void runIncremental(LocalDate startDate, LocalDate endDate, File outputDir) throws IOException, InterruptedException {
+        try (var fetcher = new StatsApiFetcher()) {
+            fetcher.setCache(new HttpCache(Path.of(".statsapi-cache")));
+            var etl = new GameETL(fetcher, outputDir);
+            int processed = etl.run(startDate, endDate);
+            System.out.println("Processed "+processed+" new or changed games.");
+        }
+    }
 
-        var response = client.send(request, HttpResponse.BodyHandlers.ofString(Charset.defaultCharset()));
-        JSONObject scheduleData = new JSONObject(response.body());
+    private static void testStatsAPI() throws IOException, InterruptedException {
+        String isoDate = "2024-06-18";
+        JSONObject scheduleData;
+        try (var fetcher = new StatsApiFetcher()) {
+            fetcher.setCache(new HttpCache(Path.of(".statsapi-cache")));
+            scheduleData = fetcher.fetchSchedule(LocalDate.parse(isoDate));
+        }
         int gameCount = scheduleData.getInt("totalGames");
         System.out.println("Found "+gameCount+" total games on this date.");
 
@@ -0,0 +1,539 @@
+package com.trumedia.project;
+
+import java.util.Arrays;
+
+class Bitmap
+{
+	// roaring layout: row ids are split by their high 16 bits into containers, a sorted array while sparse and 64K bits once dense
+	private static final int ARRAY_MAX = 4096;
+
+	private char[] m_keys;
+	private Container[] m_containers;
+	private int m_size;
+
+	public Bitmap()
+	{
+		m_keys = new char[4];
+		m_containers = new Container[4];
+	}
+
+	public void add(int row)
+	{
+		char key = (char)(row >>> 16);
+		int pos = findKey(key);
+		if (pos < 0)
+		{
+			pos = -pos - 1;
+			insert(pos, key, new ArrayContainer(4));
+		}
+		m_containers[pos] = m_containers[pos].add((char)row);
+	}
+
+	public void remove(int row)
+	{
+		int pos = findKey((char)(row >>> 16));
+		if (pos < 0)
+			return;
+		Container container = m_containers[pos].remove((char)row);
+		if (container.getCardinality() == 0)
+		{
+			System.arraycopy(m_keys, pos + 1, m_keys, pos, m_size - pos - 1);
+			System.arraycopy(m_containers, pos + 1, m_containers, pos, m_size - pos - 1);
+			m_containers[--m_size] = null;
+		}
+		else
+		{
+			m_containers[pos] = container;
+		}
+	}
+
+	public boolean contains(int row)
+	{
+		int pos = findKey((char)(row >>> 16));
+		return pos >= 0 && m_containers[pos].contains((char)row);
+	}
+
+	public boolean isEmpty()
+	{
+		return m_size == 0;
+	}
+
+	public int getCardinality()
+	{
+		int cardinality = 0;
+		for (int i = 0; i < m_size; i++)
+		{
+			cardinality += m_containers[i].getCardinality();
+		}
+		return cardinality;
+	}
+
+	// ascending row ids
+	public IntList toIntList()
+	{
+		IntList rows = new IntList(getCardinality());
+		for (int i = 0; i < m_size; i++)
+		{
+			m_containers[i].addTo(m_keys[i] << 16, rows);
+		}
+		return rows;
+	}
+
+	public static Bitmap and(Bitmap a, Bitmap b)
+	{
+		Bitmap result = new Bitmap();
+		int i = 0;
+		int j = 0;
+		while (i < a.m_size && j < b.m_size)
+		{
+			if (a.m_keys[i] < b.m_keys[j])
+			{
+				i++;
+			}
+			else if (a.m_keys[i] > b.m_keys[j])
+			{
+				j++;
+			}
+			else
+			{
+				Container container = a.m_containers[i].and(b.m_containers[j]);
+				if (container.getCardinality() > 0)
+					result.insert(result.m_size, a.m_keys[i], container);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	public static Bitmap or(Bitmap a, Bitmap b)
+	{
+		Bitmap result = new Bitmap();
+		int i = 0;
+		int j = 0;
+		while (i < a.m_size || j < b.m_size)
+		{
+			if (j == b.m_size || (i < a.m_size && a.m_keys[i] < b.m_keys[j]))
+			{
+				result.insert(result.m_size, a.m_keys[i], a.m_containers[i].copy());
+				i++;
+			}
+			else if (i == a.m_size || a.m_keys[i] > b.m_keys[j])
+			{
+				result.insert(result.m_size, b.m_keys[j], b.m_containers[j].copy());
+				j++;
+			}
+			else
+			{
+				result.insert(result.m_size, a.m_keys[i], a.m_containers[i].or(b.m_containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	// the size of the intersection, without building it
+	public static int andCardinality(Bitmap a, Bitmap b)
+	{
+		int cardinality = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.m_size && j < b.m_size)
+		{
+			if (a.m_keys[i] < b.m_keys[j])
+			{
+				i++;
+			}
+			else if (a.m_keys[i] > b.m_keys[j])
+			{
+				j++;
+			}
+			else
+			{
+				cardinality += a.m_containers[i].andCardinality(b.m_containers[j]);
+				i++;
+				j++;
+			}
+		}
+		return cardinality;
+	}
+
+	private int findKey(char key)
+	{
+		// rows mostly arrive in ascending order, so the last container is checked first
+		if (m_size > 0 && m_keys[m_size - 1] == key)
+			return m_size - 1;
+		int low = 0;
+		int high = m_size - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			if (m_keys[mid] < key)
+				low = mid + 1;
+			else if (m_keys[mid] > key)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	private void insert(int pos, char key, Container container)
+	{
+		if (m_size == m_keys.length)
+		{
+			m_keys = Arrays.copyOf(m_keys, m_size * 2);
+			m_containers = Arrays.copyOf(m_containers, m_size * 2);
+		}
+		System.arraycopy(m_keys, pos, m_keys, pos + 1, m_size - pos);
+		System.arraycopy(m_containers, pos, m_containers, pos + 1, m_size - pos);
+		m_keys[pos] = key;
+		m_containers[pos] = container;
+		m_size++;
+	}
+
+	private abstract static class Container
+	{
+		// add and remove return the container to keep, which changes kind when it crosses the density threshold
+		public abstract Container add(char value);
+
+		public abstract Container remove(char value);
+
+		public abstract boolean contains(char value);
+
+		public abstract int getCardinality();
+
+		public abstract Container and(Container other);
+
+		public abstract Container or(Container other);
+
+		public abstract int andCardinality(Container other);
+
+		public abstract Container copy();
+
+		public abstract void addTo(int high, IntList rows);
+	}
+
+	private static final class ArrayContainer extends Container
+	{
+		private char[] m_values;
+		private int m_count;
+
+		public ArrayContainer(int capacity)
+		{
+			m_values = new char[capacity];
+		}
+
+		private ArrayContainer(char[] values, int count)
+		{
+			m_values = values;
+			m_count = count;
+		}
+
+		@Override
+		public Container add(char value)
+		{
+			int pos = (m_count > 0 && m_values[m_count - 1] < value) ? -(m_count + 1) : Arrays.binarySearch(m_values, 0, m_count, value);
+			if (pos >= 0)
+				return this;
+			if (m_count >= ARRAY_MAX)
+				return toBitmap().add(value);
+			pos = -pos - 1;
+			if (m_count == m_values.length)
+				m_values = Arrays.copyOf(m_values, Math.min(Math.max(m_count * 2, 4), ARRAY_MAX));
+			System.arraycopy(m_values, pos, m_values, pos + 1, m_count - pos);
+			m_values[pos] = value;
+			m_count++;
+			return this;
+		}
+
+		@Override
+		public Container remove(char value)
+		{
+			int pos = Arrays.binarySearch(m_values, 0, m_count, value);
+			if (pos >= 0)
+			{
+				System.arraycopy(m_values, pos + 1, m_values, pos, m_count - pos - 1);
+				m_count--;
+			}
+			return this;
+		}
+
+		@Override
+		public boolean contains(char value)
+		{
+			return Arrays.binarySearch(m_values, 0, m_count, value) >= 0;
+		}
+
+		@Override
+		public int getCardinality()
+		{
+			return m_count;
+		}
+
+		@Override
+		public Container and(Container other)
+		{
+			char[] values = new char[m_count];
+			int count = 0;
+			if (other instanceof BitmapContainer)
+			{
+				BitmapContainer bitmap = (BitmapContainer)other;
+				for (int i = 0; i < m_count; i++)
+				{
+					if (bitmap.contains(m_values[i]))
+						values[count++] = m_values[i];
+				}
+			}
+			else
+			{
+				ArrayContainer array = (ArrayContainer)other;
+				int i = 0;
+				int j = 0;
+				while (i < m_count && j < array.m_count)
+				{
+					if (m_values[i] < array.m_values[j])
+						i++;
+					else if (m_values[i] > array.m_values[j])
+						j++;
+					else
+					{
+						values[count++] = m_values[i];
+						i++;
+						j++;
+					}
+				}
+			}
+			return new ArrayContainer(values, count);
+		}
+
+		@Override
+		public Container or(Container other)
+		{
+			if (other instanceof BitmapContainer)
+				return other.or(this);
+			ArrayContainer array = (ArrayContainer)other;
+			char[] values = new char[m_count + array.m_count];
+			int count = 0;
+			int i = 0;
+			int j = 0;
+			while (i < m_count || j < array.m_count)
+			{
+				if (j == array.m_count || (i < m_count && m_values[i] < array.m_values[j]))
+					values[count++] = m_values[i++];
+				else if (i == m_count || m_values[i] > array.m_values[j])
+					values[count++] = array.m_values[j++];
+				else
+				{
+					values[count++] = m_values[i++];
+					j++;
+				}
+			}
+			ArrayContainer result = new ArrayContainer(values, count);
+			return (count > ARRAY_MAX) ? result.toBitmap() : result;
+		}
+
+		@Override
+		public int andCardinality(Container other)
+		{
+			int cardinality = 0;
+			if (other instanceof BitmapContainer)
+			{
+				BitmapContainer bitmap = (BitmapContainer)other;
+				for (int i = 0; i < m_count; i++)
+				{
+					if (bitmap.contains(m_values[i]))
+						cardinality++;
+				}
+				return cardinality;
+			}
+			ArrayContainer array = (ArrayContainer)other;
+			int i = 0;
+			int j = 0;
+			while (i < m_count && j < array.m_count)
+			{
+				if (m_values[i] < array.m_values[j])
+					i++;
+				else if (m_values[i] > array.m_values[j])
+					j++;
+				else
+				{
+					cardinality++;
+					i++;
+					j++;
+				}
+			}
+			return cardinality;
+		}
+
+		@Override
+		public Container copy()
+		{
+			return new ArrayContainer(Arrays.copyOf(m_values, m_count), m_count);
+		}
+
+		@Override
+		public void addTo(int high, IntList rows)
+		{
+			for (int i = 0; i < m_count; i++)
+			{
+				rows.add(high | m_values[i]);
+			}
+		}
+
+		private BitmapContainer toBitmap()
+		{
+			BitmapContainer bitmap = new BitmapContainer();
+			for (int i = 0; i < m_count; i++)
+			{
+				bitmap.add(m_values[i]);
+			}
+			return bitmap;
+		}
+	}
+
+	private static final class BitmapContainer extends Container
+	{
+		private final long[] m_words;
+		private int m_cardinality;
+
+		public BitmapContainer()
+		{
+			m_words = new long[1024];
+		}
+
+		private BitmapContainer(long[] words, int cardinality)
+		{
+			m_words = words;
+			m_cardinality = cardinality;
+		}
+
+		@Override
+		public Container add(char value)
+		{
+			long bit = 1L << value;
+			if ((m_words[value >>> 6] & bit) == 0)
+			{
+				m_words[value >>> 6] |= bit;
+				m_cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		public Container remove(char value)
+		{
+			long bit = 1L << value;
+			if ((m_words[value >>> 6] & bit) != 0)
+			{
+				m_words[value >>> 6] &= ~bit;
+				m_cardinality--;
+			}
+			// back to an array only well below the threshold, so a value going in and out does not flip it every time
+			return (m_cardinality <= ARRAY_MAX / 2) ? toArray() : this;
+		}
+
+		@Override
+		public boolean contains(char value)
+		{
+			return (m_words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		public int getCardinality()
+		{
+			return m_cardinality;
+		}
+
+		@Override
+		public Container and(Container other)
+		{
+			if (other instanceof ArrayContainer)
+				return other.and(this);
+			long[] otherWords = ((BitmapContainer)other).m_words;
+			long[] words = new long[1024];
+			int cardinality = 0;
+			for (int i = 0; i < words.length; i++)
+			{
+				words[i] = m_words[i] & otherWords[i];
+				cardinality += Long.bitCount(words[i]);
+			}
+			BitmapContainer result = new BitmapContainer(words, cardinality);
+			return (cardinality <= ARRAY_MAX) ? result.toArray() : result;
+		}
+
+		@Override
+		public Container or(Container other)
+		{
+			long[] words = m_words.clone();
+			if (other instanceof ArrayContainer)
+			{
+				BitmapContainer result = new BitmapContainer(words, m_cardinality);
+				ArrayContainer array = (ArrayContainer)other;
+				for (int i = 0; i < array.m_count; i++)
+				{
+					result.add(array.m_values[i]);
+				}
+				return result;
+			}
+			long[] otherWords = ((BitmapContainer)other).m_words;
+			int cardinality = 0;
+			for (int i = 0; i < words.length; i++)
+			{
+				words[i] |= otherWords[i];
+				cardinality += Long.bitCount(words[i]);
+			}
+			return new BitmapContainer(words, cardinality);
+		}
+
+		@Override
+		public int andCardinality(Container other)
+		{
+			if (other instanceof ArrayContainer)
+				return other.andCardinality(this);
+			long[] otherWords = ((BitmapContainer)other).m_words;
+			int cardinality = 0;
+			for (int i = 0; i < m_words.length; i++)
+			{
+				cardinality += Long.bitCount(m_words[i] & otherWords[i]);
+			}
+			return cardinality;
+		}
+
+		@Override
+		public Container copy()
+		{
+			return new BitmapContainer(m_words.clone(), m_cardinality);
+		}
+
+		@Override
+		public void addTo(int high, IntList rows)
+		{
+			for (int i = 0; i < m_words.length; i++)
+			{
+				long word = m_words[i];
+				while (word != 0)
+				{
+					rows.add(high | (i << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+		}
+
+		private ArrayContainer toArray()
+		{
+			ArrayContainer array = new ArrayContainer(Math.max(m_cardinality, 4));
+			for (int i = 0; i < m_words.length; i++)
+			{
+				long word = m_words[i];
+				while (word != 0)
+				{
+					array.m_values[array.m_count++] = (char)((i << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return array;
+		}
+	}
+}
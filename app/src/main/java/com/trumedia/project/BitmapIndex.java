@@ -0,0 +1,68 @@
+package com.trumedia.project;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+import com.trumedia.project.CSVData.IndexType;
+
+class BitmapIndex extends Index
+{
+	// one compressed row bitmap per distinct value, for low-cardinality columns; removed lines are dropped right away
+	private final NavigableMap<String,Bitmap> m_values;
+
+	public BitmapIndex(int colIndex)
+	{
+		super(colIndex);
+		m_values = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	}
+
+	@Override
+	public IndexType getType()
+	{
+		return IndexType.BITMAP;
+	}
+
+	@Override
+	public void add(int row, String value)
+	{
+		Bitmap rows = m_values.get(value);
+		if (rows == null)
+		{
+			rows = new Bitmap();
+			m_values.put(value, rows);
+		}
+		rows.add(row);
+	}
+
+	@Override
+	public void remove(int row, String value)
+	{
+		Bitmap rows = m_values.get(value);
+		if (rows != null)
+		{
+			rows.remove(row);
+			if (rows.isEmpty())
+				m_values.remove(value);
+		}
+	}
+
+	@Override
+	public IntList find(String value)
+	{
+		Bitmap rows = m_values.get(value);
+		return (rows != null) ? rows.toIntList() : new IntList(0);
+	}
+
+	// rows with a value equal to the given one ignoring case, or null when there are none
+	public Bitmap findBitmap(String value)
+	{
+		return m_values.get(value);
+	}
+
+	@Override
+	public void forEach(BiConsumer<String,IntList> action)
+	{
+		m_values.forEach((value, rows) -> action.accept(value, rows.toIntList()));
+	}
+}
@@ -0,0 +1,38 @@
+package com.trumedia.project;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+class ByteBufferInputStream extends InputStream
+{
+	private final ByteBuffer m_buffer;
+
+	public ByteBufferInputStream(ByteBuffer buffer)
+	{
+		m_buffer = buffer;
+	}
+
+	@Override
+	public int read()
+	{
+		return m_buffer.hasRemaining() ? (m_buffer.get() & 0xFF) : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len)
+	{
+		if (len == 0)
+			return 0;
+		if (!m_buffer.hasRemaining())
+			return -1;
+		int count = Math.min(len, m_buffer.remaining());
+		m_buffer.get(b, off, count);
+		return count;
+	}
+
+	@Override
+	public int available()
+	{
+		return m_buffer.remaining();
+	}
+}
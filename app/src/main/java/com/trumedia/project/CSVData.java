@@ -1,30 +1,69 @@
 package com.trumedia.project;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 import java.util.TreeMap;
 
 public class CSVData
 {
 	public enum SortType { STRING, NUMBER }
+	public enum ColumnType { STRING, INT, LONG, DOUBLE, BOOLEAN, DICTIONARY }
+	public enum IndexType { SORTED, HASH, NUMERIC, BITMAP }
+	public enum JoinType { INNER, LEFT, SEMI }
+
+	private static final int ESTIMATE_SAMPLE_ROWS = 256;
+	private static final int MIN_COMPACTION_ROWS = 1024;
 
 	private final Header m_header;
-	private final List<Line> m_lines;
+	private Storage m_storage;
+	private final IntList m_order;
 	private final Index[] m_indexes;
+	private final List<CompositeIndex> m_compositeIndexes;
+	private final BitSet m_deleted;
+	private int m_deletedCount;
+	private int m_pendingRemovals;
+	private double m_compactionThreshold;
+	private int m_generation;
+	private int m_modCount;
+	private boolean m_trimValues;
 
 	public CSVData(String[] headerCols)
+	{
+		this(headerCols, (ColumnType[])null);
+	}
+
+	public CSVData(String[] headerCols, ColumnType[] colTypes)
+	{
+		this(headerCols, createStorage(headerCols, colTypes));
+	}
+
+	private CSVData(String[] headerCols, Storage storage)
 	{
 		m_header = new Header(headerCols);
-		m_lines = new ArrayList<Line>();
+		m_storage = storage;
+		m_order = new IntList();
 		m_indexes = new Index[headerCols.length];
+		m_compositeIndexes = new ArrayList<CompositeIndex>();
+		m_deleted = new BitSet();
+	}
+
+	public CSVData(CSVSchema schema)
+	{
+		this(schema.getNameArr(), schema.getTypeArr());
 	}
 
 	public CSVData(Collection<String> headerCols)
@@ -34,7 +73,7 @@ public class CSVData
 
 	public CSVData(Header header)
 	{
-		this(header.m_cols);
+		this(header.m_cols, header.getCSV().getColTypes());
 	}
 
 	public CSVData(Header header, Line line)
@@ -49,40 +88,93 @@ public class CSVData
 		addLines(lines);
 	}
 
+	private static Storage createStorage(String[] headerCols, ColumnType[] colTypes)
+	{
+		if (colTypes == null)
+			return new RowStorage(headerCols.length, 16);
+		if (colTypes.length != headerCols.length)
+			throw new IllegalArgumentException("Expected " + headerCols.length + " column types, got " + colTypes.length);
+		return new ColumnarStorage(colTypes, 16);
+	}
+
+	public static CSVData createOffHeap(String[] headerCols, ColumnType[] colTypes)
+	{
+		// values live in memory-mapped temp files at fixed offsets per row and are decoded each time they are read
+		if (colTypes == null)
+		{
+			colTypes = new ColumnType[headerCols.length];
+			Arrays.fill(colTypes, ColumnType.STRING);
+		}
+		if (colTypes.length != headerCols.length)
+			throw new IllegalArgumentException("Expected " + headerCols.length + " column types, got " + colTypes.length);
+		return new CSVData(headerCols, new OffHeapStorage(colTypes, 16));
+	}
+
+	public static CSVData loadSnapshot(Path path) throws IOException
+	{
+		// columns are decoded from the mapped file the first time they are read
+		Snapshot snapshot = Snapshot.read(path);
+		CSVData csv = new CSVData(snapshot.getColNames(), snapshot.getStorage());
+		int rows = snapshot.getStorage().getRowCount();
+		csv.m_order.ensureCapacity(rows);
+		for (int row = 0; row < rows; row++)
+		{
+			csv.m_order.add(row);
+		}
+		Index[] indexes = snapshot.getIndexes();
+		for (int i = 0; i < indexes.length && i < csv.m_indexes.length; i++)
+		{
+			csv.m_indexes[i] = indexes[i];
+		}
+		csv.m_compositeIndexes.addAll(snapshot.getCompositeIndexes());
+		return csv;
+	}
+
+	public void saveSnapshot(Path path) throws IOException
+	{
+		saveSnapshot(path, true);
+	}
+
+	public void saveSnapshot(Path path, boolean includeIndexes) throws IOException
+	{
+		// live rows in line order, so the loaded copy starts out compacted
+		Snapshot.write(path, m_header.getNameArr(), m_storage, order(), includeIndexes ? m_indexes : null, includeIndexes ? m_compositeIndexes : null);
+	}
+
 	public Line addLine(String[] cols)
 	{
-		Line line = new Line(cols);
-		m_lines.add(line);
+		Line line = new Line(m_storage.addRow(m_trimValues ? trimValues(cols) : cols));
+		m_order.add(line.m_row);
+		m_modCount++;
 		for (Index index : m_indexes)
 		{
 			if (index != null)
 			{
-				index.addLine(line);
+				index.add(line.m_row, line.getColValue(index.getColIndex()));
 			}
 		}
+		for (CompositeIndex composite : m_compositeIndexes)
+		{
+			composite.add(line.m_row, compositeKey(composite, line.m_row));
+		}
 		return line;
 	}
 
 	public Line addLine(Map<String,String> cols)
 	{
-		Line line = addEmptyLine();
+		String[] values = new String[m_header.getColCount()];
 		for (Map.Entry<String,String> entry : cols.entrySet())
 		{
-			line.setValue(entry.getKey(), entry.getValue());
-		}
-		for (Index index : m_indexes)
-		{
-			if (index != null)
-			{
-				index.addLine(line);
-			}
+			int index = m_header.getColIndex(entry.getKey());
+			if (index >= 0)
+				values[index] = entry.getValue();
 		}
-		return line;
+		return addLine(values);
 	}
 
 	public Line addLine(Line line)
 	{
-		return addLine(line.m_cols);
+		return addLine(line.getColumns());
 	}
 
 	public void addLines(Collection<Line> lines)
@@ -96,25 +188,47 @@ public class CSVData
 		}
 	}
 
+	void appendRows(Collection<List<String[]>> chunks)
+	{
+		// bulk load: indexes are rebuilt once at the end instead of per line
+		int total = m_order.size();
+		for (List<String[]> chunk : chunks)
+		{
+			total += chunk.size();
+		}
+		m_order.ensureCapacity(total);
+		for (List<String[]> chunk : chunks)
+		{
+			for (String[] cols : chunk)
+			{
+				m_order.add(m_storage.addRow(m_trimValues ? trimValues(cols) : cols));
+			}
+		}
+		m_modCount++;
+		reindex();
+	}
+
 	public Line addEmptyLine()
 	{
-		Line line = new Line();
-		m_lines.add(line);
-		return line;
+		return addLine(new String[0]);
 	}
 
 	public boolean removeLine(Line line)
 	{
-		if (line != null)
+		// O(1): the row is tombstoned, dropped from the line order lazily and from storage and indexes on compact()
+		if (line != null && line.getCSV() == this && line.m_row >= 0 && line.m_generation == m_generation)
 		{
-			if (m_lines.remove(line))
+			if (!m_deleted.get(line.m_row))
 			{
+				m_deleted.set(line.m_row);
+				m_deletedCount++;
+				m_pendingRemovals++;
+				m_modCount++;
+				// bitmap indexes drop the row right away, so their counts never have to look at tombstones
 				for (Index index : m_indexes)
 				{
-					if (index != null)
-					{
-						index.removeLine(line);
-					}
+					if (index instanceof BitmapIndex)
+						index.remove(line.m_row, line.getColValue(index.getColIndex()));
 				}
 				return true;
 			}
@@ -122,6 +236,144 @@ public class CSVData
 		return false;
 	}
 
+	public void compact()
+	{
+		// rebuilds storage and indexes from the live rows in line order; lines obtained before this are no longer valid
+		IntList order = order();
+		Storage storage = m_storage.createEmpty(order.size());
+		String[] values = new String[getColCount()];
+		for (int i = 0; i < order.size(); i++)
+		{
+			int row = order.get(i);
+			for (int col = 0; col < values.length; col++)
+			{
+				values[col] = m_storage.getValue(row, col);
+			}
+			storage.addRow(values);
+		}
+		m_storage = storage;
+		m_order.clear();
+		m_order.ensureCapacity(storage.getRowCount());
+		for (int row = 0; row < storage.getRowCount(); row++)
+		{
+			m_order.add(row);
+		}
+		m_deleted.clear();
+		m_deletedCount = 0;
+		m_pendingRemovals = 0;
+		m_generation++;
+		m_modCount++;
+		reindex();
+	}
+
+	public void setCompactionThreshold(double deletedFraction)
+	{
+		// off by default: once set above zero, removeMatchingLines compacts when this fraction of stored rows are tombstones,
+		// which invalidates every Line obtained before the call just like compact()
+		m_compactionThreshold = deletedFraction;
+	}
+
+	public void setTrimValues(boolean trimValues)
+	{
+		// values are stored without surrounding whitespace from here on, so reads never have to trim and files are written trimmed
+		if (trimValues && !m_trimValues)
+		{
+			for (int row = 0; row < m_storage.getRowCount(); row++)
+			{
+				for (int col = 0; col < getColCount(); col++)
+				{
+					String value = m_storage.getValue(row, col);
+					if (value != null && value.trim() != value)
+						m_storage.setValue(row, col, value.trim());
+				}
+			}
+		}
+		m_trimValues = trimValues;
+	}
+
+	public boolean isTrimValues()
+	{
+		return m_trimValues;
+	}
+
+	private static String[] trimValues(String[] cols)
+	{
+		// copies only when something needs trimming, index keys are trimmed already so they stay valid
+		String[] trimmed = cols;
+		for (int i = 0; i < cols.length; i++)
+		{
+			if (cols[i] != null && cols[i].trim() != cols[i])
+			{
+				if (trimmed == cols)
+					trimmed = cols.clone();
+				trimmed[i] = cols[i].trim();
+			}
+		}
+		return trimmed;
+	}
+
+	private void compactIfNeeded()
+	{
+		if (m_compactionThreshold > 0 && m_deletedCount >= MIN_COMPACTION_ROWS && m_deletedCount >= m_compactionThreshold * m_storage.getRowCount())
+			compact();
+	}
+
+	private IntList order()
+	{
+		// purge tombstoned rows from the line order in a single pass
+		if (m_pendingRemovals > 0)
+		{
+			int[] rows = m_order.rawArray();
+			int size = m_order.size();
+			int kept = 0;
+			for (int i = 0; i < size; i++)
+			{
+				if (!m_deleted.get(rows[i]))
+					rows[kept++] = rows[i];
+			}
+			m_order.truncate(kept);
+			m_pendingRemovals = 0;
+		}
+		return m_order;
+	}
+
+	Storage getStorage()
+	{
+		return m_storage;
+	}
+
+	int[] getLiveRows()
+	{
+		return order().toArray();
+	}
+
+	int[] getSampleRows(int count)
+	{
+		// live rows spread evenly over the line order
+		IntList order = order();
+		int rows = order.size();
+		int[] sample = new int[Math.min(rows, count)];
+		for (int i = 0; i < sample.length; i++)
+		{
+			sample[i] = order.get((int)((long)i * rows / sample.length));
+		}
+		return sample;
+	}
+
+	private IntList liveRows(IntList rows)
+	{
+		if (m_deletedCount == 0)
+			return rows;
+		IntList live = new IntList(rows.size());
+		for (int i = 0; i < rows.size(); i++)
+		{
+			int row = rows.get(i);
+			if (!m_deleted.get(row))
+				live.add(row);
+		}
+		return live;
+	}
+
 	public Header getHeader()
 	{
 		return m_header;
@@ -129,7 +381,97 @@ public class CSVData
 
 	public List<Line> getLines()
 	{
-		return Collections.unmodifiableList(m_lines);
+		return new LineList(null);
+	}
+
+	public ColumnType getColType(int index)
+	{
+		return m_storage.getColType(index);
+	}
+
+	public CSVSchema getSchema()
+	{
+		ColumnType[] types = new ColumnType[getColCount()];
+		for (int i = 0; i < types.length; i++)
+		{
+			types[i] = m_storage.getColType(i);
+		}
+		return new CSVSchema(m_header.getNameArr(), types);
+	}
+
+	public CSVSchema inferSchema()
+	{
+		return CSVSchema.infer(this);
+	}
+
+	public void applySchema(CSVSchema schema)
+	{
+		// converts to typed columns in place, row ids are kept so lines and indexes stay valid
+		ColumnType[] types = schema.getTypesFor(m_header.getNameArr());
+		m_storage = copyRows(new ColumnarStorage(types, m_storage.getRowCount()));
+	}
+
+	public void encodeDictionary(String ... headers)
+	{
+		// each distinct value is kept once per column and rows hold an int code, row ids are kept
+		ColumnType[] types = new ColumnType[getColCount()];
+		for (int i = 0; i < types.length; i++)
+		{
+			types[i] = m_storage.getColType(i);
+		}
+		for (String header : headers)
+		{
+			int headerIndex = m_header.getColIndex(header);
+			if (headerIndex < 0)
+				throw new IllegalArgumentException("Unknown column '" + header + "'");
+			types[headerIndex] = ColumnType.DICTIONARY;
+		}
+		int rows = m_storage.getRowCount();
+		m_storage = copyRows((m_storage instanceof OffHeapStorage) ? new OffHeapStorage(types, rows) : new ColumnarStorage(types, rows));
+	}
+
+	private Storage copyRows(Storage storage)
+	{
+		String[] values = new String[getColCount()];
+		for (int row = 0; row < m_storage.getRowCount(); row++)
+		{
+			for (int col = 0; col < values.length; col++)
+			{
+				values[col] = m_storage.getValue(row, col);
+			}
+			storage.addRow(values);
+		}
+		return storage;
+	}
+
+	public void moveOffHeap()
+	{
+		// same column types, row ids are kept so lines and indexes stay valid
+		if (m_storage instanceof OffHeapStorage)
+			return;
+		ColumnType[] types = new ColumnType[getColCount()];
+		for (int i = 0; i < types.length; i++)
+		{
+			types[i] = m_storage.getColType(i);
+		}
+		m_storage = copyRows(new OffHeapStorage(types, m_storage.getRowCount()));
+	}
+
+	public boolean isOffHeap()
+	{
+		return m_storage instanceof OffHeapStorage;
+	}
+
+	public ColumnType[] getColTypes()
+	{
+		if (m_storage instanceof RowStorage)
+			return null;
+		ColumnType[] types = new ColumnType[getColCount()];
+		for (int i = 0; i < types.length; i++)
+		{
+			types[i] = m_storage.getColType(i);
+		}
+		return types;
 	}
 
 	public int getColCount()
@@ -139,25 +481,59 @@ public class CSVData
 
 	public int getLineCount()
 	{
-		return m_lines.size();
+		return m_order.size() - m_pendingRemovals;
 	}
 
 	public boolean isEmpty()
 	{
-		return m_lines.isEmpty();
+		return getLineCount() == 0;
 	}
 
 	public void sort(SortCriteria sortCriteria)
 	{
-		Collections.sort(m_lines, new LineComparator(sortCriteria));
+		// typed keys are extracted once per row, then positions are sorted comparing primitives only
+		IntList order = order();
+		int size = order.size();
+		List<SortKey> keyList = new ArrayList<SortKey>();
+		for (SortCriteria criteria = sortCriteria; criteria != null; criteria = criteria.m_nextCriteria)
+		{
+			keyList.add(new SortKey(criteria, order));
+		}
+		SortKey[] keys = keyList.toArray(new SortKey[keyList.size()]);
+		int[] positions = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			positions[i] = i;
+		}
+		RowSorter.sort(positions, size, (a, b) ->
+		{
+			for (SortKey key : keys)
+			{
+				int comp = key.compare(a, b);
+				if (comp != SortKey.NEXT_CRITERIA)
+					return comp;
+			}
+			return 0;
+		}, true);
+		int[] rows = order.toArray();
+		for (int i = 0; i < size; i++)
+		{
+			order.set(i, rows[positions[i]]);
+		}
+		m_modCount++;
 	}
 
 	public void addIndex(String header)
+	{
+		addIndex(header, IndexType.SORTED);
+	}
+
+	public void addIndex(String header, IndexType type)
 	{
 		int headerIndex = m_header.getColIndex(header);
-		if (headerIndex >= 0 && m_indexes[headerIndex] == null)
+		if (headerIndex >= 0 && (m_indexes[headerIndex] == null || m_indexes[headerIndex].getType() != type))
 		{
-			m_indexes[headerIndex] = new Index(headerIndex);
+			m_indexes[headerIndex] = buildIndex(type, headerIndex);
 		}
 	}
 
@@ -167,9 +543,166 @@ public class CSVData
 		{
 			if (m_indexes[i] != null)
 			{
-				m_indexes[i] = new Index(i);
+				m_indexes[i] = buildIndex(m_indexes[i].getType(), i);
 			}
 		}
+		for (int i = 0; i < m_compositeIndexes.size(); i++)
+		{
+			m_compositeIndexes.set(i, buildCompositeIndex(m_compositeIndexes.get(i).getColIndexes()));
+		}
+	}
+
+	private Index buildIndex(IndexType type, int headerIndex)
+	{
+		Index index = Index.create(type, headerIndex, m_storage.getRowCount());
+		IntList order = order();
+		for (int i = 0; i < order.size(); i++)
+		{
+			int row = order.get(i);
+			String value = m_storage.getValue(row, headerIndex);
+			index.add(row, (value != null) ? value.trim() : "");
+		}
+		return index;
+	}
+
+	public void addCompositeIndex(String ... headers)
+	{
+		if (headers == null || headers.length < 2)
+			throw new IllegalArgumentException("Composite index requires at least two columns");
+		int[] cols = new int[headers.length];
+		for (int i = 0; i < headers.length; i++)
+		{
+			cols[i] = m_header.getColIndex(headers[i]);
+			if (cols[i] < 0)
+				throw new IllegalArgumentException("Unknown column '" + headers[i] + "'");
+		}
+		for (CompositeIndex composite : m_compositeIndexes)
+		{
+			if (Arrays.equals(composite.getColIndexes(), cols))
+				return;
+		}
+		m_compositeIndexes.add(buildCompositeIndex(cols));
+	}
+
+	private CompositeIndex buildCompositeIndex(int[] cols)
+	{
+		CompositeIndex composite = new CompositeIndex(cols, m_storage.getRowCount());
+		IntList order = order();
+		for (int i = 0; i < order.size(); i++)
+		{
+			int row = order.get(i);
+			composite.add(row, compositeKey(composite, row));
+		}
+		return composite;
+	}
+
+	private String compositeKey(CompositeIndex composite, int row)
+	{
+		int[] cols = composite.getColIndexes();
+		String[] values = new String[cols.length];
+		for (int i = 0; i < cols.length; i++)
+		{
+			String value = m_storage.getValue(row, cols[i]);
+			values[i] = (value != null) ? value.trim() : "";
+		}
+		return CompositeIndex.buildKey(values);
+	}
+
+	private String compositeKey(CompositeIndex composite, Pair<String,String>[] criteria)
+	{
+		int[] cols = composite.getColIndexes();
+		String[] values = new String[cols.length];
+		for (Pair<String,String> crit : criteria)
+		{
+			int headerIndex = m_header.getColIndex(crit.getA());
+			for (int i = 0; i < cols.length; i++)
+			{
+				if (cols[i] == headerIndex && values[i] == null)
+					values[i] = crit.getB();
+			}
+		}
+		return CompositeIndex.buildKey(values);
+	}
+
+	private Bitmap intersectBitmaps(Pair<String,String>[] criteria, boolean[] covered)
+	{
+		// criteria on bitmap-indexed columns are combined word by word before any line is looked at, null when there are none
+		Bitmap result = null;
+		for (int c = 0; c < criteria.length; c++)
+		{
+			int headerIndex = m_header.getColIndex(criteria[c].getA());
+			if (covered[c] || criteria[c].getB() == null || headerIndex < 0 || !(m_indexes[headerIndex] instanceof BitmapIndex))
+				continue;
+			Bitmap rows = ((BitmapIndex)m_indexes[headerIndex]).findBitmap(criteria[c].getB());
+			if (rows == null)
+				result = new Bitmap();
+			else
+				result = (result == null) ? rows : Bitmap.and(result, rows);
+			covered[c] = true;
+		}
+		return result;
+	}
+
+	private int countBitmaps(Pair<String,String>[] criteria)
+	{
+		// popcount of the intersection when bitmap indexes cover every criteria, -1 otherwise
+		Bitmap[] bitmaps = new Bitmap[criteria.length];
+		boolean empty = false;
+		for (int c = 0; c < criteria.length; c++)
+		{
+			int headerIndex = m_header.getColIndex(criteria[c].getA());
+			if (criteria[c].getB() == null || headerIndex < 0 || !(m_indexes[headerIndex] instanceof BitmapIndex))
+				return -1;
+			bitmaps[c] = ((BitmapIndex)m_indexes[headerIndex]).findBitmap(criteria[c].getB());
+			empty |= (bitmaps[c] == null);
+		}
+		if (empty)
+			return 0;
+		Bitmap rows = bitmaps[0];
+		for (int c = 1; c < bitmaps.length - 1; c++)
+		{
+			rows = Bitmap.and(rows, bitmaps[c]);
+		}
+		return (bitmaps.length == 1) ? rows.getCardinality() : Bitmap.andCardinality(rows, bitmaps[bitmaps.length - 1]);
+	}
+
+	private CompositeIndex findCompositeIndex(Pair<String,String>[] criteria, boolean[] covered)
+	{
+		// the index covering the most criteria columns wins
+		CompositeIndex best = null;
+		for (CompositeIndex composite : m_compositeIndexes)
+		{
+			if (best != null && composite.getColIndexes().length <= best.getColIndexes().length)
+				continue;
+			boolean usable = true;
+			for (int col : composite.getColIndexes())
+			{
+				boolean found = false;
+				for (Pair<String,String> crit : criteria)
+				{
+					if (crit.getB() != null && m_header.getColIndex(crit.getA()) == col)
+						found = true;
+				}
+				usable &= found;
+			}
+			if (usable)
+				best = composite;
+		}
+		if (best != null)
+		{
+			// only the first criteria per column feeds the key, any repeats are still filtered
+			IntList used = new IntList(criteria.length);
+			for (int c = 0; c < criteria.length; c++)
+			{
+				int headerIndex = m_header.getColIndex(criteria[c].getA());
+				if (criteria[c].getB() != null && best.covers(headerIndex) && used.indexOf(headerIndex) < 0)
+				{
+					covered[c] = true;
+					used.add(headerIndex);
+				}
+			}
+		}
+		return best;
 	}
 
 	public boolean hasMatch(String header, String value)
@@ -210,9 +743,12 @@ public class CSVData
 			if (headerIndex >= 0)
 			{
 				// check if we have an index in place
-				if (m_indexes[headerIndex] != null)
+				Index index = m_indexes[headerIndex];
+				if (index != null)
 				{
-					List<Line> lines = m_indexes[headerIndex].findMatches(value);
+					Bitmap matches = (index instanceof BitmapIndex) ? ((BitmapIndex)index).findBitmap(value) : null;
+					IntList rows = (matches != null) ? inLineOrder(matches) : liveRows(index.find(value));
+					List<Line> lines = new LineList(rows);
 					if (start <= 0 && num <= 0)
 						return new ArrayList<Line>(lines);
 					if (start < lines.size())
@@ -222,10 +758,11 @@ public class CSVData
 				}
 				else
 				{
+					ValueMatcher matcher = new ValueMatcher(headerIndex, value);
 					List<Line> lines = new ArrayList<Line>();
-					for (Line line : m_lines)
+					for (Line line : getLines())
 					{
-						if (value.equalsIgnoreCase(line.getColValue(headerIndex)))
+						if (matcher.matches(line))
 						{
 							lines.add(line);
 							if (num > 0 && lines.size() >= start + num)
@@ -252,6 +789,22 @@ public class CSVData
 
 	public int countMatchingLines(Pair<String,String> ... criteria)
 	{
+		// answer straight from an index when it covers every criteria
+		int bitmapCount = (criteria != null && criteria.length > 0) ? countBitmaps(criteria) : -1;
+		if (bitmapCount >= 0)
+			return bitmapCount;
+		if (criteria != null && criteria.length > 1)
+		{
+			boolean[] covered = new boolean[criteria.length];
+			CompositeIndex composite = findCompositeIndex(criteria, covered);
+			boolean allCovered = (composite != null && m_deletedCount == 0);
+			for (boolean c : covered)
+			{
+				allCovered &= c;
+			}
+			if (allCovered)
+				return composite.count(compositeKey(composite, criteria));
+		}
 		return findMatchingLines(criteria, 0, 0).size();
 	}
 
@@ -268,25 +821,46 @@ public class CSVData
 		if (criteria.length == 1)
 			return findMatchingLines(criteria[0].getA(), criteria[0].getB(), start, num);
 
-		// get all results for the initial criteria
+		// a null value matches nothing, as in the single column lookup, and must not reach an index or matcher
+		for (Pair<String,String> crit : criteria)
+		{
+			if (crit.getB() == null)
+				return new LinkedList<Line>();
+		}
+
+		// get all results for the initial criteria, or for every criteria a composite index covers
 		if (start < 0)
 			start = 0;
 		List<Line> lines = null;
-		for (Pair<String,String> crit : criteria)
+		boolean[] covered = new boolean[criteria.length];
+		if (m_header.getColIndex(criteria[0].getA()) >= 0)
+		{
+			CompositeIndex composite = findCompositeIndex(criteria, covered);
+			if (composite != null)
+				lines = new ArrayList<Line>(new LineList(liveRows(composite.find(compositeKey(composite, criteria)))));
+			Bitmap rows = intersectBitmaps(criteria, covered);
+			if (rows != null && lines == null)
+				lines = new ArrayList<Line>(new LineList(inLineOrder(rows)));
+			else if (rows != null)
+				lines.removeIf(line -> !rows.contains(line.m_row));
+		}
+		for (int c = 0; c < criteria.length; c++)
 		{
+			Pair<String,String> crit = criteria[c];
 			if (lines == null)
 			{
 				lines = findMatchingLines(crit.getA(), crit.getB());
 			}
-			else
+			else if (!covered[c])
 			{
 				int headerIndex = m_header.getColIndex(crit.getA());
 				if (headerIndex >= 0)
 				{
+					ValueMatcher matcher = new ValueMatcher(headerIndex, crit.getB());
 					List<Line> tempLines = new ArrayList<Line>(lines.size());
 					for (Line line : lines)
 					{
-						if (crit.getB().equalsIgnoreCase(line.getColValue(headerIndex)))
+						if (matcher.matches(line))
 						{
 							tempLines.add(line);
 						}
@@ -304,19 +878,108 @@ public class CSVData
 		return lines.subList(start, start + num);
 	}
 
-	public int removeMatchingLines(Pair<String,String> ... criteria)
+	public List<Line> findMatchingLines(Predicate predicate)
 	{
-		int count = 0;
-		List<Line> lines = findMatchingLines(criteria);
-		if (lines.size() > 1)
+		return findMatchingLines(predicate, 0, 0);
+	}
+
+	public List<Line> findMatchingLines(Predicate predicate, int start, int num)
+	{
+		IntList rows = matchRows(bind(predicate), (num > 0) ? Math.max(start, 0) + num : 0);
+		List<Line> lines = new ArrayList<Line>(new LineList(rows));
+		return (start <= 0) ? lines : lines.subList(Math.min(start, lines.size()), lines.size());
+	}
+
+	public int countMatchingLines(Predicate predicate)
+	{
+		// bitmap indexes that answer the whole predicate are counted without visiting rows
+		Predicate.Bound bound = bind(predicate);
+		Bitmap rows = bound.bitmap();
+		return (rows != null) ? rows.getCardinality() : matchRows(bound, 0).size();
+	}
+
+	private Predicate.Bound bind(Predicate predicate)
+	{
+		if (predicate == null)
+			throw new IllegalArgumentException("Filter predicate required");
+		return predicate.bind(this);
+	}
+
+	private IntList inLineOrder(Bitmap rows)
+	{
+		// bitmaps only filter, results follow the line order so sorted data pages the same as without them
+		IntList order = order();
+		int remaining = rows.getCardinality();
+		IntList matches = new IntList(remaining);
+		for (int i = 0; i < order.size() && remaining > 0; i++)
+		{
+			int row = order.get(i);
+			if (rows.contains(row))
+			{
+				matches.add(row);
+				remaining--;
+			}
+		}
+		return matches;
+	}
+
+	private IntList matchRows(Predicate.Bound bound, int limit)
+	{
+		// the most selective index the predicate can use narrows the rows to test, matches come back in line order
+		IntList candidates = bound.candidates();
+		BitSet marked = null;
+		int remaining = 0;
+		if (candidates != null)
+		{
+			marked = new BitSet(m_storage.getRowCount());
+			for (int i = 0; i < candidates.size(); i++)
+			{
+				marked.set(candidates.get(i));
+			}
+			remaining = marked.cardinality();
+		}
+		IntList order = order();
+		IntList rows = new IntList();
+		for (int i = 0; i < order.size() && (limit <= 0 || rows.size() < limit); i++)
 		{
-			Collections.reverse(lines);
+			int row = order.get(i);
+			if (marked != null)
+			{
+				if (!marked.get(row))
+					continue;
+				if (bound.test(row))
+					rows.add(row);
+				// tombstoned candidates never show up in the line order, so this only ends early without them
+				if (--remaining == 0)
+					break;
+			}
+			else if (bound.test(row))
+			{
+				rows.add(row);
+			}
 		}
-		for (Line line : lines)
+		return rows;
+	}
+
+	Index getIndex(int col)
+	{
+		return m_indexes[col];
+	}
+
+	ValueMatcher createMatcher(int col, String value)
+	{
+		return new ValueMatcher(col, value);
+	}
+
+	public int removeMatchingLines(Pair<String,String> ... criteria)
+	{
+		int count = 0;
+		for (Line line : findMatchingLines(criteria))
 		{
 			if (removeLine(line))
 				count++;
 		}
+		compactIfNeeded();
 		return count;
 	}
 
@@ -326,15 +989,16 @@ public class CSVData
 		if (headerIndex >= 0)
 		{
 			// check if we have an index in place
-			if (m_indexes[headerIndex] != null)
+			if (m_indexes[headerIndex] instanceof SortedIndex)
 			{
-				return m_indexes[headerIndex].findFirst();
+				IntList rows = m_indexes[headerIndex].findFirst(m_deleted);
+				return (rows != null) ? new ArrayList<Line>(new LineList(rows)) : null;
 			}
 			else
 			{
 				String lowestValue = null;
 				List<Line> list = new LinkedList<Line>();
-				for (Line line : m_lines)
+				for (Line line : getLines())
 				{
 					String value = line.getColValue(headerIndex);
 					if (!isEmpty(value))
@@ -372,15 +1036,16 @@ public class CSVData
 		if (headerIndex >= 0)
 		{
 			// check if we have an index in place
-			if (m_indexes[headerIndex] != null)
+			if (m_indexes[headerIndex] instanceof SortedIndex)
 			{
-				return m_indexes[headerIndex].findLast();
+				IntList rows = m_indexes[headerIndex].findLast(m_deleted);
+				return (rows != null) ? new ArrayList<Line>(new LineList(rows)) : null;
 			}
 			else
 			{
 				String highestValue = null;
 				List<Line> list = new LinkedList<Line>();
-				for (Line line : m_lines)
+				for (Line line : getLines())
 				{
 					String value = line.getColValue(headerIndex);
 					if (!isEmpty(value))
@@ -414,23 +1079,76 @@ public class CSVData
 
 	public void appendData(CSVData data)
 	{
+		// columns are matched by name once, not per line
+		int[] externalCols = new int[getColCount()];
+		for (int i = 0; i < externalCols.length; i++)
+		{
+			externalCols[i] = data.getHeader().getColIndex(getHeader().getColName(i));
+		}
 		for (Line externalLine : data.getLines())
 		{
 			Line newLine = addEmptyLine();
-			for (int i = 0; i < getColCount(); i++)
+			for (int i = 0; i < externalCols.length; i++)
 			{
-				newLine.setValue(i, externalLine.getColValue(getHeader().getColName(i)));
+				newLine.setValue(i, (externalCols[i] >= 0) ? externalLine.getColValue(externalCols[i]) : null);
 			}
 		}
 	}
 
+	public GroupBy groupBy(String ... headers)
+	{
+		return new GroupBy(this, headers);
+	}
+
+	public CSVData join(CSVData other, String[] leftKeys, String[] rightKeys, JoinType type)
+	{
+		return new HashJoin(this, other, leftKeys, rightKeys, type).join();
+	}
+
+	public ConcurrentAppender concurrentAppender()
+	{
+		return concurrentAppender(Runtime.getRuntime().availableProcessors());
+	}
+
+	public ConcurrentAppender concurrentAppender(int stripes)
+	{
+		// while it is open all changes and reads from other threads go through the appender
+		return new ConcurrentAppender(this, stripes);
+	}
+
 	public byte[] toBytes()
 	{
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(estimateSize());
 		new CSVWriter(baos).write(this, true);
 		return baos.toByteArray();
 	}
 
+	private int estimateSize()
+	{
+		// average row length from a spread of sampled rows, with a little slack for quoting and multi-byte chars
+		long headerSize = getColCount() + 2;
+		for (String name : m_header.getNameArr())
+		{
+			headerSize += name.length();
+		}
+		int rows = getLineCount();
+		int[] sample = getSampleRows(ESTIMATE_SAMPLE_ROWS);
+		int samples = sample.length;
+		long sampled = 0;
+		for (int row : sample)
+		{
+			sampled += getColCount() + 1;
+			for (int col = 0; col < getColCount(); col++)
+			{
+				String value = m_storage.getValue(row, col);
+				if (value != null)
+					sampled += value.length();
+			}
+		}
+		long estimate = headerSize + ((samples > 0) ? sampled * rows / samples : 0);
+		return (int)Math.min(estimate + (estimate >> 4), Integer.MAX_VALUE - 8);
+	}
+
 	private static boolean isEmpty(String str)
 	{
 		return (str == null || str.length() == 0 || str.trim().length() == 0);
@@ -471,6 +1189,11 @@ public class CSVData
 			this(cols.toArray(new String[cols.size()]));
 		}
 
+		public CSVData getCSV()
+		{
+			return (CSVData.this);
+		}
+
 		public String getColName(int index)
 		{
 			return m_cols[index];
@@ -482,6 +1205,15 @@ public class CSVData
 			return (val != null) ? val.intValue() : -1;
 		}
 
+		public ColumnHandle getHandle(String key)
+		{
+			// resolved once, then lines read the column without a name lookup
+			int index = getColIndex(key);
+			if (index < 0)
+				throw new IllegalArgumentException("Unknown column '" + key + "'");
+			return new ColumnHandle(this, index);
+		}
+
 		public boolean containsCol(String key)
 		{
 			return m_indexLookup.containsKey(key);
@@ -577,17 +1309,52 @@ public class CSVData
 		}
 	}
 
+	public static class ColumnHandle
+	{
+		private final Header m_header;
+		private final int m_index;
+
+		private ColumnHandle(Header header, int index)
+		{
+			m_header = header;
+			m_index = index;
+		}
+
+		public int getIndex()
+		{
+			return m_index;
+		}
+
+		public String getName()
+		{
+			return m_header.getColName(m_index);
+		}
+
+		@Override
+		public String toString()
+		{
+			return getName();
+		}
+	}
+
 	public class Line
 	{
+		// a line is a view over a row in the storage, except for detached copies which carry their own values
+		private final int m_row;
+		private final int m_generation;
 		private final String[] m_cols;
 
-		private Line()
+		private Line(int row)
 		{
-			this(new String[] {});
+			m_row = row;
+			m_generation = CSVData.this.m_generation;
+			m_cols = null;
 		}
 
 		private Line(String[] cols)
 		{
+			m_row = -1;
+			m_generation = CSVData.this.m_generation;
 			m_cols = Arrays.copyOf(cols, m_header.getColCount());
 			for (int i = 0; i < m_cols.length; i++)
 			{
@@ -596,6 +1363,13 @@ public class CSVData
 			}
 		}
 
+		private int row()
+		{
+			if (m_generation != CSVData.this.m_generation)
+				throw new IllegalStateException("Line was obtained before the last compact()");
+			return m_row;
+		}
+
 		public CSVData getCSV()
 		{
 			return (CSVData.this);
@@ -603,17 +1377,25 @@ public class CSVData
 
 		public Line createCopy()
 		{
-			return new Line(m_cols);
+			return new Line(getColumns());
 		}
 
 		public String[] getColumns()
 		{
-			return m_cols;
+			if (m_cols != null)
+				return m_cols;
+			String[] cols = new String[m_header.getColCount()];
+			for (int i = 0; i < cols.length; i++)
+			{
+				cols[i] = m_storage.getValue(row(), i);
+			}
+			return cols;
 		}
 
 		public String getColValue(int index)
 		{
-			return (m_cols[index] != null) ? m_cols[index].trim() : "";
+			String value = (m_cols != null) ? m_cols[index] : m_storage.getValue(row(), index);
+			return (value != null) ? value.trim() : "";
 		}
 
 		public String getColValue(String key)
@@ -628,6 +1410,25 @@ public class CSVData
 			return (CSVData.isEmpty(val)) ? defValue : val;
 		}
 
+		public String getColValue(ColumnHandle col)
+		{
+			return getColValue(index(col));
+		}
+
+		public String getColValue(ColumnHandle col, String defValue)
+		{
+			String val = getColValue(index(col));
+			return (CSVData.isEmpty(val)) ? defValue : val;
+		}
+
+		private int index(ColumnHandle col)
+		{
+			// handles from another data set with the same columns work too, at the cost of comparing the headers
+			if (col.m_header != m_header && !col.m_header.equals(m_header))
+				throw new IllegalArgumentException("Column '" + col.getName() + "' is from a different header");
+			return col.m_index;
+		}
+
 		public int getIntColValue(String key) throws NumberFormatException
 		{
 			try
@@ -642,14 +1443,18 @@ public class CSVData
 
 		public int getIntColValue(String key, int defValue)
 		{
-			try
-			{
-				return getIntColValue(key);
-			}
-			catch (Exception e)
-			{
-				return defValue;
-			}
+			int index = m_header.getColIndex(key);
+			return (index >= 0) ? getIntColValue(index, defValue) : defValue;
+		}
+
+		public int getIntColValue(ColumnHandle col, int defValue)
+		{
+			return getIntColValue(index(col), defValue);
+		}
+
+		public int getIntColValue(int index, int defValue)
+		{
+			return (m_cols != null) ? Storage.parseInt(m_cols[index], defValue) : m_storage.getInt(row(), index, defValue);
 		}
 
 		public float getFloatColValue(String key) throws NumberFormatException
@@ -666,14 +1471,18 @@ public class CSVData
 
 		public float getFloatColValue(String key, float defValue)
 		{
-			try
-			{
-				return getFloatColValue(key);
-			}
-			catch (Exception e)
-			{
-				return defValue;
-			}
+			int index = m_header.getColIndex(key);
+			return (index >= 0) ? getFloatColValue(index, defValue) : defValue;
+		}
+
+		public float getFloatColValue(ColumnHandle col, float defValue)
+		{
+			return getFloatColValue(index(col), defValue);
+		}
+
+		public float getFloatColValue(int index, float defValue)
+		{
+			return (m_cols != null) ? Storage.parseFloat(m_cols[index], defValue) : m_storage.getFloat(row(), index, defValue);
 		}
 
 		public long getLongColValue(String key) throws NumberFormatException
@@ -690,14 +1499,18 @@ public class CSVData
 
 		public long getLongColValue(String key, long defValue)
 		{
-			try
-			{
-				return getLongColValue(key);
-			}
-			catch (Exception e)
-			{
-				return defValue;
-			}
+			int index = m_header.getColIndex(key);
+			return (index >= 0) ? getLongColValue(index, defValue) : defValue;
+		}
+
+		public long getLongColValue(ColumnHandle col, long defValue)
+		{
+			return getLongColValue(index(col), defValue);
+		}
+
+		public long getLongColValue(int index, long defValue)
+		{
+			return (m_cols != null) ? Storage.parseLong(m_cols[index], defValue) : m_storage.getLong(row(), index, defValue);
 		}
 
 		public double getDoubleColValue(String key) throws NumberFormatException
@@ -714,14 +1527,18 @@ public class CSVData
 
 		public double getDoubleColValue(String key, double defValue)
 		{
-			try
-			{
-				return getDoubleColValue(key);
-			}
-			catch (Exception e)
-			{
-				return defValue;
-			}
+			int index = m_header.getColIndex(key);
+			return (index >= 0) ? getDoubleColValue(index, defValue) : defValue;
+		}
+
+		public double getDoubleColValue(ColumnHandle col, double defValue)
+		{
+			return getDoubleColValue(index(col), defValue);
+		}
+
+		public double getDoubleColValue(int index, double defValue)
+		{
+			return (m_cols != null) ? Storage.parseDouble(m_cols[index], defValue) : m_storage.getDouble(row(), index, defValue);
 		}
 
 		public double getDoubleNonZeroColValue(String key, double defValue)
@@ -732,6 +1549,22 @@ public class CSVData
 			return val;
 		}
 
+		public boolean isNull(int index)
+		{
+			return (m_cols != null) ? CSVData.isEmpty(m_cols[index]) : m_storage.isEmpty(row(), index);
+		}
+
+		public boolean isNull(String key)
+		{
+			int index = m_header.getColIndex(key);
+			return (index < 0 || isNull(index));
+		}
+
+		public boolean isNull(ColumnHandle col)
+		{
+			return isNull(index(col));
+		}
+
 		public boolean getBooleanColValue(String key)
 		{
 			return getBooleanColValue(key, false);
@@ -743,6 +1576,12 @@ public class CSVData
 			return (CSVData.isEmpty(val)) ? defValue : parseBoolean(val, defValue);
 		}
 
+		public boolean getBooleanColValue(ColumnHandle col, boolean defValue)
+		{
+			String val = getColValue(index(col));
+			return (CSVData.isEmpty(val)) ? defValue : parseBoolean(val, defValue);
+		}
+
 		public int getColCount()
 		{
 			return m_header.getColCount();
@@ -750,9 +1589,9 @@ public class CSVData
 
 		public boolean isEmpty()
 		{
-			for (String cell : m_cols)
+			for (int i = 0; i < m_header.getColCount(); i++)
 			{
-				if (!CSVData.isEmpty(cell))
+				if (m_cols != null ? !CSVData.isEmpty(m_cols[i]) : !m_storage.isEmpty(row(), i))
 					return false;
 			}
 			return true;
@@ -770,17 +1609,51 @@ public class CSVData
 
 		public List<String> getValues()
 		{
-			return Arrays.asList(m_cols);
+			return Arrays.asList(getColumns());
+		}
+
+		// the stored value without the trimming getColValue applies, as getValues returns it
+		String getRawValue(int index)
+		{
+			return (m_cols != null) ? m_cols[index] : m_storage.getValue(row(), index);
+		}
+
+		// the dictionary code of a value in a dictionary-encoded column, -1 otherwise
+		int getCode(int index)
+		{
+			return (m_cols != null || m_storage.getDictionary(index) == null) ? -1 : m_storage.getCode(row(), index);
 		}
 
 		public void setValue(int index, String value)
 		{
-			m_cols[index] = (value != null) ? value : "";
+			if (m_cols != null)
+			{
+				m_cols[index] = (value != null) ? value : "";
+				return;
+			}
+			int row = row();
+			if (m_trimValues && value != null)
+				value = value.trim();
+			if (m_deleted.get(row))
+			{
+				m_storage.setValue(row, index, value);
+				return;
+			}
 			Index indexObj = m_indexes[index];
 			if (indexObj != null)
+				indexObj.remove(row, getColValue(index));
+			for (CompositeIndex composite : m_compositeIndexes)
+			{
+				if (composite.covers(index))
+					composite.remove(row, compositeKey(composite, row));
+			}
+			m_storage.setValue(row, index, value);
+			if (indexObj != null)
+				indexObj.add(row, getColValue(index));
+			for (CompositeIndex composite : m_compositeIndexes)
 			{
-				indexObj.removeLine(this);
-				indexObj.addLine(this);
+				if (composite.covers(index))
+					composite.add(row, compositeKey(composite, row));
 			}
 		}
 
@@ -795,18 +1668,41 @@ public class CSVData
 			return false;
 		}
 
+		public void setValue(ColumnHandle col, String value)
+		{
+			setValue(index(col), value);
+		}
+
 		@Override
 		public String toString()
 		{
+			String[] cols = getColumns();
 			StringBuilder str = new StringBuilder();
-			for (int i = 0; i < m_cols.length; i++)
+			for (int i = 0; i < cols.length; i++)
 			{
 				if (i > 0)
 					str.append(",");
-				str.append(m_header.getColName(i) + "=\"" + m_cols[i] + "\"");
+				str.append(m_header.getColName(i) + "=\"" + cols[i] + "\"");
 			}
 			return str.toString();
 		}
+
+		@Override
+		public int hashCode()
+		{
+			return (m_cols != null) ? System.identityHashCode(this) : m_row;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (m_cols != null || !(obj instanceof Line))
+				return false;
+			Line other = (Line)obj;
+			return (other.getCSV() == CSVData.this && other.m_row == m_row && other.m_generation == m_generation);
+		}
 	}
 
 	public static class SortCriteria
@@ -906,79 +1802,198 @@ public class CSVData
 		}
 	}
 
-	private class Index
+	class ValueMatcher
 	{
-		private final int m_headerIndex;
-		private final NavigableMap<String,List<Line>> m_values;
+		// equality ignoring case against the trimmed cell, comparing match ids for dictionary-encoded columns
+		private final int m_col;
+		private final String m_value;
+		private final Column.DictionaryColumn m_dictionary;
+		private final int m_matchId;
 
-		public Index(int headerIndex)
+		public ValueMatcher(int col, String value)
 		{
-			m_headerIndex = headerIndex;
-			m_values = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-			for (Line line : m_lines)
-			{
-				String value = line.getColValue(headerIndex);
-				List<Line> matches = m_values.get(value);
-				if (matches == null)
-				{
-					matches = new LinkedList<Line>();
-					m_values.put(value, matches);
-				}
-				matches.add(line);
-			}
+			m_col = col;
+			m_value = value;
+			m_dictionary = m_storage.getDictionary(col);
+			m_matchId = (m_dictionary != null) ? m_dictionary.findMatchId(value) : -1;
 		}
 
-		public List<Line> findMatches(String value)
+		public boolean matches(Line line)
 		{
-			List<Line> matches = m_values.get(value);
-			return (matches != null) ? matches : new LinkedList<Line>();
+			if (m_dictionary == null || line.m_cols != null)
+				return m_value.equalsIgnoreCase(line.getColValue(m_col));
+			return matches(line.row());
 		}
 
-		public void addLine(Line line)
+		public boolean matches(int row)
 		{
-			String value = line.getColValue(m_headerIndex);
-			List<Line> matches = m_values.get(value);
-			if (matches == null)
+			if (m_dictionary == null)
 			{
-				matches = new LinkedList<Line>();
-				m_values.put(value, matches);
+				String value = m_storage.getValue(row, m_col);
+				return m_value.equalsIgnoreCase((value != null) ? value.trim() : "");
 			}
-			matches.add(line);
+			return m_matchId >= 0 && m_dictionary.getMatchId(m_storage.getCode(row, m_col)) == m_matchId;
+		}
+	}
+
+	private class LineList extends AbstractList<Line> implements RandomAccess
+	{
+		// a null row list means a live view of the line order
+		private final IntList m_rows;
+
+		public LineList(IntList rows)
+		{
+			m_rows = rows;
 		}
 
-		public void removeLine(Line line)
+		@Override
+		public Line get(int index)
 		{
-			String value = line.getColValue(m_headerIndex);
-			List<Line> matches = m_values.get(value);
-			if (matches != null)
-			{
-				matches.remove(line);
-			}
+			return new Line((m_rows != null) ? m_rows.get(index) : order().get(index));
 		}
 
-		public List<Line> findFirst()
+		@Override
+		public int size()
 		{
-			return !m_values.isEmpty() ? m_values.firstEntry().getValue() : null;
+			return (m_rows != null) ? m_rows.size() : getLineCount();
 		}
 
-		public List<Line> findLast()
+		@Override
+		public Iterator<Line> iterator()
 		{
-			return !m_values.isEmpty() ? m_values.lastEntry().getValue() : null;
+			if (m_rows != null)
+				return super.iterator();
+			return new Iterator<Line>()
+			{
+				private final int m_expectedModCount = m_modCount;
+				private int m_next = 0;
+
+				@Override
+				public boolean hasNext()
+				{
+					return m_next < size();
+				}
+
+				@Override
+				public Line next()
+				{
+					if (m_modCount != m_expectedModCount)
+						throw new ConcurrentModificationException();
+					if (m_next >= size())
+						throw new NoSuchElementException();
+					return get(m_next++);
+				}
+			};
 		}
 	}
 
-	private static class LineComparator implements Comparator<Line>
+	private class SortKey
 	{
-		private final SortCriteria m_criteria;
+		// same outcomes as SortCriteria.compare, including stopping at two empty values
+		public static final int NEXT_CRITERIA = Integer.MIN_VALUE;
+
+		private final SortType m_type;
+		private final boolean m_asc;
+		private final boolean[] m_empty;
+		private final double[] m_numbers;
+		private final int[] m_ranks;
+
+		public SortKey(SortCriteria criteria, IntList order)
+		{
+			int col = m_header.getColIndex(criteria.m_colName);
+			if (col < 0)
+				throw new IllegalArgumentException("Unknown sort column '" + criteria.m_colName + "'");
+			int size = order.size();
+			m_type = criteria.m_type;
+			m_asc = criteria.m_asc;
+			m_empty = new boolean[size];
+			for (int i = 0; i < size; i++)
+			{
+				m_empty[i] = m_storage.isEmpty(order.get(i), col);
+			}
+			if (m_type == SortType.NUMBER)
+			{
+				m_numbers = new double[size];
+				m_ranks = null;
+				for (int i = 0; i < size; i++)
+				{
+					if (!m_empty[i])
+						m_numbers[i] = m_storage.getDouble(order.get(i), col, 0.0);
+				}
+			}
+			else
+			{
+				m_numbers = null;
+				m_ranks = rankStrings(order, col, size);
+			}
+		}
 
-		public LineComparator(SortCriteria criteria)
+		private int[] rankStrings(IntList order, int col, int size)
 		{
-			m_criteria = criteria;
+			// distinct values are sorted once and every row compares by rank, equal ignoring case means equal rank
+			Map<String,Integer> ids = new HashMap<String,Integer>();
+			List<String> distinct = new ArrayList<String>();
+			int[] valueIds = new int[size];
+			for (int i = 0; i < size; i++)
+			{
+				if (m_empty[i])
+					continue;
+				String value = m_storage.getValue(order.get(i), col).trim();
+				Integer id = ids.get(value);
+				if (id == null)
+				{
+					id = distinct.size();
+					ids.put(value, id);
+					distinct.add(value);
+				}
+				valueIds[i] = id;
+			}
+			Integer[] byValue = new Integer[distinct.size()];
+			for (int i = 0; i < byValue.length; i++)
+			{
+				byValue[i] = i;
+			}
+			Arrays.sort(byValue, (x, y) -> String.CASE_INSENSITIVE_ORDER.compare(distinct.get(x), distinct.get(y)));
+			int[] rankById = new int[byValue.length];
+			int rank = 0;
+			for (int i = 0; i < byValue.length; i++)
+			{
+				if (i > 0 && String.CASE_INSENSITIVE_ORDER.compare(distinct.get(byValue[i - 1]), distinct.get(byValue[i])) != 0)
+					rank++;
+				rankById[byValue[i]] = rank;
+			}
+			int[] ranks = new int[size];
+			for (int i = 0; i < size; i++)
+			{
+				ranks[i] = m_empty[i] ? 0 : rankById[valueIds[i]];
+			}
+			return ranks;
 		}
 
-		public int compare(Line o1, Line o2)
+		public int compare(int a, int b)
 		{
-			return m_criteria.compare(o1, o2);
+			boolean emptyA = m_empty[a];
+			boolean emptyB = m_empty[b];
+			if (emptyA && emptyB)
+				return 0;
+			if (emptyA)
+				return m_asc ? 1 : -1;
+			if (emptyB)
+				return m_asc ? -1 : 1;
+			if (m_type == SortType.NUMBER)
+			{
+				double an = m_numbers[a];
+				double bn = m_numbers[b];
+				if (an < bn)
+					return m_asc ? -1 : 1;
+				if (an > bn)
+					return m_asc ? 1 : -1;
+				return NEXT_CRITERIA;
+			}
+			int comp = Integer.compare(m_ranks[a], m_ranks[b]);
+			if (comp == 0)
+				return NEXT_CRITERIA;
+			return m_asc ? comp : -comp;
 		}
 	}
 }
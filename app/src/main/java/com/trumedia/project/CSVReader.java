@@ -0,0 +1,790 @@
+package com.trumedia.project;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CSVReader
+{
+	private static final char DEFAULT_DELIM = ',';
+	private static final char DEFAULT_QUOTE = '"';
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+	private static final long MAX_CHUNK_SIZE = 1L << 28;
+	private static final int BOUNDARY_WINDOW = 1 << 16;
+	private static final byte LINEFEED = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+	private static final byte ESCAPE = '\\';
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private final InputStream m_stream;
+	private final Charset m_charset;
+	private final byte m_delim;
+	private final byte m_quote;
+	private final Row m_row;
+	private byte[] m_buf;
+	private int m_limit;
+	private int m_rowStart;
+	private boolean m_eof;
+	private boolean m_skipLinefeed;
+	private int[] m_fieldStarts;
+	private int[] m_fieldEnds;
+	private int m_fieldCount;
+	private long m_rowNumber;
+
+	public CSVReader(File file) throws FileNotFoundException
+	{
+		this(file, DEFAULT_CHARSET, DEFAULT_DELIM, DEFAULT_QUOTE);
+	}
+
+	public CSVReader(File file, Charset charSet) throws FileNotFoundException
+	{
+		this(file, charSet, DEFAULT_DELIM, DEFAULT_QUOTE);
+	}
+
+	public CSVReader(File file, char delimChar, char quoteChar) throws FileNotFoundException
+	{
+		this(file, DEFAULT_CHARSET, delimChar, quoteChar);
+	}
+
+	public CSVReader(File file, Charset charSet, char delimChar, char quoteChar) throws FileNotFoundException
+	{
+		this(new FileInputStream(file), charSet, delimChar, quoteChar);
+	}
+
+	public CSVReader(InputStream stream)
+	{
+		this(stream, DEFAULT_CHARSET, DEFAULT_DELIM, DEFAULT_QUOTE);
+	}
+
+	public CSVReader(InputStream stream, Charset charSet)
+	{
+		this(stream, charSet, DEFAULT_DELIM, DEFAULT_QUOTE);
+	}
+
+	public CSVReader(InputStream stream, char delimChar, char quoteChar)
+	{
+		this(stream, DEFAULT_CHARSET, delimChar, quoteChar);
+	}
+
+	public CSVReader(InputStream stream, Charset charSet, char delimChar, char quoteChar)
+	{
+		this(stream, charSet, delimChar, quoteChar, DEFAULT_BUFFER_SIZE);
+	}
+
+	public CSVReader(InputStream stream, Charset charSet, char delimChar, char quoteChar, int bufferSize)
+	{
+		// the state machine works on raw bytes, so the structural characters must encode as single bytes
+		if (!isSingleByte(charSet, delimChar) || !isSingleByte(charSet, quoteChar) || !isSingleByte(charSet, '\n') || !isSingleByte(charSet, '\r') || !isSingleByte(charSet, '\\'))
+			throw new IllegalArgumentException("Charset " + charSet.name() + " is not ASCII compatible");
+		// gzip input, from ParallelGzipOutputStream or elsewhere, is decompressed transparently
+		m_stream = new ParallelGzipInputStream(stream);
+		m_charset = charSet;
+		m_delim = (byte)delimChar;
+		m_quote = (byte)quoteChar;
+		m_row = new Row();
+		m_buf = new byte[Math.max(bufferSize, 1024)];
+		m_fieldStarts = new int[64];
+		m_fieldEnds = new int[64];
+	}
+
+	public CSVData read() throws IOException
+	{
+		try
+		{
+			String[] header = readHeader();
+			CSVData csv = new CSVData((header != null) ? header : new String[0]);
+			while (nextRow())
+			{
+				csv.addLine(m_row.toArray());
+			}
+			return csv;
+		}
+		finally
+		{
+			close();
+		}
+	}
+
+	public CSVData read(CSVSchema schema) throws IOException
+	{
+		try
+		{
+			String[] header = readHeader();
+			if (header == null)
+				header = new String[0];
+
+			// without a declared schema the column types are inferred from the leading rows
+			List<String[]> sample = new ArrayList<String[]>();
+			if (schema == null)
+			{
+				while (sample.size() < CSVSchema.INFERENCE_SAMPLE_ROWS && nextRow())
+				{
+					sample.add(m_row.toArray());
+				}
+				schema = CSVSchema.infer(header, sample);
+			}
+			CSVData csv = new CSVData(header, schema.getTypesFor(header));
+			for (String[] row : sample)
+			{
+				csv.addLine(row);
+			}
+			while (nextRow())
+			{
+				csv.addLine(m_row.toArray());
+			}
+			return csv;
+		}
+		finally
+		{
+			close();
+		}
+	}
+
+	public CSVData read(CSVData target) throws IOException
+	{
+		// rows go straight into the target, e.g. one from CSVData.createOffHeap, matching columns by name
+		try
+		{
+			String[] fileCols = readHeader();
+			int[] colMap = mapColumns(fileCols, target);
+			String[] values = new String[target.getColCount()];
+			while (nextRow())
+			{
+				Arrays.fill(values, null);
+				for (int i = 0; i < colMap.length && i < m_row.getColCount(); i++)
+				{
+					if (colMap[i] >= 0)
+						values[colMap[i]] = m_row.getColValue(i);
+				}
+				target.addLine(values);
+			}
+			return target;
+		}
+		finally
+		{
+			close();
+		}
+	}
+
+	public String[] readHeader() throws IOException
+	{
+		return nextRow() ? m_row.toArray() : null;
+	}
+
+	public long read(RowHandler handler) throws IOException
+	{
+		long count = 0;
+		while (nextRow())
+		{
+			handler.handleRow(m_row);
+			count++;
+		}
+		return count;
+	}
+
+	public void close()
+	{
+		try
+		{
+			m_stream.close();
+		}
+		catch (IOException e)
+		{
+			// nothing useful to do on close
+		}
+	}
+
+	public static CSVData readParallel(File file, int threads) throws IOException
+	{
+		return readParallel(file, DEFAULT_CHARSET, DEFAULT_DELIM, DEFAULT_QUOTE, null, threads);
+	}
+
+	public static CSVData readParallel(File file, CSVData target, int threads) throws IOException
+	{
+		return readParallel(file, DEFAULT_CHARSET, DEFAULT_DELIM, DEFAULT_QUOTE, target, threads);
+	}
+
+	public static CSVData readParallel(File file, Charset charSet, char delimChar, char quoteChar, CSVData target, int threads) throws IOException
+	{
+		if (threads < 1)
+			threads = Runtime.getRuntime().availableProcessors();
+		byte quote = (byte)quoteChar;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (isCompressed(channel, size))
+			{
+				// compressed rows cannot be split by offset: blocks inflate in parallel and parse on this thread
+				CSVReader reader = new CSVReader(new FileInputStream(file), charSet, delimChar, quoteChar);
+				try
+				{
+					String[] fileCols = reader.readHeader();
+					CSVData csv = createTarget(fileCols, target);
+					int[] colMap = mapColumns(fileCols, csv);
+					csv.appendRows(Collections.singletonList(readMapped(reader, colMap, csv.getColCount())));
+					return csv;
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+
+			// the header row decides the column mapping into the target
+			long dataStart = findRowBoundary(channel, 0, size, false, quote);
+			CSVReader headerReader = new CSVReader(new ByteBufferInputStream(map(channel, 0, dataStart)), charSet, delimChar, quoteChar);
+			String[] fileCols = headerReader.readHeader();
+			CSVData csv = createTarget(fileCols, target);
+			int[] colMap = mapColumns(fileCols, csv);
+			if (dataStart >= size)
+				return csv;
+
+			// nominal chunks, no smaller than MIN_CHUNK_SIZE and small enough to map individually
+			long dataSize = size - dataStart;
+			int chunkCount = (int)Math.max(1, Math.min(dataSize / MIN_CHUNK_SIZE, threads * 4L));
+			chunkCount = (int)Math.max(chunkCount, (dataSize + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+			long[] nominal = new long[chunkCount + 1];
+			for (int i = 0; i <= chunkCount; i++)
+			{
+				nominal[i] = dataStart + (dataSize * i) / chunkCount;
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunkCount));
+			try
+			{
+				// count quotes per nominal chunk in parallel so each split point knows whether it starts inside a quoted field
+				List<Future<Long>> quoteCounts = new ArrayList<Future<Long>>(chunkCount);
+				for (int i = 0; i < chunkCount; i++)
+				{
+					long start = nominal[i];
+					long end = nominal[i + 1];
+					quoteCounts.add(executor.submit(() -> countQuotes(channel, start, end, quote)));
+				}
+				long[] boundaries = new long[chunkCount + 1];
+				boundaries[0] = dataStart;
+				boundaries[chunkCount] = size;
+				long quotesBefore = 0;
+				for (int i = 1; i < chunkCount; i++)
+				{
+					quotesBefore += getResult(quoteCounts.get(i - 1));
+					long boundary = findRowBoundary(channel, nominal[i], size, (quotesBefore & 1) != 0, quote);
+					boundaries[i] = Math.max(boundary, boundaries[i - 1]);
+				}
+
+				// parse each chunk on its own reader, then merge in file order
+				List<Future<List<String[]>>> chunks = new ArrayList<Future<List<String[]>>>(chunkCount);
+				int colCount = csv.getColCount();
+				for (int i = 0; i < chunkCount; i++)
+				{
+					long start = boundaries[i];
+					long end = Math.max(start, boundaries[i + 1]);
+					chunks.add(executor.submit(() -> parseChunk(channel, start, end, charSet, delimChar, quoteChar, colMap, colCount)));
+				}
+				List<List<String[]>> results = new ArrayList<List<String[]>>(chunkCount);
+				for (Future<List<String[]>> chunk : chunks)
+				{
+					results.add(getResult(chunk));
+				}
+				csv.appendRows(results);
+				return csv;
+			}
+			finally
+			{
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	private static CSVData createTarget(String[] fileCols, CSVData target)
+	{
+		return (target != null) ? target : new CSVData((fileCols != null) ? fileCols : new String[0]);
+	}
+
+	private static int[] mapColumns(String[] fileCols, CSVData csv)
+	{
+		if (fileCols == null)
+			return new int[0];
+		int[] colMap = new int[fileCols.length];
+		for (int i = 0; i < fileCols.length; i++)
+		{
+			colMap[i] = csv.getHeader().getColIndex(fileCols[i].trim());
+		}
+		return colMap;
+	}
+
+	private static boolean isCompressed(FileChannel channel, long size) throws IOException
+	{
+		if (size < 2)
+			return false;
+		MappedByteBuffer head = map(channel, 0, 2);
+		return ParallelGzipInputStream.isGzip(new byte[] { head.get(0), head.get(1) }, 2);
+	}
+
+	private static List<String[]> parseChunk(FileChannel channel, long start, long end, Charset charSet, char delimChar, char quoteChar, int[] colMap, int colCount) throws IOException
+	{
+		if (end <= start)
+			return new ArrayList<String[]>();
+		CSVReader reader = new CSVReader(new ByteBufferInputStream(map(channel, start, end - start)), charSet, delimChar, quoteChar);
+		return readMapped(reader, colMap, colCount);
+	}
+
+	private static List<String[]> readMapped(CSVReader reader, int[] colMap, int colCount) throws IOException
+	{
+		List<String[]> rows = new ArrayList<String[]>();
+		reader.read(row ->
+		{
+			String[] cols = new String[colCount];
+			int count = Math.min(row.getColCount(), colMap.length);
+			for (int i = 0; i < count; i++)
+			{
+				if (colMap[i] >= 0)
+					cols[colMap[i]] = row.getColValue(i);
+			}
+			rows.add(cols);
+		});
+		return rows;
+	}
+
+	private static long countQuotes(FileChannel channel, long start, long end, byte quote) throws IOException
+	{
+		MappedByteBuffer buf = map(channel, start, end - start);
+		long count = 0;
+		int limit = buf.limit();
+		for (int i = 0; i < limit; i++)
+		{
+			if (buf.get(i) == quote)
+				count++;
+		}
+		return count;
+	}
+
+	private static long findRowBoundary(FileChannel channel, long pos, long size, boolean inQuote, byte quote) throws IOException
+	{
+		// returns the offset just past the first line break outside quotes at or after pos
+		while (pos < size)
+		{
+			MappedByteBuffer buf = map(channel, pos, Math.min(BOUNDARY_WINDOW, size - pos));
+			int limit = buf.limit();
+			for (int i = 0; i < limit; i++)
+			{
+				byte b = buf.get(i);
+				if (b == quote)
+				{
+					inQuote = !inQuote;
+				}
+				else if (!inQuote && (b == LINEFEED || b == CARRIAGE_RETURN))
+				{
+					long boundary = pos + i + 1;
+					if (b == CARRIAGE_RETURN && boundary < size)
+					{
+						if (i + 1 < limit ? buf.get(i + 1) == LINEFEED : map(channel, boundary, 1).get(0) == LINEFEED)
+							boundary++;
+					}
+					return boundary;
+				}
+			}
+			pos += limit;
+		}
+		return size;
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long start, long length) throws IOException
+	{
+		return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+	}
+
+	private static <T> T getResult(Future<T> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading CSV", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new IOException("Failed reading CSV chunk", e.getCause());
+		}
+	}
+
+	private boolean nextRow() throws IOException
+	{
+		// locate the end of the row first so the field parser never has to refill mid-field
+		int scanPos = m_rowStart;
+		boolean inQuote = false;
+		while (true)
+		{
+			if (m_skipLinefeed)
+			{
+				if (scanPos >= m_limit)
+				{
+					int shift = fill();
+					scanPos -= shift;
+					if (scanPos >= m_limit)
+						return false;
+				}
+				if (m_buf[scanPos] == LINEFEED)
+				{
+					scanPos++;
+					m_rowStart = scanPos;
+				}
+				m_skipLinefeed = false;
+			}
+
+			byte[] buf = m_buf;
+			int limit = m_limit;
+			byte quote = m_quote;
+			while (scanPos < limit)
+			{
+				byte b = buf[scanPos];
+				if (b == quote)
+				{
+					inQuote = !inQuote;
+				}
+				else if (!inQuote && (b == LINEFEED || b == CARRIAGE_RETURN))
+				{
+					parseFields(m_rowStart, scanPos);
+					m_skipLinefeed = (b == CARRIAGE_RETURN);
+					m_rowStart = scanPos + 1;
+					m_rowNumber++;
+					return true;
+				}
+				scanPos++;
+			}
+
+			int shift = fill();
+			scanPos -= shift;
+			if (m_eof && scanPos >= m_limit)
+			{
+				if (m_rowStart >= m_limit)
+					return false;
+				parseFields(m_rowStart, m_limit);
+				m_rowStart = m_limit;
+				m_rowNumber++;
+				return true;
+			}
+		}
+	}
+
+	private int fill() throws IOException
+	{
+		if (m_eof)
+			return 0;
+
+		// move the partial row to the front of the buffer, growing it when the row fills the whole buffer
+		int shift = m_rowStart;
+		int remaining = m_limit - m_rowStart;
+		if (shift == 0 && remaining == m_buf.length)
+		{
+			m_buf = Arrays.copyOf(m_buf, m_buf.length * 2);
+		}
+		else if (shift > 0)
+		{
+			System.arraycopy(m_buf, shift, m_buf, 0, remaining);
+		}
+		m_rowStart = 0;
+		m_limit = remaining;
+
+		int read = m_stream.read(m_buf, m_limit, m_buf.length - m_limit);
+		if (read < 0)
+			m_eof = true;
+		else
+			m_limit += read;
+		return shift;
+	}
+
+	private void parseFields(int start, int end)
+	{
+		byte[] buf = m_buf;
+		byte delim = m_delim;
+		byte quote = m_quote;
+		m_fieldCount = 0;
+		int p = start;
+		while (true)
+		{
+			int fieldStart;
+			int fieldEnd;
+			if (p < end && buf[p] == quote)
+			{
+				// quoted field, unescaped in place since the output is never longer than the input
+				p++;
+				fieldStart = p;
+				int w = p;
+				while (p < end)
+				{
+					byte b = buf[p];
+					if (b == quote)
+					{
+						if (p + 1 < end && buf[p + 1] == quote)
+						{
+							buf[w++] = quote;
+							p += 2;
+						}
+						else
+						{
+							p++;
+							break;
+						}
+					}
+					else if (b == ESCAPE && p + 1 < end && buf[p + 1] == 'n')
+					{
+						buf[w++] = LINEFEED;
+						p += 2;
+					}
+					else if (b == ESCAPE && p + 1 < end && buf[p + 1] == 'r')
+					{
+						buf[w++] = CARRIAGE_RETURN;
+						p += 2;
+					}
+					else
+					{
+						buf[w++] = b;
+						p++;
+					}
+				}
+				// be lenient with anything between the closing quote and the delimiter
+				while (p < end && buf[p] != delim)
+				{
+					buf[w++] = buf[p++];
+				}
+				fieldEnd = w;
+			}
+			else
+			{
+				fieldStart = p;
+				while (p < end && buf[p] != delim)
+				{
+					p++;
+				}
+				fieldEnd = p;
+			}
+			addField(fieldStart, fieldEnd);
+
+			if (p < end)
+				p++;
+			else
+				break;
+		}
+	}
+
+	private void addField(int start, int end)
+	{
+		if (m_fieldCount == m_fieldStarts.length)
+		{
+			m_fieldStarts = Arrays.copyOf(m_fieldStarts, m_fieldCount * 2);
+			m_fieldEnds = Arrays.copyOf(m_fieldEnds, m_fieldCount * 2);
+		}
+		m_fieldStarts[m_fieldCount] = start;
+		m_fieldEnds[m_fieldCount] = end;
+		m_fieldCount++;
+	}
+
+	private static boolean isSingleByte(Charset charSet, char c)
+	{
+		byte[] bytes = String.valueOf(c).getBytes(charSet);
+		return (bytes.length == 1 && bytes[0] == c);
+	}
+
+	private static boolean isSpace(byte b)
+	{
+		return (b <= ' ' && b >= 0);
+	}
+
+	public interface RowHandler
+	{
+		void handleRow(Row row);
+	}
+
+	public class Row
+	{
+		private Row()
+		{
+		}
+
+		public long getRowNumber()
+		{
+			return m_rowNumber;
+		}
+
+		public int getColCount()
+		{
+			return m_fieldCount;
+		}
+
+		public String getColValue(int index)
+		{
+			if (index < 0 || index >= m_fieldCount)
+				return "";
+			int start = m_fieldStarts[index];
+			int end = m_fieldEnds[index];
+			return (start < end) ? new String(m_buf, start, end - start, m_charset) : "";
+		}
+
+		public boolean isEmpty(int index)
+		{
+			if (index < 0 || index >= m_fieldCount)
+				return true;
+			for (int i = m_fieldStarts[index]; i < m_fieldEnds[index]; i++)
+			{
+				if (!isSpace(m_buf[i]))
+					return false;
+			}
+			return true;
+		}
+
+		public int getIntColValue(int index, int defValue)
+		{
+			long val = getLongColValue(index, Long.MIN_VALUE);
+			if (val < Integer.MIN_VALUE || val > Integer.MAX_VALUE)
+				return defValue;
+			return (int)val;
+		}
+
+		public long getLongColValue(int index, long defValue)
+		{
+			if (index < 0 || index >= m_fieldCount)
+				return defValue;
+			byte[] buf = m_buf;
+			int p = m_fieldStarts[index];
+			int end = m_fieldEnds[index];
+			while (p < end && isSpace(buf[p]))
+				p++;
+			while (end > p && isSpace(buf[end - 1]))
+				end--;
+			if (p >= end)
+				return defValue;
+
+			boolean negative = false;
+			if (buf[p] == '-' || buf[p] == '+')
+			{
+				negative = (buf[p] == '-');
+				p++;
+				if (p >= end)
+					return defValue;
+			}
+			// accumulate negatively so Long.MIN_VALUE is representable
+			long val = 0;
+			for (; p < end; p++)
+			{
+				int digit = buf[p] - '0';
+				if (digit < 0 || digit > 9)
+					return defValue;
+				if (val < Long.MIN_VALUE / 10)
+					return defValue;
+				val *= 10;
+				if (val < Long.MIN_VALUE + digit)
+					return defValue;
+				val -= digit;
+			}
+			if (!negative)
+			{
+				if (val == Long.MIN_VALUE)
+					return defValue;
+				return -val;
+			}
+			return val;
+		}
+
+		public double getDoubleColValue(int index, double defValue)
+		{
+			if (index < 0 || index >= m_fieldCount)
+				return defValue;
+			byte[] buf = m_buf;
+			int p = m_fieldStarts[index];
+			int end = m_fieldEnds[index];
+			while (p < end && isSpace(buf[p]))
+				p++;
+			while (end > p && isSpace(buf[end - 1]))
+				end--;
+			if (p >= end)
+				return defValue;
+
+			// exact fast path for plain decimals with at most 15 significant digits
+			int i = p;
+			boolean negative = false;
+			if (buf[i] == '-' || buf[i] == '+')
+			{
+				negative = (buf[i] == '-');
+				i++;
+			}
+			long mantissa = 0;
+			int digits = 0;
+			int fractionDigits = 0;
+			boolean seenPoint = false;
+			boolean simple = (i < end);
+			for (; i < end && simple; i++)
+			{
+				byte b = buf[i];
+				if (b >= '0' && b <= '9')
+				{
+					mantissa = mantissa * 10 + (b - '0');
+					digits++;
+					if (seenPoint)
+						fractionDigits++;
+				}
+				else if (b == '.' && !seenPoint)
+				{
+					seenPoint = true;
+				}
+				else
+				{
+					simple = false;
+				}
+			}
+			if (simple && digits > 0 && digits <= 15)
+			{
+				double val = (double)mantissa / POWERS_OF_TEN[fractionDigits];
+				return negative ? -val : val;
+			}
+
+			try
+			{
+				return Double.parseDouble(new String(buf, p, end - p, m_charset));
+			}
+			catch (NumberFormatException e)
+			{
+				return defValue;
+			}
+		}
+
+		public String[] toArray()
+		{
+			String[] values = new String[m_fieldCount];
+			for (int i = 0; i < m_fieldCount; i++)
+			{
+				values[i] = getColValue(i);
+			}
+			return values;
+		}
+
+		@Override
+		public String toString()
+		{
+			return Arrays.toString(toArray());
+		}
+	}
+}
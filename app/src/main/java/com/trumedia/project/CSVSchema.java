@@ -0,0 +1,158 @@
+package com.trumedia.project;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.trumedia.project.CSVData.ColumnType;
+
+public class CSVSchema
+{
+	private static final ColumnType[] INFERENCE_ORDER = { ColumnType.INT, ColumnType.LONG, ColumnType.DOUBLE, ColumnType.BOOLEAN };
+	static final int INFERENCE_SAMPLE_ROWS = 1000;
+
+	private final String[] m_names;
+	private final ColumnType[] m_types;
+	private final Map<String,Integer> m_indexLookup;
+
+	public CSVSchema(String[] names, ColumnType[] types)
+	{
+		if (names.length != types.length)
+			throw new IllegalArgumentException("Expected " + names.length + " column types, got " + types.length);
+		m_names = Arrays.copyOf(names, names.length);
+		m_types = Arrays.copyOf(types, types.length);
+		m_indexLookup = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for (int i = 0; i < m_names.length; i++)
+		{
+			m_names[i] = (m_names[i] != null) ? m_names[i].trim() : "";
+			if (m_types[i] == null)
+				m_types[i] = ColumnType.STRING;
+			if (!m_names[i].isEmpty() && !m_indexLookup.containsKey(m_names[i]))
+				m_indexLookup.put(m_names[i], i);
+		}
+	}
+
+	public static CSVSchema infer(String[] names, List<String[]> sampleRows)
+	{
+		ColumnType[] types = new ColumnType[names.length];
+		for (int col = 0; col < names.length; col++)
+		{
+			types[col] = inferType(col, sampleRows.size(), (row, c) ->
+			{
+				String[] values = sampleRows.get(row);
+				return (c < values.length) ? values[c] : null;
+			});
+		}
+		return new CSVSchema(names, types);
+	}
+
+	public static CSVSchema infer(CSVData data)
+	{
+		// a bounded spread of rows, read cell by cell straight from storage
+		int[] rows = data.getSampleRows(INFERENCE_SAMPLE_ROWS);
+		Storage storage = data.getStorage();
+		String[] names = data.getHeader().getNameArr();
+		ColumnType[] types = new ColumnType[names.length];
+		for (int col = 0; col < names.length; col++)
+		{
+			types[col] = inferType(col, rows.length, (row, c) -> storage.getValue(rows[row], c));
+		}
+		return new CSVSchema(names, types);
+	}
+
+	private interface Cells
+	{
+		String get(int row, int col);
+	}
+
+	private static ColumnType inferType(int col, int rowCount, Cells cells)
+	{
+		// the first type whose column accepts every sampled value wins, all-empty columns stay strings
+		boolean sawValue = false;
+		for (int row = 0; row < rowCount; row++)
+		{
+			String value = cells.get(row, col);
+			if (value != null && !value.isEmpty())
+			{
+				sawValue = true;
+				break;
+			}
+		}
+		if (!sawValue)
+			return ColumnType.STRING;
+
+		for (ColumnType type : INFERENCE_ORDER)
+		{
+			Column column = Column.create(type, 16);
+			boolean accepted = true;
+			for (int row = 0; row < rowCount; row++)
+			{
+				String value = cells.get(row, col);
+				if (!column.set(0, (value != null) ? value : ""))
+				{
+					accepted = false;
+					break;
+				}
+			}
+			if (accepted)
+				return type;
+		}
+		return ColumnType.STRING;
+	}
+
+	public int getColCount()
+	{
+		return m_names.length;
+	}
+
+	public String getColName(int index)
+	{
+		return m_names[index];
+	}
+
+	public ColumnType getColType(int index)
+	{
+		return m_types[index];
+	}
+
+	public ColumnType getColType(String name)
+	{
+		Integer index = m_indexLookup.get(name);
+		return (index != null) ? m_types[index] : null;
+	}
+
+	public String[] getNameArr()
+	{
+		return Arrays.copyOf(m_names, m_names.length);
+	}
+
+	public ColumnType[] getTypeArr()
+	{
+		return Arrays.copyOf(m_types, m_types.length);
+	}
+
+	public ColumnType[] getTypesFor(String[] names)
+	{
+		ColumnType[] types = new ColumnType[names.length];
+		for (int i = 0; i < names.length; i++)
+		{
+			ColumnType type = (names[i] != null) ? getColType(names[i].trim()) : null;
+			types[i] = (type != null) ? type : ColumnType.STRING;
+		}
+		return types;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder str = new StringBuilder();
+		for (int i = 0; i < m_names.length; i++)
+		{
+			if (i > 0)
+				str.append(",");
+			str.append(m_names[i] + ":" + m_types[i]);
+		}
+		return str.toString();
+	}
+}
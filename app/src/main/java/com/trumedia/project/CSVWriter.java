@@ -3,27 +3,60 @@ package com.trumedia.project;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
+import com.trumedia.project.CSVData.Header;
 import com.trumedia.project.CSVData.Line;
 
-public class CSVWriter
+public class CSVWriter implements AutoCloseable
 {
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
 	private static final char DEFAULT_DELIM = ',';
 	private static final char DEFAULT_QUOTE = '"';
 	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
-	private static final String RAW_LINEFEED = "\n";
-	private static final String RAW_CARRIAGE_RETURN = "\r";
-	private static final String ESCAPED_LINEFEED = "\\n";
-	private static final String ESCAPED_CARRIAGE_RETURN = "\\r";
+	private static final char RAW_LINEFEED = '\n';
+	private static final char RAW_CARRIAGE_RETURN = '\r';
+	// Double.toString and Float.toString write plain digits for magnitudes from 10^-3 up to 10^7
+	private static final double MIN_PLAIN_DECIMAL = 1.0e-3;
+	private static final double MAX_PLAIN_DECIMAL = 1.0e7;
+	// scaled digits stay exact in a double, and so exact when divided back, below 2^53
+	private static final double MAX_EXACT_DIGITS = 0x1p53;
+	private static final double[] POW10 = new double[19];
+	private static final long[] LONG_POW10 = new long[19];
+	static
+	{
+		POW10[0] = 1;
+		LONG_POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+		{
+			POW10[i] = POW10[i - 1] * 10;
+			LONG_POW10[i] = LONG_POW10[i - 1] * 10;
+		}
+	}
 
+	// exactly one of the two sinks is set
 	private final PrintWriter m_writer;
-	private final String m_delimChar;
-	private final String m_quoteChar;
-	private final String m_doubleQuote;
+	private final WritableByteChannel m_channel;
+	private final ByteBuffer m_bytes;
+	private final char m_delimChar;
+	private final char m_quoteChar;
+	private final char[] m_lineSeparator;
+	private final char[] m_buf;
+	private int m_pos;
 	private boolean m_onStartOfLine;
 
 	public CSVWriter(File file) throws FileNotFoundException
@@ -43,7 +76,12 @@ public class CSVWriter
 
 	public CSVWriter(File file, Charset charSet, char delimChar, char quoteChar) throws FileNotFoundException
 	{
-		this(new FileOutputStream(file), charSet, delimChar, quoteChar);
+		this(openFile(file), charSet, delimChar, quoteChar);
+	}
+
+	public CSVWriter(File file, Charset charSet, char delimChar, char quoteChar, int bufferSize) throws FileNotFoundException
+	{
+		this(openFile(file), charSet, delimChar, quoteChar, bufferSize);
 	}
 
 	public CSVWriter(OutputStream stream)
@@ -62,11 +100,63 @@ public class CSVWriter
 	}
 
 	public CSVWriter(OutputStream stream, Charset charSet, char delimChar, char quoteChar)
+	{
+		this(stream, charSet, delimChar, quoteChar, DEFAULT_BUFFER_SIZE);
+	}
+
+	public CSVWriter(OutputStream stream, Charset charSet, char delimChar, char quoteChar, int bufferSize)
 	{
 		m_writer = new PrintWriter(new OutputStreamWriter(stream, charSet));
-		m_delimChar = String.valueOf(delimChar);
-		m_quoteChar = String.valueOf(quoteChar);
-		m_doubleQuote = String.valueOf(m_quoteChar) + String.valueOf(m_quoteChar);
+		m_channel = null;
+		m_bytes = null;
+		m_delimChar = delimChar;
+		m_quoteChar = quoteChar;
+		// the separator PrintWriter.println would have written
+		m_lineSeparator = System.lineSeparator().toCharArray();
+		m_buf = new char[Math.max(bufferSize, 1024)];
+		m_onStartOfLine = true;
+	}
+
+	public CSVWriter(Path path) throws IOException
+	{
+		this(openChannel(path));
+	}
+
+	// a ".gz" name writes multi-member gzip, compressed in parallel blocks
+	private static OutputStream openFile(File file) throws FileNotFoundException
+	{
+		FileOutputStream stream = new FileOutputStream(file);
+		return isCompressed(file.getName()) ? new ParallelGzipOutputStream(stream) : stream;
+	}
+
+	private static WritableByteChannel openChannel(Path path) throws IOException
+	{
+		if (isCompressed(path.getFileName().toString()))
+			return Channels.newChannel(new ParallelGzipOutputStream(Files.newOutputStream(path)));
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+	}
+
+	private static boolean isCompressed(String name)
+	{
+		return name.regionMatches(true, name.length() - 3, ".gz", 0, 3);
+	}
+
+	public CSVWriter(WritableByteChannel channel)
+	{
+		this(channel, DEFAULT_DELIM, DEFAULT_QUOTE, DEFAULT_BUFFER_SIZE);
+	}
+
+	// always UTF-8, encoded by the writer itself into a direct buffer that is handed to the channel
+	public CSVWriter(WritableByteChannel channel, char delimChar, char quoteChar, int bufferSize)
+	{
+		m_writer = null;
+		m_channel = channel;
+		m_delimChar = delimChar;
+		m_quoteChar = quoteChar;
+		m_lineSeparator = System.lineSeparator().toCharArray();
+		m_buf = new char[Math.max(bufferSize, 1024)];
+		// at most three bytes per char, so a full char buffer always fits
+		m_bytes = ByteBuffer.allocateDirect(m_buf.length * 3);
 		m_onStartOfLine = true;
 	}
 
@@ -76,23 +166,54 @@ public class CSVWriter
 	}
 
 	public void write(CSVData csv, boolean includeHeader, boolean closeWriter)
+	{
+		write(csv.getHeader(), csv.getLines(), includeHeader, closeWriter);
+	}
+
+	public void write(Header header, Iterable<Line> lines, boolean includeHeader, boolean closeWriter)
 	{
 		// header
 		if (includeHeader)
 		{
-			for (String headerName : csv.getHeader().getNames())
+			for (String headerName : header.getNames())
 			{
 				write(headerName);
 			}
 			endLine();
 		}
 
-		// values
-		for (Line line : csv.getLines())
+		// values, with dictionary-encoded columns escaped once per distinct value instead of once per row
+		int colCount = header.getColCount();
+		CSVData csv = header.getCSV();
+		Storage storage = csv.getStorage();
+		String[][] escaped = new String[colCount][];
+		for (int i = 0; i < colCount; i++)
+		{
+			if (storage.getDictionary(i) != null)
+				escaped[i] = new String[16];
+		}
+		for (Line line : lines)
 		{
-			for (String value : line.getValues())
+			// codes only mean something for lines of the table the dictionaries belong to
+			boolean ownLine = (line.getCSV() == csv);
+			for (int i = 0; i < colCount; i++)
 			{
-				write(value);
+				int code = (ownLine && escaped[i] != null) ? line.getCode(i) : -1;
+				if (code < 0)
+				{
+					write(line.getRawValue(i));
+					continue;
+				}
+				if (code >= escaped[i].length)
+					escaped[i] = Arrays.copyOf(escaped[i], Math.max(code + 1, escaped[i].length * 2));
+				String entry = escaped[i][code];
+				if (entry == null)
+				{
+					entry = escape(line.getRawValue(i));
+					escaped[i][code] = entry;
+				}
+				startEntry();
+				append(entry);
 			}
 			endLine();
 		}
@@ -103,7 +224,7 @@ public class CSVWriter
 		}
 		else
 		{
-			m_writer.flush();
+			flush();
 		}
 	}
 
@@ -111,32 +232,66 @@ public class CSVWriter
 	{
 		if (value == null)
 		{
-			writeRawEntry("");
+			startEntry();
+			return;
 		}
-		else
+
+		// a single scan decides whether the value needs quoting at all
+		int special = findSpecial(value);
+		startEntry();
+		int len = value.length();
+		if (special == len)
 		{
-			if (value.contains(m_delimChar) || value.contains(m_quoteChar) || value.contains(RAW_CARRIAGE_RETURN) || value.contains(RAW_LINEFEED))
-				writeRawEntry(m_quoteChar + value.replace(m_quoteChar, m_doubleQuote).replace(RAW_CARRIAGE_RETURN, ESCAPED_CARRIAGE_RETURN).replace(RAW_LINEFEED, ESCAPED_LINEFEED) + m_quoteChar);
+			append(value);
+			return;
+		}
+
+		// escaped straight into the buffer; escape() builds the same text as a String only for cached dictionary entries
+		append(m_quoteChar);
+		append(value, 0, special);
+		for (int i = special; i < len; i++)
+		{
+			char c = value.charAt(i);
+			if (c == m_quoteChar)
+			{
+				append(m_quoteChar);
+				append(m_quoteChar);
+			}
+			else if (c == RAW_CARRIAGE_RETURN)
+			{
+				append('\\');
+				append('r');
+			}
+			else if (c == RAW_LINEFEED)
+			{
+				append('\\');
+				append('n');
+			}
 			else
-				writeRawEntry(value);
+			{
+				append(c);
+			}
 		}
+		append(m_quoteChar);
 	}
 
 	public void write(int value)
 	{
-		writeRawEntry(String.valueOf(value));
+		startEntry();
+		appendLong(value);
 	}
 
 	public void write(long value)
 	{
-		writeRawEntry(String.valueOf(value));
+		startEntry();
+		appendLong(value);
 	}
 
 	public void write(float value)
 	{
 		if (Float.isNaN(value))
 			writeRawEntry("NaN");
-		else
+		else if (!writePlainDecimal(value, true))
 			writeRawEntry(String.valueOf(value));
 	}
 
@@ -144,32 +299,318 @@ public class CSVWriter
 	{
 		if (Double.isNaN(value))
 			writeRawEntry("NaN");
-		else
+		else if (!writePlainDecimal(value, false))
 			writeRawEntry(String.valueOf(value));
 	}
 
 	public void write(boolean value)
 	{
-		writeRawEntry(String.valueOf(value));
+		writeRawEntry(value ? "true" : "false");
 	}
 
 	public void endLine()
 	{
-		m_writer.println();
+		if (m_pos + m_lineSeparator.length > m_buf.length)
+			flushBuffer();
+		System.arraycopy(m_lineSeparator, 0, m_buf, m_pos, m_lineSeparator.length);
+		m_pos += m_lineSeparator.length;
 		m_onStartOfLine = true;
 	}
 
+	public void flush()
+	{
+		if (m_channel == null)
+		{
+			flushBuffer();
+			m_writer.flush();
+			return;
+		}
+		encode(false);
+	}
+
+	@Override
 	public void close()
 	{
-		m_writer.close();
+		if (m_channel == null)
+		{
+			flushBuffer();
+			m_writer.close();
+			return;
+		}
+		try
+		{
+			encode(true);
+		}
+		finally
+		{
+			try
+			{
+				m_channel.close();
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
 	}
 
 	protected void writeRawEntry(String raw)
+	{
+		startEntry();
+		append(raw);
+	}
+
+	private int findSpecial(String value)
+	{
+		int len = value.length();
+		for (int i = 0; i < len; i++)
+		{
+			char c = value.charAt(i);
+			if (c == m_delimChar || c == m_quoteChar || c == RAW_CARRIAGE_RETURN || c == RAW_LINEFEED)
+				return i;
+		}
+		return len;
+	}
+
+	// the entry text for a value: unchanged, or quoted with quotes doubled and line breaks written as \r and \n
+	private String escape(String value)
+	{
+		int special = findSpecial(value);
+		return (special == value.length()) ? value : escape(value, special);
+	}
+
+	private String escape(String value, int special)
+	{
+		int len = value.length();
+		StringBuilder sb = new StringBuilder(len + 8);
+		sb.append(m_quoteChar);
+		sb.append(value, 0, special);
+		for (int i = special; i < len; i++)
+		{
+			char c = value.charAt(i);
+			if (c == m_quoteChar)
+				sb.append(m_quoteChar).append(m_quoteChar);
+			else if (c == RAW_CARRIAGE_RETURN)
+				sb.append('\\').append('r');
+			else if (c == RAW_LINEFEED)
+				sb.append('\\').append('n');
+			else
+				sb.append(c);
+		}
+		sb.append(m_quoteChar);
+		return sb.toString();
+	}
+
+	private void startEntry()
 	{
 		if (!m_onStartOfLine)
-			m_writer.write(m_delimChar);
+			append(m_delimChar);
 		else
 			m_onStartOfLine = false;
-		m_writer.write(raw);
+	}
+
+	private void append(char c)
+	{
+		if (m_pos == m_buf.length)
+			flushBuffer();
+		m_buf[m_pos++] = c;
+	}
+
+	private void append(String value)
+	{
+		append(value, 0, value.length());
+	}
+
+	private void append(String value, int start, int end)
+	{
+		while (start < end)
+		{
+			if (m_pos == m_buf.length)
+				flushBuffer();
+			// values longer than the buffer go through it in pieces
+			int len = Math.min(end - start, m_buf.length - m_pos);
+			value.getChars(start, start + len, m_buf, m_pos);
+			m_pos += len;
+			start += len;
+		}
+	}
+
+	private void appendLong(long value)
+	{
+		// digits are produced backwards into the buffer, 20 chars covering Long.MIN_VALUE
+		if (m_pos + 20 > m_buf.length)
+			flushBuffer();
+		if (value == Long.MIN_VALUE)
+		{
+			append(Long.toString(value));
+			return;
+		}
+		if (value < 0)
+		{
+			m_buf[m_pos++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long v = value; v >= 10; v /= 10)
+			digits++;
+		int end = m_pos + digits;
+		for (int i = end - 1; i >= m_pos; i--)
+		{
+			m_buf[i] = (char)('0' + (int)(value % 10));
+			value /= 10;
+		}
+		m_pos = end;
+	}
+
+	private void flushBuffer()
+	{
+		if (m_channel != null)
+		{
+			encode(false);
+		}
+		else if (m_pos > 0)
+		{
+			m_writer.write(m_buf, 0, m_pos);
+			m_pos = 0;
+		}
+	}
+
+	private void encode(boolean endOfInput)
+	{
+		int end = m_pos;
+		// a high surrogate at the very end waits for its low half from the next fill
+		boolean carry = !endOfInput && end > 0 && Character.isHighSurrogate(m_buf[end - 1]);
+		if (carry)
+			end--;
+
+		// bytes go straight into the direct buffer by absolute index, which the channel writes without a further copy
+		char[] buf = m_buf;
+		ByteBuffer out = m_bytes;
+		int p = 0;
+		int i = 0;
+		while (i < end)
+		{
+			char c = buf[i++];
+			if (c < 0x80)
+			{
+				out.put(p++, (byte)c);
+			}
+			else if (c < 0x800)
+			{
+				out.put(p++, (byte)(0xC0 | (c >> 6)));
+				out.put(p++, (byte)(0x80 | (c & 0x3F)));
+			}
+			else if (!Character.isSurrogate(c))
+			{
+				out.put(p++, (byte)(0xE0 | (c >> 12)));
+				out.put(p++, (byte)(0x80 | ((c >> 6) & 0x3F)));
+				out.put(p++, (byte)(0x80 | (c & 0x3F)));
+			}
+			else if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(buf[i]))
+			{
+				int codePoint = Character.toCodePoint(c, buf[i++]);
+				out.put(p++, (byte)(0xF0 | (codePoint >> 18)));
+				out.put(p++, (byte)(0x80 | ((codePoint >> 12) & 0x3F)));
+				out.put(p++, (byte)(0x80 | ((codePoint >> 6) & 0x3F)));
+				out.put(p++, (byte)(0x80 | (codePoint & 0x3F)));
+			}
+			else
+			{
+				// an unpaired surrogate, replaced the way the charset encoder does
+				out.put(p++, (byte)'?');
+			}
+		}
+		out.limit(p);
+		drain();
+
+		m_pos = 0;
+		if (carry)
+			buf[m_pos++] = buf[end];
+	}
+
+	private void drain()
+	{
+		// the buffer holds the encoded bytes from position zero up to its limit
+		try
+		{
+			while (m_bytes.hasRemaining())
+			{
+				m_channel.write(m_bytes);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		finally
+		{
+			m_bytes.clear();
+		}
+	}
+
+	private boolean writePlainDecimal(double value, boolean single)
+	{
+		// the digits Double.toString or Float.toString would produce, written straight into the buffer; false leaves
+		// scientific notation and digit strings too long to scale exactly to the caller
+		double abs = Math.abs(value);
+		if (abs == 0)
+		{
+			startEntry();
+			if (Double.doubleToRawLongBits(value) != 0)
+				append('-');
+			append('0');
+			append('.');
+			append('0');
+			return true;
+		}
+		if (abs < MIN_PLAIN_DECIMAL || abs >= MAX_PLAIN_DECIMAL)
+			return false;
+
+		// the fewest decimal places whose digits read back as the same value; the nearest candidate is tried first,
+		// then its neighbours in case the scaling rounded across a digit
+		for (int places = 1; places < POW10.length; places++)
+		{
+			double scaled = abs * POW10[places];
+			if (scaled >= MAX_EXACT_DIGITS)
+				return false;
+			long digits = (long)Math.rint(scaled);
+			if (!readsBack(digits, places, abs, single))
+			{
+				if (readsBack(digits - 1, places, abs, single))
+					digits--;
+				else if (readsBack(digits + 1, places, abs, single))
+					digits++;
+				else
+					continue;
+			}
+			startEntry();
+			if (value < 0)
+				append('-');
+			appendLong(digits / LONG_POW10[places]);
+			append('.');
+			appendFraction(digits % LONG_POW10[places], places);
+			return true;
+		}
+		return false;
+	}
+
+	private static boolean readsBack(long digits, int places, double value, boolean single)
+	{
+		// both operands are exact, so the division is the correctly rounded value of the decimal
+		double parsed = digits / POW10[places];
+		return single ? (float)parsed == value : parsed == value;
+	}
+
+	private void appendFraction(long fraction, int places)
+	{
+		// zero-padded to the full number of places, filled backwards like appendLong
+		if (m_pos + places > m_buf.length)
+			flushBuffer();
+		for (int i = m_pos + places - 1; i >= m_pos; i--)
+		{
+			m_buf[i] = (char)('0' + (int)(fraction % 10));
+			fraction /= 10;
+		}
+		m_pos += places;
 	}
 }
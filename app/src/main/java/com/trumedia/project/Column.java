@@ -0,0 +1,723 @@
+package com.trumedia.project;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.trumedia.project.CSVData.ColumnType;
+
+abstract class Column
+{
+	protected int m_size;
+
+	public static Column create(ColumnType type, int capacity)
+	{
+		switch (type)
+		{
+			case INT:
+				return new IntColumn(capacity);
+			case LONG:
+				return new LongColumn(capacity);
+			case DOUBLE:
+				return new DoubleColumn(capacity);
+			case BOOLEAN:
+				return new BooleanColumn(capacity);
+			case DICTIONARY:
+				return new DictionaryColumn(capacity);
+			default:
+				return new StringColumn(capacity);
+		}
+	}
+
+	public int size()
+	{
+		return m_size;
+	}
+
+	public abstract ColumnType getType();
+
+	// returns false when the value cannot be represented exactly, in which case the caller demotes the column
+	public abstract boolean add(String value);
+
+	public abstract boolean set(int row, String value);
+
+	public abstract String get(int row);
+
+	public abstract boolean isNull(int row);
+
+	public int getInt(int row, int defValue)
+	{
+		return Storage.parseInt(get(row), defValue);
+	}
+
+	public long getLong(int row, long defValue)
+	{
+		return Storage.parseLong(get(row), defValue);
+	}
+
+	public float getFloat(int row, float defValue)
+	{
+		return Storage.parseFloat(get(row), defValue);
+	}
+
+	public double getDouble(int row, double defValue)
+	{
+		return Storage.parseDouble(get(row), defValue);
+	}
+
+	public StringColumn toStringColumn()
+	{
+		StringColumn col = new StringColumn(m_size);
+		for (int i = 0; i < m_size; i++)
+		{
+			col.add(get(i));
+		}
+		return col;
+	}
+
+	protected static int grow(int length, int needed)
+	{
+		return Math.max(needed, length + (length >> 1) + 16);
+	}
+
+	private static boolean isCanonicalInteger(String value)
+	{
+		// the exact text Long.toString would produce, so the value round-trips
+		int len = value.length();
+		int start = (len > 0 && value.charAt(0) == '-') ? 1 : 0;
+		if (len == start || len - start > 19)
+			return false;
+		if (value.charAt(start) == '0' && (len - start > 1 || start == 1))
+			return false;
+		for (int i = start; i < len; i++)
+		{
+			char c = value.charAt(i);
+			if (c < '0' || c > '9')
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isPlainDecimal(String value)
+	{
+		// digits with an optional sign, point and exponent, the only shapes Double.toString produces for finite values
+		int len = value.length();
+		int i = (len > 0 && value.charAt(0) == '-') ? 1 : 0;
+		int digits = 0;
+		for (; i < len && Character.isDigit(value.charAt(i)); i++)
+			digits++;
+		if (i < len && value.charAt(i) == '.')
+		{
+			for (i++; i < len && Character.isDigit(value.charAt(i)); i++)
+				digits++;
+		}
+		if (digits == 0)
+			return false;
+		if (i < len && value.charAt(i) == 'E')
+		{
+			i++;
+			if (i < len && value.charAt(i) == '-')
+				i++;
+			int expDigits = 0;
+			for (; i < len && Character.isDigit(value.charAt(i)); i++)
+				expDigits++;
+			if (expDigits == 0)
+				return false;
+		}
+		return i == len;
+	}
+
+	static final class StringColumn extends Column
+	{
+		private String[] m_values;
+
+		public StringColumn(int capacity)
+		{
+			m_values = new String[Math.max(capacity, 16)];
+		}
+
+		StringColumn(String[] values, int size)
+		{
+			m_values = values;
+			m_size = size;
+		}
+
+		@Override
+		public ColumnType getType()
+		{
+			return ColumnType.STRING;
+		}
+
+		@Override
+		public boolean add(String value)
+		{
+			if (m_size == m_values.length)
+				m_values = Arrays.copyOf(m_values, grow(m_values.length, m_size + 1));
+			m_values[m_size++] = (value != null) ? value : "";
+			return true;
+		}
+
+		@Override
+		public boolean set(int row, String value)
+		{
+			m_values[row] = (value != null) ? value : "";
+			return true;
+		}
+
+		@Override
+		public String get(int row)
+		{
+			return m_values[row];
+		}
+
+		@Override
+		public boolean isNull(int row)
+		{
+			return m_values[row].isEmpty();
+		}
+
+		@Override
+		public StringColumn toStringColumn()
+		{
+			return this;
+		}
+	}
+
+	static final class IntColumn extends Column
+	{
+		private int[] m_values;
+		private final BitSet m_nulls;
+
+		public IntColumn(int capacity)
+		{
+			m_values = new int[Math.max(capacity, 16)];
+			m_nulls = new BitSet();
+		}
+
+		IntColumn(int[] values, BitSet nulls, int size)
+		{
+			m_values = values;
+			m_nulls = nulls;
+			m_size = size;
+		}
+
+		@Override
+		public ColumnType getType()
+		{
+			return ColumnType.INT;
+		}
+
+		@Override
+		public boolean add(String value)
+		{
+			if (m_size == m_values.length)
+				m_values = Arrays.copyOf(m_values, grow(m_values.length, m_size + 1));
+			if (!set(m_size, value))
+				return false;
+			m_size++;
+			return true;
+		}
+
+		@Override
+		public boolean set(int row, String value)
+		{
+			if (value == null || value.isEmpty())
+			{
+				m_values[row] = 0;
+				m_nulls.set(row);
+				return true;
+			}
+			if (!isCanonicalInteger(value) || value.length() > 11)
+				return false;
+			long parsed = Long.parseLong(value);
+			if (parsed < Integer.MIN_VALUE || parsed > Integer.MAX_VALUE)
+				return false;
+			m_values[row] = (int)parsed;
+			m_nulls.clear(row);
+			return true;
+		}
+
+		@Override
+		public String get(int row)
+		{
+			return m_nulls.get(row) ? "" : Integer.toString(m_values[row]);
+		}
+
+		@Override
+		public boolean isNull(int row)
+		{
+			return m_nulls.get(row);
+		}
+
+		@Override
+		public int getInt(int row, int defValue)
+		{
+			return m_nulls.get(row) ? defValue : m_values[row];
+		}
+
+		@Override
+		public long getLong(int row, long defValue)
+		{
+			return m_nulls.get(row) ? defValue : m_values[row];
+		}
+
+		@Override
+		public float getFloat(int row, float defValue)
+		{
+			return m_nulls.get(row) ? defValue : m_values[row];
+		}
+
+		@Override
+		public double getDouble(int row, double defValue)
+		{
+			return m_nulls.get(row) ? defValue : m_values[row];
+		}
+	}
+
+	static final class LongColumn extends Column
+	{
+		private long[] m_values;
+		private final BitSet m_nulls;
+
+		public LongColumn(int capacity)
+		{
+			m_values = new long[Math.max(capacity, 16)];
+			m_nulls = new BitSet();
+		}
+
+		LongColumn(long[] values, BitSet nulls, int size)
+		{
+			m_values = values;
+			m_nulls = nulls;
+			m_size = size;
+		}
+
+		@Override
+		public ColumnType getType()
+		{
+			return ColumnType.LONG;
+		}
+
+		@Override
+		public boolean add(String value)
+		{
+			if (m_size == m_values.length)
+				m_values = Arrays.copyOf(m_values, grow(m_values.length, m_size + 1));
+			if (!set(m_size, value))
+				return false;
+			m_size++;
+			return true;
+		}
+
+		@Override
+		public boolean set(int row, String value)
+		{
+			if (value == null || value.isEmpty())
+			{
+				m_values[row] = 0;
+				m_nulls.set(row);
+				return true;
+			}
+			if (!isCanonicalInteger(value))
+				return false;
+			long parsed;
+			try
+			{
+				parsed = Long.parseLong(value);
+			}
+			catch (NumberFormatException e)
+			{
+				// 19 digits beyond the long range
+				return false;
+			}
+			m_values[row] = parsed;
+			m_nulls.clear(row);
+			return true;
+		}
+
+		@Override
+		public String get(int row)
+		{
+			return m_nulls.get(row) ? "" : Long.toString(m_values[row]);
+		}
+
+		@Override
+		public boolean isNull(int row)
+		{
+			return m_nulls.get(row);
+		}
+
+		@Override
+		public int getInt(int row, int defValue)
+		{
+			if (m_nulls.get(row))
+				return defValue;
+			long val = m_values[row];
+			return (val >= Integer.MIN_VALUE && val <= Integer.MAX_VALUE) ? (int)val : defValue;
+		}
+
+		@Override
+		public long getLong(int row, long defValue)
+		{
+			return m_nulls.get(row) ? defValue : m_values[row];
+		}
+
+		@Override
+		public float getFloat(int row, float defValue)
+		{
+			return m_nulls.get(row) ? defValue : m_values[row];
+		}
+
+		@Override
+		public double getDouble(int row, double defValue)
+		{
+			return m_nulls.get(row) ? defValue : m_values[row];
+		}
+	}
+
+	static final class DoubleColumn extends Column
+	{
+		private static final double MAX_EXACT_INTEGER = 9007199254740992.0;
+
+		private double[] m_values;
+		private final BitSet m_nulls;
+		private final BitSet m_integralText;
+
+		public DoubleColumn(int capacity)
+		{
+			m_values = new double[Math.max(capacity, 16)];
+			m_nulls = new BitSet();
+			m_integralText = new BitSet();
+		}
+
+		DoubleColumn(double[] values, BitSet nulls, BitSet integralText, int size)
+		{
+			m_values = values;
+			m_nulls = nulls;
+			m_integralText = integralText;
+			m_size = size;
+		}
+
+		@Override
+		public ColumnType getType()
+		{
+			return ColumnType.DOUBLE;
+		}
+
+		@Override
+		public boolean add(String value)
+		{
+			if (m_size == m_values.length)
+				m_values = Arrays.copyOf(m_values, grow(m_values.length, m_size + 1));
+			if (!set(m_size, value))
+				return false;
+			m_size++;
+			return true;
+		}
+
+		@Override
+		public boolean set(int row, String value)
+		{
+			if (value == null || value.isEmpty())
+			{
+				m_values[row] = 0.0;
+				m_nulls.set(row);
+				m_integralText.clear(row);
+				return true;
+			}
+			if (!isPlainDecimal(value))
+				return false;
+			double parsed = Double.parseDouble(value);
+			if (isCanonicalInteger(value) && Math.abs(parsed) <= MAX_EXACT_INTEGER)
+			{
+				// written without a decimal point, e.g. "95"
+				m_integralText.set(row);
+			}
+			else if (Double.toString(parsed).equals(value))
+			{
+				m_integralText.clear(row);
+			}
+			else
+			{
+				return false;
+			}
+			m_values[row] = parsed;
+			m_nulls.clear(row);
+			return true;
+		}
+
+		@Override
+		public String get(int row)
+		{
+			if (m_nulls.get(row))
+				return "";
+			if (m_integralText.get(row))
+				return Long.toString((long)m_values[row]);
+			return Double.toString(m_values[row]);
+		}
+
+		// whether the value was written without a decimal point, which decides how get() formats it
+		boolean isIntegralText(int row)
+		{
+			return m_integralText.get(row);
+		}
+
+		@Override
+		public boolean isNull(int row)
+		{
+			return m_nulls.get(row);
+		}
+
+		@Override
+		public int getInt(int row, int defValue)
+		{
+			if (m_nulls.get(row) || !m_integralText.get(row))
+				return defValue;
+			double val = m_values[row];
+			return (val >= Integer.MIN_VALUE && val <= Integer.MAX_VALUE) ? (int)val : defValue;
+		}
+
+		@Override
+		public long getLong(int row, long defValue)
+		{
+			if (m_nulls.get(row) || !m_integralText.get(row))
+				return defValue;
+			return (long)m_values[row];
+		}
+
+		@Override
+		public float getFloat(int row, float defValue)
+		{
+			return m_nulls.get(row) ? defValue : (float)m_values[row];
+		}
+
+		@Override
+		public double getDouble(int row, double defValue)
+		{
+			return m_nulls.get(row) ? defValue : m_values[row];
+		}
+	}
+
+	static final class BooleanColumn extends Column
+	{
+		private static final String[][] SPELLINGS = {
+			{ "true", "false" }, { "TRUE", "FALSE" }, { "True", "False" },
+			{ "1", "0" }, { "T", "F" }, { "t", "f" }, { "Y", "N" }, { "y", "n" },
+			{ "yes", "no" }, { "YES", "NO" }, { "Yes", "No" }
+		};
+
+		private final BitSet m_values;
+		private final BitSet m_nulls;
+		private String[] m_spelling;
+
+		public BooleanColumn(int capacity)
+		{
+			m_values = new BitSet(capacity);
+			m_nulls = new BitSet();
+		}
+
+		BooleanColumn(BitSet values, BitSet nulls, String[] spelling, int size)
+		{
+			m_values = values;
+			m_nulls = nulls;
+			m_spelling = spelling;
+			m_size = size;
+		}
+
+		// the true/false spelling in use, or null while the column holds only nulls
+		String[] getSpelling()
+		{
+			return m_spelling;
+		}
+
+		@Override
+		public ColumnType getType()
+		{
+			return ColumnType.BOOLEAN;
+		}
+
+		@Override
+		public boolean add(String value)
+		{
+			if (!set(m_size, value))
+				return false;
+			m_size++;
+			return true;
+		}
+
+		@Override
+		public boolean set(int row, String value)
+		{
+			if (value == null || value.isEmpty())
+			{
+				m_values.clear(row);
+				m_nulls.set(row);
+				return true;
+			}
+			// the column keeps whichever true/false spelling it sees first
+			if (m_spelling == null)
+			{
+				for (String[] spelling : SPELLINGS)
+				{
+					if (spelling[0].equals(value) || spelling[1].equals(value))
+					{
+						m_spelling = spelling;
+						break;
+					}
+				}
+				if (m_spelling == null)
+					return false;
+			}
+			if (m_spelling[0].equals(value))
+				m_values.set(row);
+			else if (m_spelling[1].equals(value))
+				m_values.clear(row);
+			else
+				return false;
+			m_nulls.clear(row);
+			return true;
+		}
+
+		@Override
+		public String get(int row)
+		{
+			if (m_nulls.get(row))
+				return "";
+			return m_values.get(row) ? m_spelling[0] : m_spelling[1];
+		}
+
+		@Override
+		public boolean isNull(int row)
+		{
+			return m_nulls.get(row);
+		}
+	}
+
+	static final class DictionaryColumn extends Column
+	{
+		// code 0 is always the empty value
+		private static final int EMPTY = 0;
+
+		private int[] m_codes;
+		private String[] m_values;
+		// codes whose trimmed values are equal ignoring case share a match id, which is what equality filters compare
+		private int[] m_matchIds;
+		private int m_valueCount;
+		private final Map<String,Integer> m_codeLookup;
+		private final Map<String,Integer> m_matchLookup;
+
+		public DictionaryColumn(int capacity)
+		{
+			m_codes = new int[Math.max(capacity, 16)];
+			m_values = new String[16];
+			m_matchIds = new int[16];
+			m_codeLookup = new HashMap<String,Integer>();
+			m_matchLookup = new TreeMap<String,Integer>(String.CASE_INSENSITIVE_ORDER);
+			encode("");
+		}
+
+		DictionaryColumn(String[] dictionary, int[] codes, int size)
+		{
+			this(0);
+			int[] remap = new int[dictionary.length];
+			for (int i = 0; i < dictionary.length; i++)
+			{
+				remap[i] = encode(dictionary[i]);
+			}
+			for (int i = 0; i < size; i++)
+			{
+				codes[i] = remap[codes[i]];
+			}
+			m_codes = codes;
+			m_size = size;
+		}
+
+		@Override
+		public ColumnType getType()
+		{
+			return ColumnType.DICTIONARY;
+		}
+
+		@Override
+		public boolean add(String value)
+		{
+			if (m_size == m_codes.length)
+				m_codes = Arrays.copyOf(m_codes, grow(m_codes.length, m_size + 1));
+			m_codes[m_size++] = encode(value);
+			return true;
+		}
+
+		@Override
+		public boolean set(int row, String value)
+		{
+			m_codes[row] = encode(value);
+			return true;
+		}
+
+		@Override
+		public String get(int row)
+		{
+			return m_values[m_codes[row]];
+		}
+
+		@Override
+		public boolean isNull(int row)
+		{
+			return m_codes[row] == EMPTY;
+		}
+
+		public int getCode(int row)
+		{
+			return m_codes[row];
+		}
+
+		public String decode(int code)
+		{
+			return m_values[code];
+		}
+
+		public int getValueCount()
+		{
+			return m_valueCount;
+		}
+
+		public int getMatchId(int code)
+		{
+			return m_matchIds[code];
+		}
+
+		// the match id of cells equal to the value ignoring case, or -1 when no cell can match
+		public int findMatchId(String value)
+		{
+			Integer matchId = m_matchLookup.get(value);
+			return (matchId != null) ? matchId : -1;
+		}
+
+		public int encode(String value)
+		{
+			if (value == null)
+				value = "";
+			Integer code = m_codeLookup.get(value);
+			if (code != null)
+				return code;
+			if (m_valueCount == m_values.length)
+			{
+				m_values = Arrays.copyOf(m_values, m_valueCount * 2);
+				m_matchIds = Arrays.copyOf(m_matchIds, m_valueCount * 2);
+			}
+			String key = value.trim();
+			Integer matchId = m_matchLookup.get(key);
+			if (matchId == null)
+			{
+				matchId = m_matchLookup.size();
+				m_matchLookup.put(key, matchId);
+			}
+			m_values[m_valueCount] = value;
+			m_matchIds[m_valueCount] = matchId;
+			m_codeLookup.put(value, m_valueCount);
+			return m_valueCount++;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.trumedia.project;
+
+import com.trumedia.project.CSVData.ColumnType;
+
+class ColumnarStorage extends Storage
+{
+	private final ColumnType[] m_types;
+	private final Column[] m_columns;
+	private int m_rowCount;
+
+	public ColumnarStorage(ColumnType[] types, int capacity)
+	{
+		m_types = types.clone();
+		m_columns = new Column[types.length];
+		for (int i = 0; i < types.length; i++)
+		{
+			m_columns[i] = Column.create(types[i], capacity);
+		}
+	}
+
+	@Override
+	public int getRowCount()
+	{
+		return m_rowCount;
+	}
+
+	@Override
+	public int getColCount()
+	{
+		return m_columns.length;
+	}
+
+	@Override
+	public ColumnType getColType(int col)
+	{
+		return m_columns[col].getType();
+	}
+
+	@Override
+	public int addRow(String[] values)
+	{
+		for (int i = 0; i < m_columns.length; i++)
+		{
+			String value = (i < values.length && values[i] != null) ? values[i] : "";
+			if (!m_columns[i].add(value))
+			{
+				demote(i);
+				m_columns[i].add(value);
+			}
+		}
+		return m_rowCount++;
+	}
+
+	@Override
+	public String getValue(int row, int col)
+	{
+		return m_columns[col].get(row);
+	}
+
+	@Override
+	public void setValue(int row, int col, String value)
+	{
+		if (!m_columns[col].set(row, value))
+		{
+			demote(col);
+			m_columns[col].set(row, value);
+		}
+	}
+
+	@Override
+	public boolean isEmpty(int row, int col)
+	{
+		Column column = m_columns[col];
+		return isText(column.getType()) ? isBlank(column.get(row)) : column.isNull(row);
+	}
+
+	@Override
+	public int getInt(int row, int col, int defValue)
+	{
+		return m_columns[col].getInt(row, defValue);
+	}
+
+	@Override
+	public long getLong(int row, int col, long defValue)
+	{
+		return m_columns[col].getLong(row, defValue);
+	}
+
+	@Override
+	public float getFloat(int row, int col, float defValue)
+	{
+		return m_columns[col].getFloat(row, defValue);
+	}
+
+	@Override
+	public double getDouble(int row, int col, double defValue)
+	{
+		return m_columns[col].getDouble(row, defValue);
+	}
+
+	@Override
+	Column getColumn(int col)
+	{
+		return m_columns[col];
+	}
+
+	@Override
+	Column.DictionaryColumn getDictionary(int col)
+	{
+		Column column = m_columns[col];
+		return (column instanceof Column.DictionaryColumn) ? (Column.DictionaryColumn)column : null;
+	}
+
+	@Override
+	int getCode(int row, int col)
+	{
+		return ((Column.DictionaryColumn)m_columns[col]).getCode(row);
+	}
+
+	@Override
+	public Storage createEmpty(int capacity)
+	{
+		return new ColumnarStorage(m_types, capacity);
+	}
+
+	private void demote(int col)
+	{
+		// a value that the typed column cannot hold exactly turns the whole column back into strings
+		m_columns[col] = m_columns[col].toStringColumn();
+	}
+}
@@ -0,0 +1,75 @@
+package com.trumedia.project;
+
+import java.util.function.BiConsumer;
+
+class CompositeIndex
+{
+	private static final char SEPARATOR = '\u0000';
+
+	private final int[] m_colIndexes;
+	private final HashIndex m_index;
+
+	public CompositeIndex(int[] colIndexes, int capacity)
+	{
+		m_colIndexes = colIndexes.clone();
+		m_index = new HashIndex(-1, capacity);
+	}
+
+	public int[] getColIndexes()
+	{
+		return m_colIndexes;
+	}
+
+	public boolean covers(int colIndex)
+	{
+		for (int col : m_colIndexes)
+		{
+			if (col == colIndex)
+				return true;
+		}
+		return false;
+	}
+
+	public void add(int row, String key)
+	{
+		m_index.add(row, key);
+	}
+
+	public void remove(int row, String key)
+	{
+		m_index.remove(row, key);
+	}
+
+	public IntList find(String key)
+	{
+		return m_index.find(key);
+	}
+
+	public int count(String key)
+	{
+		return m_index.count(key);
+	}
+
+	public void forEach(BiConsumer<String,IntList> action)
+	{
+		m_index.forEach(action);
+	}
+
+	public static String buildKey(String[] values)
+	{
+		// the separator never appears in CSV text, and equalsIgnoreCase on the joined key matches per-part comparison
+		int length = values.length;
+		for (String value : values)
+		{
+			length += value.length();
+		}
+		StringBuilder key = new StringBuilder(length);
+		for (int i = 0; i < values.length; i++)
+		{
+			if (i > 0)
+				key.append(SEPARATOR);
+			key.append(values[i]);
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,236 @@
+package com.trumedia.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+public class ConcurrentAppender implements AutoCloseable
+{
+	// writers fill striped buffers without touching the data, rows reach it in batches in the order their ids were handed out
+	private static final int DEFAULT_BATCH_SIZE = 1024;
+	// a writer waits for a drain once its stripe holds this many batches
+	private static final int MAX_PENDING_BATCHES = 8;
+
+	private final CSVData m_csv;
+	private final Stripe[] m_stripes;
+	private final int m_batchSize;
+	private final AtomicInteger m_nextId = new AtomicInteger();
+	private final AtomicInteger m_nextStripe = new AtomicInteger();
+	private final ThreadLocal<Stripe> m_stripe;
+	private final ReentrantReadWriteLock m_lock = new ReentrantReadWriteLock();
+	// rows drained ahead of an id that was not buffered yet, guarded by the write lock
+	private final IntList m_waitingIds = new IntList();
+	private final List<String[]> m_waitingRows = new ArrayList<String[]>();
+	private volatile int m_published;
+	private volatile boolean m_closed;
+
+	ConcurrentAppender(CSVData csv, int stripes)
+	{
+		this(csv, stripes, DEFAULT_BATCH_SIZE);
+	}
+
+	ConcurrentAppender(CSVData csv, int stripes, int batchSize)
+	{
+		if (stripes < 1)
+			throw new IllegalArgumentException("Stripe count must be at least 1: " + stripes);
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+		m_csv = csv;
+		m_batchSize = batchSize;
+		m_stripes = new Stripe[stripes];
+		for (int i = 0; i < stripes; i++)
+		{
+			m_stripes[i] = new Stripe(batchSize);
+		}
+		// threads are spread over the stripes round robin the first time they append
+		m_stripe = ThreadLocal.withInitial(() -> m_stripes[Math.floorMod(m_nextStripe.getAndIncrement(), m_stripes.length)]);
+	}
+
+	public CSVData getCSV()
+	{
+		return m_csv;
+	}
+
+	// safe to call from any thread, returns the row's position in the append order
+	public int addLine(String[] cols)
+	{
+		if (m_closed)
+			throw new IllegalStateException("Appender is closed");
+		if (cols == null)
+			throw new IllegalArgumentException("Row values required");
+		// copied before an id is handed out, so a failure here cannot leave an id without its row
+		String[] row = cols.clone();
+		Stripe stripe = m_stripe.get();
+		int id;
+		int pending;
+		synchronized (stripe)
+		{
+			// allocated under the stripe lock, so once a drain has passed this stripe every id it handed out is buffered
+			id = m_nextId.getAndIncrement();
+			stripe.m_ids.add(id);
+			stripe.m_rows.add(row);
+			pending = stripe.m_ids.size();
+		}
+		if (pending >= m_batchSize && m_lock.getReadHoldCount() == 0)
+		{
+			if (pending >= m_batchSize * MAX_PENDING_BATCHES)
+			{
+				m_lock.writeLock().lock();
+			}
+			else if (!m_lock.writeLock().tryLock())
+			{
+				// another writer is draining or readers are active, the rows stay buffered until the next drain
+				return id;
+			}
+			try
+			{
+				drain();
+			}
+			finally
+			{
+				m_lock.writeLock().unlock();
+			}
+		}
+		return id;
+	}
+
+	public int getLineCount()
+	{
+		return m_published;
+	}
+
+	public void flush()
+	{
+		// publishes every row appended before the call, rows appended meanwhile may come along
+		if (m_lock.getReadHoldCount() > 0)
+			throw new IllegalStateException("Cannot flush while reading");
+		int target = m_nextId.get();
+		m_lock.writeLock().lock();
+		try
+		{
+			while (m_published < target)
+			{
+				drain();
+			}
+		}
+		finally
+		{
+			m_lock.writeLock().unlock();
+		}
+	}
+
+	public <T> T read(Function<CSVData,T> reader)
+	{
+		// the data holds the rows published so far and does not change until the reader returns, appends keep buffering meanwhile
+		if (m_lock.getReadHoldCount() == 0 && m_lock.writeLock().tryLock())
+		{
+			try
+			{
+				drain();
+				m_lock.readLock().lock();
+			}
+			finally
+			{
+				m_lock.writeLock().unlock();
+			}
+		}
+		else
+		{
+			m_lock.readLock().lock();
+		}
+		try
+		{
+			return reader.apply(m_csv);
+		}
+		finally
+		{
+			m_lock.readLock().unlock();
+		}
+	}
+
+	public CSVData snapshot()
+	{
+		// a detached copy of the published rows, for readers that outlive a single read call
+		return read(csv -> new CSVData(csv.getHeader(), csv.getLines()));
+	}
+
+	@Override
+	public void close()
+	{
+		// call once the writers are done, anything they appended is published
+		m_closed = true;
+		flush();
+	}
+
+	private void drain()
+	{
+		// caller holds the write lock
+		IntList ids = new IntList();
+		List<String[]> rows = new ArrayList<String[]>();
+		ids.addAll(m_waitingIds);
+		rows.addAll(m_waitingRows);
+		for (Stripe stripe : m_stripes)
+		{
+			IntList stripeIds;
+			List<String[]> stripeRows;
+			synchronized (stripe)
+			{
+				if (stripe.m_ids.isEmpty())
+					continue;
+				stripeIds = stripe.m_ids;
+				stripeRows = stripe.m_rows;
+				stripe.m_ids = new IntList(m_batchSize);
+				stripe.m_rows = new ArrayList<String[]>(m_batchSize);
+			}
+			ids.addAll(stripeIds);
+			rows.addAll(stripeRows);
+		}
+		if (ids.isEmpty())
+			return;
+
+		// ids are dense, so rows are placed by id and the gap-free prefix goes in
+		int published = m_published;
+		int maxId = published;
+		for (int i = 0; i < ids.size(); i++)
+		{
+			maxId = Math.max(maxId, ids.get(i));
+		}
+		String[][] slots = new String[maxId - published + 1][];
+		for (int i = 0; i < ids.size(); i++)
+		{
+			slots[ids.get(i) - published] = rows.get(i);
+		}
+		int count = 0;
+		while (count < slots.length && slots[count] != null)
+		{
+			m_csv.addLine(slots[count]);
+			count++;
+		}
+		m_waitingIds.clear();
+		m_waitingRows.clear();
+		for (int i = count; i < slots.length; i++)
+		{
+			if (slots[i] != null)
+			{
+				m_waitingIds.add(published + i);
+				m_waitingRows.add(slots[i]);
+			}
+		}
+		m_published = published + count;
+	}
+
+	private static class Stripe
+	{
+		// guarded by the stripe's own monitor
+		private IntList m_ids;
+		private List<String[]> m_rows;
+
+		public Stripe(int capacity)
+		{
+			m_ids = new IntList(capacity);
+			m_rows = new ArrayList<String[]>(capacity);
+		}
+	}
+}
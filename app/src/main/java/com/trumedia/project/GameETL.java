@@ -0,0 +1,170 @@
+package com.trumedia.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.trumedia.project.CSVData.IndexType;
+import com.trumedia.project.CSVData.Line;
+
+public class GameETL
+{
+	public static final String CHECKPOINT_FILE = ".etl_checkpoint.csv";
+	public static final String GAMES_FILE = "games.csv";
+
+	private static final String[] CHECKPOINT_COLUMNS = { "game_pk", "status", "updated" };
+	private static final String FINAL = "Final";
+	private static final String LIVE = "Live";
+
+	private final StatsApiFetcher m_fetcher;
+	private final File m_outputDir;
+	private final File m_checkpointFile;
+	private final CSVData m_checkpoint;
+
+	public GameETL(StatsApiFetcher fetcher, File outputDir) throws IOException
+	{
+		m_fetcher = fetcher;
+		m_outputDir = outputDir;
+		m_checkpointFile = new File(outputDir, CHECKPOINT_FILE);
+		Files.createDirectories(outputDir.toPath());
+		m_checkpoint = m_checkpointFile.exists() ? new CSVReader(m_checkpointFile).read() : new CSVData(CHECKPOINT_COLUMNS);
+		m_checkpoint.addIndex("game_pk", IndexType.HASH);
+	}
+
+	public String getStatus(int gamePk)
+	{
+		Line line = m_checkpoint.findFirstMatch("game_pk", Integer.toString(gamePk));
+		return (line != null) ? line.getColValue("status") : null;
+	}
+
+	// fetches and writes only the games that are new or not yet final, returning how many were processed
+	public int run(LocalDate startDate, LocalDate endDate) throws IOException, InterruptedException
+	{
+		List<Integer> pending = findPending(m_fetcher.fetchSchedule(startDate, endDate));
+		if (pending.isEmpty())
+			return 0;
+
+		Map<Integer, GameFeed> feeds = m_fetcher.fetchGameFeeds(pending, (gamePk, body) -> GameFeed.parse(body));
+		CSVData games = new CSVData(GameFeed.GAME_COLUMNS);
+		for (Map.Entry<Integer, GameFeed> entry : feeds.entrySet())
+		{
+			int gamePk = entry.getKey();
+			GameFeed feed = entry.getValue();
+			// per-game tables are replaced whole, so reprocessing a game leaves no stale rows behind
+			writeAtomically(new File(m_outputDir, "game_pitches_" + gamePk + ".csv"), feed.getPitches());
+			writeAtomically(new File(m_outputDir, "game_player_batting_" + gamePk + ".csv"), feed.getBatting());
+			writeAtomically(new File(m_outputDir, "game_team_" + gamePk + ".csv"), feed.getTeams());
+			games.appendData(feed.getGames());
+		}
+		mergeGames(games);
+
+		// the checkpoint goes last, so an interrupted run repeats its games instead of losing them
+		String updated = Instant.now().toString();
+		for (Map.Entry<Integer, GameFeed> entry : feeds.entrySet())
+		{
+			String gamePk = entry.getKey().toString();
+			String status = entry.getValue().getStatuses().get(0);
+			Line line = m_checkpoint.findFirstMatch("game_pk", gamePk);
+			if (line == null)
+				line = m_checkpoint.addEmptyLine();
+			line.setValue("game_pk", gamePk);
+			line.setValue("status", status);
+			line.setValue("updated", updated);
+		}
+		writeAtomically(m_checkpointFile, m_checkpoint);
+		return feeds.size();
+	}
+
+	private List<Integer> findPending(JSONObject schedule)
+	{
+		List<Integer> pending = new ArrayList<Integer>();
+		JSONArray dates = schedule.optJSONArray("dates");
+		if (dates == null)
+			return pending;
+		for (int i = 0; i < dates.length(); i++)
+		{
+			JSONArray scheduled = dates.getJSONObject(i).optJSONArray("games");
+			if (scheduled == null)
+				continue;
+			for (int j = 0; j < scheduled.length(); j++)
+			{
+				JSONObject game = scheduled.getJSONObject(j);
+				int gamePk = game.getInt("gamePk");
+				JSONObject status = game.optJSONObject("status");
+				String state = (status != null) ? status.optString("abstractGameState", "") : "";
+				// games that have not started have nothing to load, and final games never change
+				if (!state.equals(LIVE) && !state.equals(FINAL))
+					continue;
+				if (!FINAL.equals(getStatus(gamePk)) && !pending.contains(gamePk))
+					pending.add(gamePk);
+			}
+		}
+		return pending;
+	}
+
+	private void mergeGames(CSVData games) throws IOException
+	{
+		File gamesFile = new File(m_outputDir, GAMES_FILE);
+		if (!gamesFile.exists())
+		{
+			writeAtomically(gamesFile, games);
+			return;
+		}
+
+		// one small row per game, so the file is rewritten whole; appending in place could leave a torn row if the run dies mid-write
+		CSVData existing = new CSVReader(gamesFile).read();
+		existing.addIndex("game_pk", IndexType.HASH);
+		CSVData appended = new CSVData(existing.getHeader());
+		boolean patched = false;
+		for (Line line : games.getLines())
+		{
+			Line match = existing.findFirstMatch("game_pk", line.getColValue("game_pk"));
+			if (match == null)
+			{
+				appended.addLine(line);
+				continue;
+			}
+			for (int i = 0; i < existing.getColCount(); i++)
+			{
+				String value = line.getColValue(existing.getHeader().getColName(i), "");
+				if (!value.equals(match.getColValue(i)))
+				{
+					match.setValue(i, value);
+					patched = true;
+				}
+			}
+		}
+		if (!patched && appended.isEmpty())
+			return;
+		existing.appendData(appended);
+		writeAtomically(gamesFile, existing);
+	}
+
+	private static void writeAtomically(File file, CSVData csv) throws IOException
+	{
+		// the channel writer reports write failures, which a half-written temp file must not be moved over
+		Path tmp = new File(file.getParentFile(), file.getName() + ".tmp").toPath();
+		try
+		{
+			try (CSVWriter writer = new CSVWriter(tmp))
+			{
+				writer.write(csv, true, false);
+			}
+			Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(tmp);
+		}
+	}
+}
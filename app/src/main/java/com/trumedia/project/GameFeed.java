@@ -0,0 +1,557 @@
+package com.trumedia.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GameFeed
+{
+	public static final String[] PITCH_COLUMNS = { "game_pk", "at_bat_number", "pitch_number", "inning", "half_inning", "strikes", "batterid", "pitcherid", "pitch_type", "velocity", "atbatresult" };
+	public static final String[] BATTING_COLUMNS = { "game_pk", "player_id", "team_id", "jersey", "runs_scored", "home_runs", "total_bases", "at_bats", "plate_appearances" };
+	public static final String[] TEAM_COLUMNS = { "game_pk", "team_id", "home", "runs_scored", "runs_diff", "wins_before_game", "losses_before_game", "home_runs", "total_bases", "at_bats", "plate_appearances" };
+	public static final String[] GAME_COLUMNS = { "game_pk", "season", "double_header", "home_team_id", "away_team_id", "venue_id" };
+
+	// boxscore batting fields, in the order they appear in the batting and team tables
+	private static final String[] BATTING_STATS = { "runs", "homeRuns", "totalBases", "atBats", "plateAppearances" };
+	private static final int HOME = 0;
+	private static final int AWAY = 1;
+
+	private final CSVData m_pitches = new CSVData(PITCH_COLUMNS);
+	private final CSVData m_batting = new CSVData(BATTING_COLUMNS);
+	private final CSVData m_teams = new CSVData(TEAM_COLUMNS);
+	private final CSVData m_games = new CSVData(GAME_COLUMNS);
+	private final List<String> m_statuses = new ArrayList<String>();
+
+	public GameFeed()
+	{
+	}
+
+	// reads one game's live feed token by token, without building a tree of the whole document
+	public static GameFeed parse(InputStream in) throws IOException
+	{
+		GameFeed feed = new GameFeed();
+		feed.read(in);
+		return feed;
+	}
+
+	public void read(InputStream in) throws IOException
+	{
+		FeedState state = new FeedState();
+		JsonTokenizer json = new JsonTokenizer(in);
+		if (!json.beginObject())
+			throw new IOException("Game feed is not a JSON object");
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			if (name.equals("gamePk"))
+				state.m_gamePk = json.nextValue();
+			else if (name.equals("gameData"))
+				readGameData(json, state);
+			else if (name.equals("liveData"))
+				readLiveData(json, state);
+			else
+				json.skipValue();
+		}
+		if (state.m_gamePk == null)
+			throw new IOException("Game feed has no gamePk");
+		state.addTo(this);
+	}
+
+	public void append(GameFeed other)
+	{
+		m_pitches.addLines(other.m_pitches.getLines());
+		m_batting.addLines(other.m_batting.getLines());
+		m_teams.addLines(other.m_teams.getLines());
+		m_games.addLines(other.m_games.getLines());
+		m_statuses.addAll(other.m_statuses);
+	}
+
+	public CSVData getPitches()
+	{
+		return m_pitches;
+	}
+
+	public CSVData getBatting()
+	{
+		return m_batting;
+	}
+
+	public CSVData getTeams()
+	{
+		return m_teams;
+	}
+
+	public CSVData getGames()
+	{
+		return m_games;
+	}
+
+	// abstractGameState of each game read, in the same order as the games table
+	public List<String> getStatuses()
+	{
+		return m_statuses;
+	}
+
+	private static void readGameData(JsonTokenizer json, FeedState state) throws IOException
+	{
+		if (!json.beginObject())
+			return;
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			switch (name)
+			{
+				case "game":
+					if (json.beginObject())
+					{
+						String field;
+						while ((field = json.nextName()) != null)
+						{
+							if (field.equals("season"))
+								state.m_season = json.nextValue();
+							else if (field.equals("doubleHeader"))
+								state.m_doubleHeader = json.nextValue();
+							else
+								json.skipValue();
+						}
+					}
+					break;
+				case "status":
+					state.m_status = readField(json, "abstractGameState");
+					break;
+				case "venue":
+					state.m_venueId = readField(json, "id");
+					break;
+				case "teams":
+					if (json.beginObject())
+					{
+						String side;
+						while ((side = json.nextName()) != null)
+						{
+							if (side.equals("home"))
+								readGameTeam(json, state, HOME);
+							else if (side.equals("away"))
+								readGameTeam(json, state, AWAY);
+							else
+								json.skipValue();
+						}
+					}
+					break;
+				default:
+					json.skipValue();
+					break;
+			}
+		}
+	}
+
+	private static void readGameTeam(JsonTokenizer json, FeedState state, int side) throws IOException
+	{
+		if (!json.beginObject())
+			return;
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			if (name.equals("id"))
+			{
+				state.m_teamIds[side] = json.nextValue();
+			}
+			else if (name.equals("record") && json.beginObject())
+			{
+				String field;
+				while ((field = json.nextName()) != null)
+				{
+					if (field.equals("wins"))
+						state.m_wins[side] = json.nextValue();
+					else if (field.equals("losses"))
+						state.m_losses[side] = json.nextValue();
+					else
+						json.skipValue();
+				}
+			}
+			else if (!name.equals("record"))
+			{
+				json.skipValue();
+			}
+		}
+	}
+
+	private static void readLiveData(JsonTokenizer json, FeedState state) throws IOException
+	{
+		if (!json.beginObject())
+			return;
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			if (name.equals("plays") && json.beginObject())
+			{
+				String field;
+				while ((field = json.nextName()) != null)
+				{
+					if (field.equals("allPlays") && json.beginArray())
+					{
+						while (json.hasNextElement())
+						{
+							readPlay(json, state);
+						}
+					}
+					else if (!field.equals("allPlays"))
+					{
+						json.skipValue();
+					}
+				}
+			}
+			else if (name.equals("boxscore") && json.beginObject())
+			{
+				String field;
+				while ((field = json.nextName()) != null)
+				{
+					if (field.equals("teams") && json.beginObject())
+					{
+						String side;
+						while ((side = json.nextName()) != null)
+						{
+							if (side.equals("home"))
+								readBoxscoreTeam(json, state, HOME);
+							else if (side.equals("away"))
+								readBoxscoreTeam(json, state, AWAY);
+							else
+								json.skipValue();
+						}
+					}
+					else if (!field.equals("teams"))
+					{
+						json.skipValue();
+					}
+				}
+			}
+			else if (!name.equals("plays") && !name.equals("boxscore"))
+			{
+				json.skipValue();
+			}
+		}
+	}
+
+	private static void readPlay(JsonTokenizer json, FeedState state) throws IOException
+	{
+		if (!json.beginObject())
+			return;
+		String atBatIndex = null;
+		String inning = null;
+		String halfInning = null;
+		String batter = null;
+		String pitcher = null;
+		String result = null;
+		// pitch_number, strikes, pitch_type, velocity; the play's other fields may come after its events
+		List<String[]> pitches = new ArrayList<String[]>();
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			switch (name)
+			{
+				case "result":
+					result = readField(json, "eventType");
+					break;
+				case "about":
+					if (json.beginObject())
+					{
+						String field;
+						while ((field = json.nextName()) != null)
+						{
+							if (field.equals("atBatIndex"))
+								atBatIndex = json.nextValue();
+							else if (field.equals("inning"))
+								inning = json.nextValue();
+							else if (field.equals("halfInning"))
+								halfInning = json.nextValue();
+							else
+								json.skipValue();
+						}
+					}
+					break;
+				case "matchup":
+					if (json.beginObject())
+					{
+						String field;
+						while ((field = json.nextName()) != null)
+						{
+							if (field.equals("batter"))
+								batter = readField(json, "id");
+							else if (field.equals("pitcher"))
+								pitcher = readField(json, "id");
+							else
+								json.skipValue();
+						}
+					}
+					break;
+				case "playEvents":
+					if (json.beginArray())
+					{
+						// the count on each event is after it, so a pitch is thrown on the previous event's count
+						String strikes = "0";
+						while (json.hasNextElement())
+						{
+							strikes = readPlayEvent(json, strikes, pitches);
+						}
+					}
+					break;
+				default:
+					json.skipValue();
+					break;
+			}
+		}
+
+		String atBatNumber = "";
+		if (atBatIndex != null)
+			atBatNumber = Integer.toString(Storage.parseInt(atBatIndex, -1) + 1);
+		for (String[] pitch : pitches)
+		{
+			state.m_pitches.add(new String[] { null, atBatNumber, pitch[0], nonNull(inning), nonNull(halfInning), pitch[1], nonNull(batter), nonNull(pitcher), pitch[2], pitch[3], nonNull(result) });
+		}
+	}
+
+	private static String readPlayEvent(JsonTokenizer json, String strikesBefore, List<String[]> pitches) throws IOException
+	{
+		if (!json.beginObject())
+			return strikesBefore;
+		boolean isPitch = false;
+		String pitchNumber = null;
+		String strikesAfter = null;
+		String pitchType = null;
+		String velocity = null;
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			switch (name)
+			{
+				case "isPitch":
+					isPitch = "true".equals(json.nextValue());
+					break;
+				case "pitchNumber":
+					pitchNumber = json.nextValue();
+					break;
+				case "count":
+					strikesAfter = readField(json, "strikes");
+					break;
+				case "details":
+					if (json.beginObject())
+					{
+						String field;
+						while ((field = json.nextName()) != null)
+						{
+							if (field.equals("type"))
+								pitchType = readField(json, "code");
+							else
+								json.skipValue();
+						}
+					}
+					break;
+				case "pitchData":
+					velocity = readField(json, "startSpeed");
+					break;
+				default:
+					json.skipValue();
+					break;
+			}
+		}
+		if (isPitch)
+			pitches.add(new String[] { nonNull(pitchNumber), strikesBefore, nonNull(pitchType), formatNumber(velocity) });
+		return (strikesAfter != null) ? strikesAfter : strikesBefore;
+	}
+
+	private static void readBoxscoreTeam(JsonTokenizer json, FeedState state, int side) throws IOException
+	{
+		if (!json.beginObject())
+			return;
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			if (name.equals("team"))
+			{
+				String teamId = readField(json, "id");
+				if (teamId != null)
+					state.m_teamIds[side] = teamId;
+			}
+			else if (name.equals("teamStats") && json.beginObject())
+			{
+				String field;
+				while ((field = json.nextName()) != null)
+				{
+					if (field.equals("batting"))
+						readBatting(json, state.m_teamBatting[side]);
+					else
+						json.skipValue();
+				}
+			}
+			else if (name.equals("players") && json.beginObject())
+			{
+				while (json.nextName() != null)
+				{
+					readPlayer(json, state, side);
+				}
+			}
+			else if (!name.equals("teamStats") && !name.equals("players"))
+			{
+				json.skipValue();
+			}
+		}
+	}
+
+	private static void readPlayer(JsonTokenizer json, FeedState state, int side) throws IOException
+	{
+		if (!json.beginObject())
+			return;
+		String playerId = null;
+		String jersey = null;
+		String[] batting = new String[BATTING_STATS.length];
+		boolean batted = false;
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			if (name.equals("person"))
+			{
+				playerId = readField(json, "id");
+			}
+			else if (name.equals("jerseyNumber"))
+			{
+				jersey = json.nextValue();
+			}
+			else if (name.equals("stats") && json.beginObject())
+			{
+				String field;
+				while ((field = json.nextName()) != null)
+				{
+					if (field.equals("batting"))
+						batted = readBatting(json, batting);
+					else
+						json.skipValue();
+				}
+			}
+			else if (!name.equals("stats"))
+			{
+				json.skipValue();
+			}
+		}
+		// players who never came to bat have an empty batting object
+		if (playerId == null || !batted)
+			return;
+		String[] row = new String[BATTING_COLUMNS.length];
+		row[1] = playerId;
+		row[3] = nonNull(jersey);
+		for (int i = 0; i < batting.length; i++)
+		{
+			row[4 + i] = nonNull(batting[i]);
+		}
+		state.m_batting.add(row);
+		state.m_battingSides.add(side);
+	}
+
+	private static boolean readBatting(JsonTokenizer json, String[] values) throws IOException
+	{
+		if (!json.beginObject())
+			return false;
+		boolean any = false;
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			any = true;
+			int index = indexOf(BATTING_STATS, name);
+			if (index >= 0)
+				values[index] = json.nextValue();
+			else
+				json.skipValue();
+		}
+		return any;
+	}
+
+	// the scalar value of one field of an object, skipping its other fields
+	private static String readField(JsonTokenizer json, String field) throws IOException
+	{
+		if (!json.beginObject())
+			return null;
+		String value = null;
+		String name;
+		while ((name = json.nextName()) != null)
+		{
+			if (name.equals(field))
+				value = json.nextValue();
+			else
+				json.skipValue();
+		}
+		return value;
+	}
+
+	private static String formatNumber(String value)
+	{
+		// whole speeds are written without the trailing ".0", as in the sample data
+		if (value == null)
+			return "";
+		if (value.endsWith(".0"))
+			return value.substring(0, value.length() - 2);
+		return value;
+	}
+
+	private static String nonNull(String value)
+	{
+		return (value != null) ? value : "";
+	}
+
+	private static int indexOf(String[] values, String value)
+	{
+		for (int i = 0; i < values.length; i++)
+		{
+			if (values[i].equals(value))
+				return i;
+		}
+		return -1;
+	}
+
+	private static class FeedState
+	{
+		private String m_gamePk;
+		private String m_season;
+		private String m_doubleHeader;
+		private String m_venueId;
+		private String m_status;
+		private final String[] m_teamIds = new String[2];
+		private final String[] m_wins = new String[2];
+		private final String[] m_losses = new String[2];
+		private final String[][] m_teamBatting = new String[2][BATTING_STATS.length];
+		private final List<String[]> m_pitches = new ArrayList<String[]>();
+		private final List<String[]> m_batting = new ArrayList<String[]>();
+		private final IntList m_battingSides = new IntList();
+
+		public void addTo(GameFeed feed)
+		{
+			// game_pk and team ids are filled in last since the feed is free to list them after the rows
+			for (String[] row : m_pitches)
+			{
+				row[0] = m_gamePk;
+				feed.m_pitches.addLine(row);
+			}
+			for (int i = 0; i < m_batting.size(); i++)
+			{
+				String[] row = m_batting.get(i);
+				row[0] = m_gamePk;
+				row[2] = nonNull(m_teamIds[m_battingSides.get(i)]);
+				feed.m_batting.addLine(row);
+			}
+			for (int side : new int[] { HOME, AWAY })
+			{
+				if (m_teamIds[side] == null)
+					continue;
+				String[] batting = m_teamBatting[side];
+				String[] opponent = m_teamBatting[1 - side];
+				String runsDiff = "";
+				if (batting[0] != null && opponent[0] != null)
+					runsDiff = Integer.toString(Storage.parseInt(batting[0], 0) - Storage.parseInt(opponent[0], 0));
+				// the feed's records stand as of the start of the game
+				feed.m_teams.addLine(new String[] { m_gamePk, m_teamIds[side], Boolean.toString(side == HOME), nonNull(batting[0]), runsDiff,
+					nonNull(m_wins[side]), nonNull(m_losses[side]), nonNull(batting[1]), nonNull(batting[2]), nonNull(batting[3]), nonNull(batting[4]) });
+			}
+			boolean doubleHeader = m_doubleHeader != null && !m_doubleHeader.equals("N");
+			feed.m_games.addLine(new String[] { m_gamePk, nonNull(m_season), Boolean.toString(doubleHeader), nonNull(m_teamIds[HOME]), nonNull(m_teamIds[AWAY]), nonNull(m_venueId) });
+			feed.m_statuses.add(nonNull(m_status));
+		}
+	}
+}
@@ -0,0 +1,325 @@
+package com.trumedia.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.trumedia.project.Aggregate.Function;
+
+public class GroupBy
+{
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+	private static final int MIN_ROWS_PER_TASK = 1 << 14;
+
+	private final CSVData m_data;
+	private final String[] m_groupNames;
+	private final int[] m_groupCols;
+
+	GroupBy(CSVData data, String[] groupCols)
+	{
+		m_data = data;
+		m_groupNames = new String[groupCols.length];
+		m_groupCols = new int[groupCols.length];
+		for (int i = 0; i < groupCols.length; i++)
+		{
+			m_groupCols[i] = data.getHeader().getColIndex(groupCols[i]);
+			if (m_groupCols[i] < 0)
+				throw new IllegalArgumentException("Unknown group column '" + groupCols[i] + "'");
+			m_groupNames[i] = data.getHeader().getColName(m_groupCols[i]);
+		}
+	}
+
+	public CSVData agg(Aggregate ... aggregates)
+	{
+		int[] aggCols = new int[aggregates.length];
+		for (int i = 0; i < aggregates.length; i++)
+		{
+			String colName = aggregates[i].getColName();
+			aggCols[i] = (colName != null) ? m_data.getHeader().getColIndex(colName) : -1;
+			if (colName != null && aggCols[i] < 0)
+				throw new IllegalArgumentException("Unknown aggregate column '" + colName + "'");
+		}
+
+		// each range of rows gets its own table, merged in range order so groups keep first-appearance order
+		Storage storage = m_data.getStorage();
+		int[] rows = m_data.getLiveRows();
+		int tasks = 1;
+		if (rows.length >= PARALLEL_THRESHOLD)
+			tasks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), rows.length / MIN_ROWS_PER_TASK));
+		GroupTable result;
+		if (tasks <= 1)
+		{
+			result = new GroupTable(aggregates, aggCols);
+			result.addRows(storage, rows, 0, rows.length, m_groupCols);
+		}
+		else
+		{
+			List<ForkJoinTask<GroupTable>> partials = new ArrayList<ForkJoinTask<GroupTable>>(tasks);
+			for (int t = 0; t < tasks; t++)
+			{
+				int from = (int)((long)rows.length * t / tasks);
+				int to = (int)((long)rows.length * (t + 1) / tasks);
+				partials.add(ForkJoinPool.commonPool().submit(() ->
+				{
+					GroupTable partial = new GroupTable(aggregates, aggCols);
+					partial.addRows(storage, rows, from, to, m_groupCols);
+					return partial;
+				}));
+			}
+			result = partials.get(0).join();
+			for (int t = 1; t < tasks; t++)
+			{
+				result.merge(partials.get(t).join());
+			}
+		}
+		return result.toCSV(storage, m_groupNames, aggregates);
+	}
+
+	private static class GroupTable
+	{
+		private final Aggregate[] m_aggregates;
+		private final int[] m_aggCols;
+		private int m_groupCount;
+		private String[][] m_keys;
+		private int[] m_hashes;
+		private int[] m_slots;
+
+		// accumulators indexed [aggregate][group]; whole values are also summed exactly in a long until a
+		// fractional value or an overflow marks the group fractional, after which only the double sum counts
+		private final long[][] m_counts;
+		private final double[][] m_sums;
+		private final long[][] m_wholeSums;
+		private final boolean[][] m_fractional;
+		private final double[][] m_extremes;
+		private final int[][] m_extremeRows;
+
+		public GroupTable(Aggregate[] aggregates, int[] aggCols)
+		{
+			m_aggregates = aggregates;
+			m_aggCols = aggCols;
+			m_keys = new String[16][];
+			m_hashes = new int[16];
+			m_slots = new int[32];
+			int count = aggregates.length;
+			m_counts = new long[count][16];
+			m_sums = new double[count][16];
+			m_wholeSums = new long[count][16];
+			m_fractional = new boolean[count][16];
+			m_extremes = new double[count][16];
+			m_extremeRows = new int[count][16];
+		}
+
+		public void addRows(Storage storage, int[] rows, int from, int to, int[] groupCols)
+		{
+			String[] key = new String[groupCols.length];
+			for (int i = from; i < to; i++)
+			{
+				int row = rows[i];
+				for (int k = 0; k < groupCols.length; k++)
+				{
+					key[k] = storage.getValue(row, groupCols[k]).trim();
+				}
+				int group = findOrAdd(key, hash(key));
+				for (int a = 0; a < m_aggregates.length; a++)
+				{
+					int col = m_aggCols[a];
+					if (col < 0)
+					{
+						m_counts[a][group]++;
+						continue;
+					}
+					if (storage.isEmpty(row, col))
+						continue;
+					// integers are read as longs so sums past 2^53 stay exact; Long.MIN_VALUE itself falls through to the double
+					// path, where it marks the sum fractional as any sum that large would overflow anyway
+					long whole = storage.getLong(row, col, Long.MIN_VALUE);
+					boolean integral = (whole != Long.MIN_VALUE);
+					double value = integral ? whole : storage.getDouble(row, col, Double.NaN);
+					if (Double.isNaN(value))
+					{
+						// count(col) counts any non-empty value, the numeric aggregates skip what does not parse
+						if (m_aggregates[a].getFunction() == Function.COUNT)
+							m_counts[a][group]++;
+						continue;
+					}
+					if (!integral && value == Math.rint(value) && Math.abs(value) < 0x1p53)
+					{
+						// whole numbers written as decimals, e.g. "95.0", still sum as whole numbers
+						whole = (long)value;
+						integral = true;
+					}
+					accumulate(a, group, value, integral, whole, row);
+				}
+			}
+		}
+
+		private void accumulate(int a, int group, double value, boolean integral, long whole, int row)
+		{
+			long count = m_counts[a][group]++;
+			m_sums[a][group] += value;
+			if (!integral || !addWhole(a, group, whole))
+				m_fractional[a][group] = true;
+			Function function = m_aggregates[a].getFunction();
+			if ((function == Function.MIN && (count == 0 || value < m_extremes[a][group])) || (function == Function.MAX && (count == 0 || value > m_extremes[a][group])))
+			{
+				m_extremes[a][group] = value;
+				m_extremeRows[a][group] = row;
+			}
+		}
+
+		private boolean addWhole(int a, int group, long whole)
+		{
+			// false once the exact sum would overflow
+			long sum = m_wholeSums[a][group];
+			long result = sum + whole;
+			if (((sum ^ result) & (whole ^ result)) < 0)
+				return false;
+			m_wholeSums[a][group] = result;
+			return true;
+		}
+
+		public void merge(GroupTable other)
+		{
+			for (int g = 0; g < other.m_groupCount; g++)
+			{
+				int group = findOrAdd(other.m_keys[g], other.m_hashes[g]);
+				for (int a = 0; a < m_aggregates.length; a++)
+				{
+					long otherCount = other.m_counts[a][g];
+					if (otherCount == 0)
+						continue;
+					long count = m_counts[a][group];
+					m_counts[a][group] = count + otherCount;
+					m_sums[a][group] += other.m_sums[a][g];
+					m_fractional[a][group] |= other.m_fractional[a][g];
+					if (!m_fractional[a][group] && !addWhole(a, group, other.m_wholeSums[a][g]))
+						m_fractional[a][group] = true;
+					Function function = m_aggregates[a].getFunction();
+					double value = other.m_extremes[a][g];
+					if ((function == Function.MIN && (count == 0 || value < m_extremes[a][group])) || (function == Function.MAX && (count == 0 || value > m_extremes[a][group])))
+					{
+						m_extremes[a][group] = value;
+						m_extremeRows[a][group] = other.m_extremeRows[a][g];
+					}
+				}
+			}
+		}
+
+		public CSVData toCSV(Storage storage, String[] groupNames, Aggregate[] aggregates)
+		{
+			String[] names = Arrays.copyOf(groupNames, groupNames.length + aggregates.length);
+			for (int a = 0; a < aggregates.length; a++)
+			{
+				names[groupNames.length + a] = aggregates[a].getName();
+			}
+			CSVData csv = new CSVData(names);
+			String[] values = new String[names.length];
+			for (int g = 0; g < m_groupCount; g++)
+			{
+				System.arraycopy(m_keys[g], 0, values, 0, groupNames.length);
+				for (int a = 0; a < aggregates.length; a++)
+				{
+					values[groupNames.length + a] = format(storage, a, g);
+				}
+				csv.addLine(values);
+			}
+			return csv;
+		}
+
+		private String format(Storage storage, int a, int group)
+		{
+			long count = m_counts[a][group];
+			switch (m_aggregates[a].getFunction())
+			{
+				case COUNT:
+					return Long.toString(count);
+				case SUM:
+					if (count == 0)
+						return "";
+					return m_fractional[a][group] ? Double.toString(m_sums[a][group]) : Long.toString(m_wholeSums[a][group]);
+				case AVG:
+					if (count == 0)
+						return "";
+					return Double.toString((m_fractional[a][group] ? m_sums[a][group] : (double)m_wholeSums[a][group]) / count);
+				default:
+					// min and max keep the source text of the winning row
+					return (count > 0) ? storage.getValue(m_extremeRows[a][group], m_aggCols[a]).trim() : "";
+			}
+		}
+
+		private int findOrAdd(String[] key, int hash)
+		{
+			int mask = m_slots.length - 1;
+			int slot = hash & mask;
+			while (m_slots[slot] != 0)
+			{
+				int group = m_slots[slot] - 1;
+				if (m_hashes[group] == hash && keysEqual(m_keys[group], key))
+					return group;
+				slot = (slot + 1) & mask;
+			}
+			if (m_groupCount == m_keys.length)
+				growGroups();
+			int group = m_groupCount++;
+			m_keys[group] = key.clone();
+			m_hashes[group] = hash;
+			m_slots[slot] = group + 1;
+			if (m_groupCount * 2 > m_slots.length)
+				rehash();
+			return group;
+		}
+
+		private void growGroups()
+		{
+			int capacity = m_keys.length * 2;
+			m_keys = Arrays.copyOf(m_keys, capacity);
+			m_hashes = Arrays.copyOf(m_hashes, capacity);
+			for (int a = 0; a < m_aggregates.length; a++)
+			{
+				m_counts[a] = Arrays.copyOf(m_counts[a], capacity);
+				m_sums[a] = Arrays.copyOf(m_sums[a], capacity);
+				m_wholeSums[a] = Arrays.copyOf(m_wholeSums[a], capacity);
+				m_fractional[a] = Arrays.copyOf(m_fractional[a], capacity);
+				m_extremes[a] = Arrays.copyOf(m_extremes[a], capacity);
+				m_extremeRows[a] = Arrays.copyOf(m_extremeRows[a], capacity);
+			}
+		}
+
+		private void rehash()
+		{
+			m_slots = new int[m_slots.length * 2];
+			int mask = m_slots.length - 1;
+			for (int group = 0; group < m_groupCount; group++)
+			{
+				int slot = m_hashes[group] & mask;
+				while (m_slots[slot] != 0)
+				{
+					slot = (slot + 1) & mask;
+				}
+				m_slots[slot] = group + 1;
+			}
+		}
+
+		private static int hash(String[] key)
+		{
+			int h = 1;
+			for (String value : key)
+			{
+				h = 31 * h + HashIndex.hash(value);
+			}
+			return h ^ (h >>> 16);
+		}
+
+		private static boolean keysEqual(String[] a, String[] b)
+		{
+			for (int i = 0; i < a.length; i++)
+			{
+				if (!a[i].equalsIgnoreCase(b[i]))
+					return false;
+			}
+			return true;
+		}
+	}
+}
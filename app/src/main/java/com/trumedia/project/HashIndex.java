@@ -0,0 +1,178 @@
+package com.trumedia.project;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+import com.trumedia.project.CSVData.IndexType;
+
+class HashIndex extends Index
+{
+	private static final int NONE = -1;
+
+	// open addressing over distinct keys, postings chained through m_next by row id
+	private String[] m_keys;
+	private int[] m_hashes;
+	private int[] m_heads;
+	private int[] m_tails;
+	private int[] m_counts;
+	private int m_keyCount;
+	private int[] m_next;
+
+	public HashIndex(int colIndex, int capacity)
+	{
+		super(colIndex);
+		int slots = Integer.highestOneBit(Math.max(16, capacity / 4) * 2);
+		m_keys = new String[slots];
+		m_hashes = new int[slots];
+		m_heads = new int[slots];
+		m_tails = new int[slots];
+		m_counts = new int[slots];
+		m_next = new int[Math.max(16, capacity)];
+	}
+
+	@Override
+	public IndexType getType()
+	{
+		return IndexType.HASH;
+	}
+
+	@Override
+	public void add(int row, String value)
+	{
+		int hash = hash(value);
+		int slot = findSlot(value, hash);
+		if (m_keys[slot] == null)
+		{
+			if ((m_keyCount + 1) * 2 > m_keys.length)
+			{
+				resize();
+				slot = findSlot(value, hash);
+			}
+			m_keys[slot] = value;
+			m_hashes[slot] = hash;
+			m_heads[slot] = NONE;
+			m_tails[slot] = NONE;
+			m_keyCount++;
+		}
+
+		if (row >= m_next.length)
+			m_next = Arrays.copyOf(m_next, Math.max(row + 1, m_next.length * 2));
+		m_next[row] = NONE;
+		if (m_heads[slot] == NONE)
+			m_heads[slot] = row;
+		else
+			m_next[m_tails[slot]] = row;
+		m_tails[slot] = row;
+		m_counts[slot]++;
+	}
+
+	@Override
+	public void remove(int row, String value)
+	{
+		int slot = findSlot(value, hash(value));
+		if (m_keys[slot] == null)
+			return;
+		int prev = NONE;
+		for (int cur = m_heads[slot]; cur != NONE; cur = m_next[cur])
+		{
+			if (cur == row)
+			{
+				if (prev == NONE)
+					m_heads[slot] = m_next[cur];
+				else
+					m_next[prev] = m_next[cur];
+				if (m_tails[slot] == cur)
+					m_tails[slot] = prev;
+				m_counts[slot]--;
+				return;
+			}
+			prev = cur;
+		}
+	}
+
+	@Override
+	public IntList find(String value)
+	{
+		int slot = findSlot(value, hash(value));
+		if (m_keys[slot] == null)
+			return new IntList(0);
+		IntList rows = new IntList(m_counts[slot]);
+		for (int cur = m_heads[slot]; cur != NONE; cur = m_next[cur])
+		{
+			rows.add(cur);
+		}
+		return rows;
+	}
+
+	@Override
+	public void forEach(BiConsumer<String,IntList> action)
+	{
+		// removals leave keys behind with no rows, those are skipped
+		for (int slot = 0; slot < m_keys.length; slot++)
+		{
+			if (m_keys[slot] != null && m_counts[slot] > 0)
+				action.accept(m_keys[slot], find(m_keys[slot]));
+		}
+	}
+
+	public int count(String value)
+	{
+		int slot = findSlot(value, hash(value));
+		return (m_keys[slot] != null) ? m_counts[slot] : 0;
+	}
+
+	private int findSlot(String value, int hash)
+	{
+		int mask = m_keys.length - 1;
+		int slot = hash & mask;
+		// dictionary-encoded columns hand in the same string instance for every row with that value
+		while (m_keys[slot] != null && m_keys[slot] != value && (m_hashes[slot] != hash || !m_keys[slot].equalsIgnoreCase(value)))
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize()
+	{
+		String[] keys = m_keys;
+		int[] hashes = m_hashes;
+		int[] heads = m_heads;
+		int[] tails = m_tails;
+		int[] counts = m_counts;
+		int slots = keys.length * 2;
+		m_keys = new String[slots];
+		m_hashes = new int[slots];
+		m_heads = new int[slots];
+		m_tails = new int[slots];
+		m_counts = new int[slots];
+		int mask = slots - 1;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != null)
+			{
+				int slot = hashes[i] & mask;
+				while (m_keys[slot] != null)
+				{
+					slot = (slot + 1) & mask;
+				}
+				m_keys[slot] = keys[i];
+				m_hashes[slot] = hashes[i];
+				m_heads[slot] = heads[i];
+				m_tails[slot] = tails[i];
+				m_counts[slot] = counts[i];
+			}
+		}
+	}
+
+	static int hash(String value)
+	{
+		// consistent with equalsIgnoreCase, which compares upper then lower case per character
+		int h = 0;
+		for (int i = 0; i < value.length(); i++)
+		{
+			h = 31 * h + Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+		}
+		return h ^ (h >>> 16);
+	}
+}
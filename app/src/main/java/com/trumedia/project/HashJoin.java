@@ -0,0 +1,284 @@
+package com.trumedia.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.trumedia.project.CSVData.ColumnType;
+import com.trumedia.project.CSVData.JoinType;
+import com.trumedia.project.CSVData.Line;
+
+class HashJoin
+{
+	private static final String RIGHT_SUFFIX = "_right";
+	private static final int NONE = -1;
+
+	private final CSVData m_left;
+	private final CSVData m_right;
+	private final int[] m_leftKeys;
+	private final int[] m_rightKeys;
+	private final JoinType m_type;
+
+	public HashJoin(CSVData left, CSVData right, String[] leftKeys, String[] rightKeys, JoinType type)
+	{
+		if (leftKeys == null || rightKeys == null || leftKeys.length == 0 || leftKeys.length != rightKeys.length)
+			throw new IllegalArgumentException("Join requires the same number of left and right key columns");
+		m_left = left;
+		m_right = right;
+		m_leftKeys = resolve(left, leftKeys);
+		m_rightKeys = resolve(right, rightKeys);
+		m_type = type;
+	}
+
+	public CSVData join()
+	{
+		// build on the smaller side, stream the larger one; output is always in left line order
+		List<Line> leftLines = m_left.getLines();
+		List<Line> rightLines = m_right.getLines();
+		CSVData result = createResult();
+		if (leftLines.size() < rightLines.size())
+			joinBuildLeft(leftLines, rightLines, result);
+		else
+			joinBuildRight(leftLines, rightLines, result);
+		return result;
+	}
+
+	private void joinBuildRight(List<Line> leftLines, List<Line> rightLines, CSVData result)
+	{
+		JoinTable table = new JoinTable(rightLines, m_rightKeys);
+		String[] probe = new String[m_leftKeys.length];
+		for (Line left : leftLines)
+		{
+			int match = NONE;
+			if (keyValues(left, m_leftKeys, probe))
+				match = table.find(probe, hash(probe));
+			if (m_type == JoinType.SEMI)
+			{
+				if (match != NONE)
+					result.addLine(left.getColumns());
+				continue;
+			}
+			if (match == NONE)
+			{
+				if (m_type == JoinType.LEFT)
+					result.addLine(combine(left, null));
+				continue;
+			}
+			for (; match != NONE; match = table.findNext(match, probe))
+			{
+				result.addLine(combine(left, rightLines.get(match)));
+			}
+		}
+	}
+
+	private void joinBuildLeft(List<Line> leftLines, List<Line> rightLines, CSVData result)
+	{
+		JoinTable table = new JoinTable(leftLines, m_leftKeys);
+		IntList[] matches = new IntList[leftLines.size()];
+		boolean semi = (m_type == JoinType.SEMI);
+		String[] probe = new String[m_rightKeys.length];
+		for (int r = 0; r < rightLines.size(); r++)
+		{
+			if (!keyValues(rightLines.get(r), m_rightKeys, probe))
+				continue;
+			for (int match = table.find(probe, hash(probe)); match != NONE; match = table.findNext(match, probe))
+			{
+				if (matches[match] == null)
+					matches[match] = new IntList(semi ? 1 : 4);
+				if (!semi || matches[match].isEmpty())
+					matches[match].add(r);
+			}
+		}
+		for (int l = 0; l < leftLines.size(); l++)
+		{
+			Line left = leftLines.get(l);
+			if (semi)
+			{
+				if (matches[l] != null)
+					result.addLine(left.getColumns());
+			}
+			else if (matches[l] != null)
+			{
+				for (int i = 0; i < matches[l].size(); i++)
+				{
+					result.addLine(combine(left, rightLines.get(matches[l].get(i))));
+				}
+			}
+			else if (m_type == JoinType.LEFT)
+			{
+				result.addLine(combine(left, null));
+			}
+		}
+	}
+
+	private CSVData createResult()
+	{
+		// left columns, then right columns minus the right keys, renaming any name the left side already uses
+		String[] leftNames = m_left.getHeader().getNameArr();
+		ColumnType[] leftTypes = m_left.getColTypes();
+		if (m_type == JoinType.SEMI)
+			return new CSVData(leftNames, leftTypes);
+
+		ColumnType[] rightTypes = m_right.getColTypes();
+		List<String> names = new ArrayList<String>(Arrays.asList(leftNames));
+		List<ColumnType> types = new ArrayList<ColumnType>();
+		for (int i = 0; i < leftNames.length; i++)
+		{
+			types.add((leftTypes != null) ? leftTypes[i] : ColumnType.STRING);
+		}
+		for (int i = 0; i < m_right.getColCount(); i++)
+		{
+			if (isRightKey(i))
+				continue;
+			String name = m_right.getHeader().getColName(i);
+			while (containsIgnoreCase(names, name))
+			{
+				name = name + RIGHT_SUFFIX;
+			}
+			names.add(name);
+			types.add((rightTypes != null) ? rightTypes[i] : ColumnType.STRING);
+		}
+		String[] nameArr = names.toArray(new String[names.size()]);
+		if (leftTypes == null && rightTypes == null)
+			return new CSVData(nameArr);
+		return new CSVData(nameArr, types.toArray(new ColumnType[types.size()]));
+	}
+
+	private String[] combine(Line left, Line right)
+	{
+		String[] values = Arrays.copyOf(left.getColumns(), m_left.getColCount() + m_right.getColCount() - m_rightKeys.length);
+		if (right != null)
+		{
+			String[] rightValues = right.getColumns();
+			int pos = m_left.getColCount();
+			for (int i = 0; i < rightValues.length; i++)
+			{
+				if (!isRightKey(i))
+					values[pos++] = rightValues[i];
+			}
+		}
+		return values;
+	}
+
+	private boolean isRightKey(int col)
+	{
+		for (int key : m_rightKeys)
+		{
+			if (key == col)
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean keyValues(Line line, int[] keyCols, String[] values)
+	{
+		// like SQL, rows with an empty key value never join
+		for (int i = 0; i < keyCols.length; i++)
+		{
+			values[i] = line.getColValue(keyCols[i]);
+			if (values[i].isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(String[] values)
+	{
+		int h = 1;
+		for (String value : values)
+		{
+			h = 31 * h + HashIndex.hash(value);
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean keysEqual(String[] a, String[] b)
+	{
+		for (int i = 0; i < a.length; i++)
+		{
+			if (!a[i].equalsIgnoreCase(b[i]))
+				return false;
+		}
+		return true;
+	}
+
+	private static int[] resolve(CSVData data, String[] keys)
+	{
+		int[] cols = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+		{
+			cols[i] = data.getHeader().getColIndex(keys[i]);
+			if (cols[i] < 0)
+				throw new IllegalArgumentException("Unknown join column '" + keys[i] + "'");
+		}
+		return cols;
+	}
+
+	private static boolean containsIgnoreCase(List<String> names, String name)
+	{
+		for (String existing : names)
+		{
+			if (existing.equalsIgnoreCase(name))
+				return true;
+		}
+		return false;
+	}
+
+	private static class JoinTable
+	{
+		// buckets chained by line position; chains keep line order so matches come out in input order
+		private final int[] m_heads;
+		private final int[] m_tails;
+		private final int[] m_next;
+		private final int[] m_hashes;
+		private final String[][] m_keys;
+
+		public JoinTable(List<Line> lines, int[] keyCols)
+		{
+			int size = lines.size();
+			int buckets = Integer.highestOneBit(Math.max(size, 8) * 2);
+			m_heads = new int[buckets];
+			m_tails = new int[buckets];
+			Arrays.fill(m_heads, NONE);
+			m_next = new int[size];
+			m_hashes = new int[size];
+			m_keys = new String[size][];
+			for (int i = 0; i < size; i++)
+			{
+				String[] key = new String[keyCols.length];
+				m_next[i] = NONE;
+				if (!keyValues(lines.get(i), keyCols, key))
+					continue;
+				int h = hash(key);
+				int bucket = h & (buckets - 1);
+				m_keys[i] = key;
+				m_hashes[i] = h;
+				if (m_heads[bucket] == NONE)
+					m_heads[bucket] = i;
+				else
+					m_next[m_tails[bucket]] = i;
+				m_tails[bucket] = i;
+			}
+		}
+
+		public int find(String[] key, int hash)
+		{
+			return scan(m_heads[hash & (m_heads.length - 1)], key, hash);
+		}
+
+		public int findNext(int previous, String[] key)
+		{
+			return scan(m_next[previous], key, m_hashes[previous]);
+		}
+
+		private int scan(int pos, String[] key, int hash)
+		{
+			for (; pos != NONE; pos = m_next[pos])
+			{
+				if (m_hashes[pos] == hash && keysEqual(m_keys[pos], key))
+					return pos;
+			}
+			return NONE;
+		}
+	}
+}
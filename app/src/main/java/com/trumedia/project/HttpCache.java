@@ -0,0 +1,446 @@
+package com.trumedia.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class HttpCache
+{
+	public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+	private static final Pattern GAME_STATE = Pattern.compile("\"abstractGameState\"\\s*:\\s*\"(\\w+)\"");
+	private static final String BODY_SUFFIX = ".gz";
+	private static final String META_SUFFIX = ".meta";
+
+	private final Path m_dir;
+	private final long m_maxBytes;
+	private final Clock m_clock;
+	// access-ordered, so iteration starts at the least recently used entry
+	private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long m_totalBytes;
+	private Duration m_liveTTL = Duration.ofSeconds(15);
+	private Duration m_defaultTTL = Duration.ofMinutes(10);
+
+	public HttpCache(Path dir) throws IOException
+	{
+		this(dir, DEFAULT_MAX_BYTES, Clock.systemUTC());
+	}
+
+	public HttpCache(Path dir, long maxBytes) throws IOException
+	{
+		this(dir, maxBytes, Clock.systemUTC());
+	}
+
+	public HttpCache(Path dir, long maxBytes, Clock clock) throws IOException
+	{
+		m_dir = dir;
+		m_maxBytes = maxBytes;
+		m_clock = clock;
+		Files.createDirectories(dir);
+		load();
+	}
+
+	public void setLiveTTL(Duration ttl)
+	{
+		m_liveTTL = ttl;
+	}
+
+	public void setDefaultTTL(Duration ttl)
+	{
+		m_defaultTTL = ttl;
+	}
+
+	public synchronized long getTotalBytes()
+	{
+		return m_totalBytes;
+	}
+
+	public synchronized int size()
+	{
+		return m_entries.size();
+	}
+
+	public synchronized Entry lookup(URI uri)
+	{
+		return m_entries.get(key(uri));
+	}
+
+	public boolean isFresh(Entry entry)
+	{
+		return entry.m_pinned || m_clock.millis() < entry.m_expiresAt;
+	}
+
+	public InputStream openBody(Entry entry)
+	{
+		// the caller streams the body and closes it, null when the entry is gone
+		Path file = m_dir.resolve(entry.m_key + BODY_SUFFIX);
+		try
+		{
+			InputStream in = new GZIPInputStream(Files.newInputStream(file));
+			// the body file's timestamp doubles as the last access time when the cache is reloaded
+			Files.setLastModifiedTime(file, FileTime.fromMillis(m_clock.millis()));
+			return in;
+		}
+		catch (IOException e)
+		{
+			// evicted or damaged underneath us, treat as a miss
+			remove(entry);
+			return null;
+		}
+	}
+
+	public Writer newWriter(URI uri, String etag, String lastModified) throws IOException
+	{
+		return new Writer(key(uri), uri.toString(), etag, lastModified);
+	}
+
+	public Entry store(URI uri, byte[] body, String etag, String lastModified) throws IOException
+	{
+		Writer writer = newWriter(uri, etag, lastModified);
+		try
+		{
+			writer.write(ByteBuffer.wrap(body));
+			return writer.commit();
+		}
+		finally
+		{
+			writer.abort();
+		}
+	}
+
+	public void revalidated(Entry entry, String etag, String lastModified) throws IOException
+	{
+		// a 304 keeps the body, so only the validators and the expiry move
+		if (etag != null)
+			entry.m_etag = etag;
+		if (lastModified != null)
+			entry.m_lastModified = lastModified;
+		entry.m_expiresAt = m_clock.millis() + (entry.m_live ? m_liveTTL : m_defaultTTL).toMillis();
+		writeMeta(entry);
+	}
+
+	public synchronized void remove(Entry entry)
+	{
+		if (m_entries.remove(entry.m_key) != null)
+			m_totalBytes -= entry.m_diskBytes;
+		deleteFiles(entry.m_key);
+	}
+
+	public synchronized void clear()
+	{
+		for (String key : m_entries.keySet())
+		{
+			deleteFiles(key);
+		}
+		m_entries.clear();
+		m_totalBytes = 0;
+	}
+
+	private synchronized void commit(Entry entry)
+	{
+		Entry previous = m_entries.put(entry.m_key, entry);
+		if (previous != null)
+			m_totalBytes -= previous.m_diskBytes;
+		m_totalBytes += entry.m_diskBytes;
+		evict();
+	}
+
+	private void evict()
+	{
+		Iterator<Entry> it = m_entries.values().iterator();
+		while (m_totalBytes > m_maxBytes && it.hasNext())
+		{
+			Entry entry = it.next();
+			if (entry.m_pinned)
+				continue;
+			it.remove();
+			m_totalBytes -= entry.m_diskBytes;
+			deleteFiles(entry.m_key);
+		}
+	}
+
+	private void load() throws IOException
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(m_dir, "*" + META_SUFFIX))
+		{
+			for (Path metaFile : stream)
+			{
+				String name = metaFile.getFileName().toString();
+				String key = name.substring(0, name.length() - META_SUFFIX.length());
+				Path bodyFile = m_dir.resolve(key + BODY_SUFFIX);
+				if (!Files.exists(bodyFile))
+				{
+					Files.deleteIfExists(metaFile);
+					continue;
+				}
+				Properties props = new Properties();
+				try (InputStream in = Files.newInputStream(metaFile))
+				{
+					props.load(in);
+				}
+				Entry entry = new Entry(key, props.getProperty("uri"), props.getProperty("etag"), props.getProperty("lastModified"), Long.parseLong(props.getProperty("size", "0")));
+				entry.m_pinned = Boolean.parseBoolean(props.getProperty("pinned"));
+				entry.m_live = Boolean.parseBoolean(props.getProperty("live"));
+				entry.m_expiresAt = Long.parseLong(props.getProperty("expiresAt", "0"));
+				entry.m_diskBytes = Files.size(bodyFile);
+				entry.m_lastAccess = Files.getLastModifiedTime(bodyFile).toMillis();
+				entries.add(entry);
+			}
+		}
+		entries.sort((a, b) -> Long.compare(a.m_lastAccess, b.m_lastAccess));
+		for (Entry entry : entries)
+		{
+			m_entries.put(entry.m_key, entry);
+			m_totalBytes += entry.m_diskBytes;
+		}
+		evict();
+	}
+
+	private void writeMeta(Entry entry) throws IOException
+	{
+		Properties props = new Properties();
+		props.setProperty("uri", entry.m_uri);
+		if (entry.m_etag != null)
+			props.setProperty("etag", entry.m_etag);
+		if (entry.m_lastModified != null)
+			props.setProperty("lastModified", entry.m_lastModified);
+		props.setProperty("size", Long.toString(entry.m_size));
+		props.setProperty("pinned", Boolean.toString(entry.m_pinned));
+		props.setProperty("live", Boolean.toString(entry.m_live));
+		props.setProperty("expiresAt", Long.toString(entry.m_expiresAt));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		props.store(bytes, null);
+		Path tmp = Files.createTempFile(m_dir, entry.m_key, ".tmp");
+		Files.write(tmp, bytes.toByteArray());
+		Files.move(tmp, m_dir.resolve(entry.m_key + META_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void deleteFiles(String key)
+	{
+		try
+		{
+			Files.deleteIfExists(m_dir.resolve(key + META_SUFFIX));
+			Files.deleteIfExists(m_dir.resolve(key + BODY_SUFFIX));
+		}
+		catch (IOException e)
+		{
+			// a leftover body without metadata is cleaned up on the next load
+		}
+	}
+
+	private static String key(URI uri)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(uri.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(40);
+			for (int i = 0; i < 20; i++)
+			{
+				sb.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public class Writer
+	{
+		// fills a temp file as the body streams past, the entry only appears once commit() moves it into place
+		private final String m_key;
+		private final String m_uri;
+		private final String m_etag;
+		private final String m_lastModified;
+		private final Path m_tmp;
+		private final OutputStream m_out;
+		private final GameStates m_states = new GameStates();
+		private final byte[] m_copy = new byte[8192];
+		private long m_size;
+		private boolean m_done;
+
+		private Writer(String key, String uri, String etag, String lastModified) throws IOException
+		{
+			m_key = key;
+			m_uri = uri;
+			m_etag = etag;
+			m_lastModified = lastModified;
+			m_tmp = Files.createTempFile(m_dir, key, ".tmp");
+			try
+			{
+				m_out = new GZIPOutputStream(Files.newOutputStream(m_tmp));
+			}
+			catch (IOException e)
+			{
+				Files.deleteIfExists(m_tmp);
+				throw e;
+			}
+		}
+
+		public synchronized void write(ByteBuffer bytes) throws IOException
+		{
+			// reads through its own view, the caller's buffer position is left alone
+			if (m_done)
+				return;
+			ByteBuffer view = bytes.duplicate();
+			m_size += view.remaining();
+			while (view.hasRemaining())
+			{
+				int count = Math.min(view.remaining(), m_copy.length);
+				view.get(m_copy, 0, count);
+				m_out.write(m_copy, 0, count);
+				m_states.scan(m_copy, count);
+			}
+		}
+
+		public synchronized Entry commit() throws IOException
+		{
+			if (m_done)
+				throw new IllegalStateException("Cache write already finished for " + m_uri);
+			m_done = true;
+			Entry entry = new Entry(m_key, m_uri, m_etag, m_lastModified, m_size);
+			try
+			{
+				m_out.close();
+				// final games never change; a response with any game still live goes stale quickly
+				entry.m_pinned = m_states.m_anyGame && m_states.m_allFinal;
+				entry.m_live = m_states.m_anyLive;
+				entry.m_expiresAt = m_clock.millis() + (entry.m_live ? m_liveTTL : m_defaultTTL).toMillis();
+				entry.m_diskBytes = Files.size(m_tmp);
+				Files.move(m_tmp, m_dir.resolve(m_key + BODY_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally
+			{
+				Files.deleteIfExists(m_tmp);
+			}
+			writeMeta(entry);
+			HttpCache.this.commit(entry);
+			return entry;
+		}
+
+		public synchronized void abort()
+		{
+			// a body that was cut short never becomes an entry, a no-op after commit
+			if (m_done)
+				return;
+			m_done = true;
+			try
+			{
+				m_out.close();
+			}
+			catch (IOException e)
+			{
+				// the temp file goes either way
+			}
+			try
+			{
+				Files.deleteIfExists(m_tmp);
+			}
+			catch (IOException e)
+			{
+				// a stray temp file is harmless, load() only looks at metadata
+			}
+		}
+	}
+
+	private static class GameStates
+	{
+		// longest game state match expected to straddle two chunks, matches seen twice in the overlap do not change the result
+		private static final int OVERLAP = 128;
+
+		private final StringBuilder m_window = new StringBuilder();
+		private boolean m_anyGame;
+		private boolean m_allFinal = true;
+		private boolean m_anyLive;
+
+		public void scan(byte[] bytes, int count)
+		{
+			// the pattern is plain ASCII, so bytes map straight to chars without decoding
+			for (int i = 0; i < count; i++)
+			{
+				m_window.append((char)(bytes[i] & 0xFF));
+			}
+			Matcher matcher = GAME_STATE.matcher(m_window);
+			while (matcher.find())
+			{
+				m_anyGame = true;
+				String state = matcher.group(1);
+				m_allFinal &= state.equals("Final");
+				m_anyLive |= state.equals("Live");
+			}
+			m_window.delete(0, Math.max(0, m_window.length() - OVERLAP));
+		}
+	}
+
+	public static class Entry
+	{
+		private final String m_key;
+		private final String m_uri;
+		private final long m_size;
+		private volatile String m_etag;
+		private volatile String m_lastModified;
+		private volatile boolean m_pinned;
+		private volatile boolean m_live;
+		private volatile long m_expiresAt;
+		private long m_diskBytes;
+		private long m_lastAccess;
+
+		Entry(String key, String uri, String etag, String lastModified, long size)
+		{
+			m_key = key;
+			m_uri = uri;
+			m_etag = etag;
+			m_lastModified = lastModified;
+			m_size = size;
+		}
+
+		public String getUri()
+		{
+			return m_uri;
+		}
+
+		public String getETag()
+		{
+			return m_etag;
+		}
+
+		public String getLastModified()
+		{
+			return m_lastModified;
+		}
+
+		public boolean isPinned()
+		{
+			return m_pinned;
+		}
+
+		public long getSize()
+		{
+			return m_size;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.trumedia.project;
+
+import java.util.BitSet;
+import java.util.function.BiConsumer;
+
+import com.trumedia.project.CSVData.IndexType;
+
+abstract class Index
+{
+	private final int m_colIndex;
+
+	protected Index(int colIndex)
+	{
+		m_colIndex = colIndex;
+	}
+
+	public static Index create(IndexType type, int colIndex, int capacity)
+	{
+		switch (type)
+		{
+			case HASH:
+				return new HashIndex(colIndex, capacity);
+			case NUMERIC:
+				return new NumericIndex(colIndex);
+			case BITMAP:
+				return new BitmapIndex(colIndex);
+			default:
+				return new SortedIndex(colIndex);
+		}
+	}
+
+	public int getColIndex()
+	{
+		return m_colIndex;
+	}
+
+	public abstract IndexType getType();
+
+	public abstract void add(int row, String value);
+
+	public abstract void remove(int row, String value);
+
+	// row ids with a value equal to the given one ignoring case, in insertion order
+	public abstract IntList find(String value);
+
+	// every key that still has rows, with those rows
+	public abstract void forEach(BiConsumer<String,IntList> action);
+
+	// live row ids holding the lowest/highest value, or null when the index keeps no ordering
+	public IntList findFirst(BitSet deleted)
+	{
+		return null;
+	}
+
+	public IntList findLast(BitSet deleted)
+	{
+		return null;
+	}
+
+	protected static IntList exclude(IntList rows, BitSet deleted)
+	{
+		if (deleted.isEmpty())
+			return rows;
+		IntList live = new IntList(rows.size());
+		for (int i = 0; i < rows.size(); i++)
+		{
+			if (!deleted.get(rows.get(i)))
+				live.add(rows.get(i));
+		}
+		return live;
+	}
+}
@@ -0,0 +1,119 @@
+package com.trumedia.project;
+
+import java.util.Arrays;
+
+class IntList
+{
+	private int[] m_values;
+	private int m_size;
+
+	public IntList()
+	{
+		this(16);
+	}
+
+	public IntList(int capacity)
+	{
+		m_values = new int[Math.max(capacity, 4)];
+	}
+
+	public IntList(int[] values, int size)
+	{
+		m_values = values;
+		m_size = size;
+	}
+
+	public int size()
+	{
+		return m_size;
+	}
+
+	public boolean isEmpty()
+	{
+		return m_size == 0;
+	}
+
+	public int get(int index)
+	{
+		if (index >= m_size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + m_size);
+		return m_values[index];
+	}
+
+	public void set(int index, int value)
+	{
+		if (index >= m_size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + m_size);
+		m_values[index] = value;
+	}
+
+	public void add(int value)
+	{
+		if (m_size == m_values.length)
+			m_values = Arrays.copyOf(m_values, m_size * 2);
+		m_values[m_size++] = value;
+	}
+
+	public void addAll(IntList other)
+	{
+		ensureCapacity(m_size + other.m_size);
+		System.arraycopy(other.m_values, 0, m_values, m_size, other.m_size);
+		m_size += other.m_size;
+	}
+
+	public int indexOf(int value)
+	{
+		for (int i = 0; i < m_size; i++)
+		{
+			if (m_values[i] == value)
+				return i;
+		}
+		return -1;
+	}
+
+	public int removeAt(int index)
+	{
+		int value = get(index);
+		System.arraycopy(m_values, index + 1, m_values, index, m_size - index - 1);
+		m_size--;
+		return value;
+	}
+
+	public boolean removeValue(int value)
+	{
+		int index = indexOf(value);
+		if (index >= 0)
+		{
+			removeAt(index);
+			return true;
+		}
+		return false;
+	}
+
+	public void truncate(int size)
+	{
+		if (size < m_size)
+			m_size = Math.max(size, 0);
+	}
+
+	public void clear()
+	{
+		m_size = 0;
+	}
+
+	public void ensureCapacity(int capacity)
+	{
+		if (capacity > m_values.length)
+			m_values = Arrays.copyOf(m_values, Math.max(capacity, m_values.length * 2));
+	}
+
+	public int[] toArray()
+	{
+		return Arrays.copyOf(m_values, m_size);
+	}
+
+	int[] rawArray()
+	{
+		return m_values;
+	}
+}
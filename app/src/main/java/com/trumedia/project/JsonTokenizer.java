@@ -0,0 +1,432 @@
+package com.trumedia.project;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+class JsonTokenizer implements Closeable
+{
+	enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, TRUE, FALSE, NULL, END }
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream m_in;
+	private final byte[] m_buf;
+	private int m_pos;
+	private int m_limit;
+	private long m_offset;
+
+	// true for each open object, false for each open array
+	private boolean[] m_stack = new boolean[32];
+	private int m_depth;
+	private boolean m_expectName;
+
+	private char[] m_text = new char[64];
+	private int m_textLen;
+	private boolean m_skipText;
+	private Token m_peeked;
+
+	public JsonTokenizer(InputStream in)
+	{
+		m_in = in;
+		m_buf = new byte[BUFFER_SIZE];
+	}
+
+	public Token peek() throws IOException
+	{
+		if (m_peeked == null)
+			m_peeked = read();
+		return m_peeked;
+	}
+
+	public Token next() throws IOException
+	{
+		Token token = peek();
+		m_peeked = null;
+		return token;
+	}
+
+	// the text of the last NAME, STRING or NUMBER token
+	public String getText()
+	{
+		return new String(m_text, 0, m_textLen);
+	}
+
+	public boolean beginObject() throws IOException
+	{
+		return begin(Token.BEGIN_OBJECT);
+	}
+
+	public boolean beginArray() throws IOException
+	{
+		return begin(Token.BEGIN_ARRAY);
+	}
+
+	// the next field name of the current object, or null once the object is closed
+	public String nextName() throws IOException
+	{
+		Token token = next();
+		if (token == Token.NAME)
+			return getText();
+		if (token == Token.END_OBJECT)
+			return null;
+		throw malformed("expected a field name but found " + token);
+	}
+
+	// true while the current array has elements left, consuming its end otherwise
+	public boolean hasNextElement() throws IOException
+	{
+		Token token = peek();
+		if (token == Token.END_ARRAY)
+		{
+			next();
+			return false;
+		}
+		if (token == Token.END || token == Token.END_OBJECT || token == Token.NAME)
+			throw malformed("expected an array element but found " + token);
+		return true;
+	}
+
+	// a scalar value as text, or null for JSON null or a nested value, which is skipped
+	public String nextValue() throws IOException
+	{
+		Token token = next();
+		switch (token)
+		{
+			case STRING:
+			case NUMBER:
+				return getText();
+			case TRUE:
+				return "true";
+			case FALSE:
+				return "false";
+			case BEGIN_OBJECT:
+			case BEGIN_ARRAY:
+				skipNested();
+				return null;
+			case NULL:
+				return null;
+			default:
+				throw malformed("expected a value but found " + token);
+		}
+	}
+
+	public void skipValue() throws IOException
+	{
+		boolean skipText = m_skipText;
+		m_skipText = true;
+		try
+		{
+			Token token = next();
+			if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY)
+				skipNested();
+			else if (token == Token.END_OBJECT || token == Token.END_ARRAY || token == Token.END || token == Token.NAME)
+				throw malformed("expected a value but found " + token);
+		}
+		finally
+		{
+			m_skipText = skipText;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		m_in.close();
+	}
+
+	private boolean begin(Token expected) throws IOException
+	{
+		if (peek() == expected)
+		{
+			next();
+			return true;
+		}
+		// anything else in its place, null included, is skipped so the caller can carry on
+		skipValue();
+		return false;
+	}
+
+	private void skipNested() throws IOException
+	{
+		boolean skipText = m_skipText;
+		m_skipText = true;
+		try
+		{
+			int depth = 1;
+			while (depth > 0)
+			{
+				Token token = next();
+				if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY)
+					depth++;
+				else if (token == Token.END_OBJECT || token == Token.END_ARRAY)
+					depth--;
+				else if (token == Token.END)
+					throw malformed("unexpected end of input");
+			}
+		}
+		finally
+		{
+			m_skipText = skipText;
+		}
+	}
+
+	private Token read() throws IOException
+	{
+		while (true)
+		{
+			int c = readByte();
+			switch (c)
+			{
+				case -1:
+					if (m_depth > 0)
+						throw malformed("unexpected end of input");
+					return Token.END;
+				case ' ':
+				case '\t':
+				case '\n':
+				case '\r':
+				case ':':
+					continue;
+				case ',':
+					m_expectName = m_depth > 0 && m_stack[m_depth - 1];
+					continue;
+				case '{':
+					push(true);
+					m_expectName = true;
+					return Token.BEGIN_OBJECT;
+				case '}':
+					pop(true);
+					m_expectName = false;
+					return Token.END_OBJECT;
+				case '[':
+					push(false);
+					m_expectName = false;
+					return Token.BEGIN_ARRAY;
+				case ']':
+					pop(false);
+					return Token.END_ARRAY;
+				case '"':
+					readString();
+					if (m_expectName)
+					{
+						m_expectName = false;
+						return Token.NAME;
+					}
+					return Token.STRING;
+				case 't':
+					readLiteral("rue");
+					return Token.TRUE;
+				case 'f':
+					readLiteral("alse");
+					return Token.FALSE;
+				case 'n':
+					readLiteral("ull");
+					return Token.NULL;
+				default:
+					if (c == '-' || (c >= '0' && c <= '9'))
+					{
+						readNumber(c);
+						return Token.NUMBER;
+					}
+					throw malformed("unexpected character '" + (char)c + "'");
+			}
+		}
+	}
+
+	private void readString() throws IOException
+	{
+		m_textLen = 0;
+		while (true)
+		{
+			if (m_pos == m_limit && !fill())
+				throw malformed("unterminated string");
+			// copy the plain ASCII run straight out of the buffer
+			byte[] buf = m_buf;
+			int start = m_pos;
+			int end = start;
+			while (end < m_limit)
+			{
+				byte b = buf[end];
+				if (b == '"' || b == '\\' || b < 0)
+					break;
+				end++;
+			}
+			if (!m_skipText)
+			{
+				ensureText(end - start);
+				for (int i = start; i < end; i++)
+				{
+					m_text[m_textLen++] = (char)buf[i];
+				}
+			}
+			m_pos = end;
+			if (end == m_limit)
+				continue;
+
+			int b = buf[m_pos++] & 0xFF;
+			if (b == '"')
+				return;
+			if (b == '\\')
+				readEscape();
+			else
+				readMultiByte(b);
+		}
+	}
+
+	private void readEscape() throws IOException
+	{
+		int c = readByte();
+		switch (c)
+		{
+			case '"':
+			case '\\':
+			case '/':
+				appendText((char)c);
+				break;
+			case 'b':
+				appendText('\b');
+				break;
+			case 'f':
+				appendText('\f');
+				break;
+			case 'n':
+				appendText('\n');
+				break;
+			case 'r':
+				appendText('\r');
+				break;
+			case 't':
+				appendText('\t');
+				break;
+			case 'u':
+				int value = 0;
+				for (int i = 0; i < 4; i++)
+				{
+					int digit = Character.digit(readByte(), 16);
+					if (digit < 0)
+						throw malformed("bad unicode escape");
+					value = (value << 4) | digit;
+				}
+				// surrogate pairs arrive as two escapes and come out as two chars
+				appendText((char)value);
+				break;
+			default:
+				throw malformed("bad escape '\\" + (char)c + "'");
+		}
+	}
+
+	private void readMultiByte(int b) throws IOException
+	{
+		if ((b & 0xE0) == 0xC0)
+		{
+			appendText((char)(((b & 0x1F) << 6) | continuation()));
+		}
+		else if ((b & 0xF0) == 0xE0)
+		{
+			int b1 = continuation();
+			appendText((char)(((b & 0x0F) << 12) | (b1 << 6) | continuation()));
+		}
+		else if ((b & 0xF8) == 0xF0)
+		{
+			int b1 = continuation();
+			int b2 = continuation();
+			int codePoint = ((b & 0x07) << 18) | (b1 << 12) | (b2 << 6) | continuation();
+			appendText(Character.highSurrogate(codePoint));
+			appendText(Character.lowSurrogate(codePoint));
+		}
+		else
+		{
+			throw malformed("invalid UTF-8");
+		}
+	}
+
+	private int continuation() throws IOException
+	{
+		int b = readByte();
+		if ((b & 0xC0) != 0x80)
+			throw malformed("invalid UTF-8");
+		return b & 0x3F;
+	}
+
+	private void readNumber(int first) throws IOException
+	{
+		m_textLen = 0;
+		appendText((char)first);
+		while (m_pos < m_limit || fill())
+		{
+			byte b = m_buf[m_pos];
+			if ((b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-')
+			{
+				appendText((char)b);
+				m_pos++;
+			}
+			else
+			{
+				break;
+			}
+		}
+	}
+
+	private void readLiteral(String rest) throws IOException
+	{
+		for (int i = 0; i < rest.length(); i++)
+		{
+			if (readByte() != rest.charAt(i))
+				throw malformed("bad literal");
+		}
+	}
+
+	private void appendText(char c)
+	{
+		if (m_skipText)
+			return;
+		ensureText(1);
+		m_text[m_textLen++] = c;
+	}
+
+	private void ensureText(int extra)
+	{
+		if (m_textLen + extra > m_text.length)
+			m_text = Arrays.copyOf(m_text, Math.max(m_textLen + extra, m_text.length * 2));
+	}
+
+	private void push(boolean object)
+	{
+		if (m_depth == m_stack.length)
+			m_stack = Arrays.copyOf(m_stack, m_depth * 2);
+		m_stack[m_depth++] = object;
+	}
+
+	private void pop(boolean object) throws IOException
+	{
+		if (m_depth == 0 || m_stack[m_depth - 1] != object)
+			throw malformed("mismatched '" + (object ? '}' : ']') + "'");
+		m_depth--;
+	}
+
+	private int readByte() throws IOException
+	{
+		if (m_pos == m_limit && !fill())
+			return -1;
+		return m_buf[m_pos++] & 0xFF;
+	}
+
+	private boolean fill() throws IOException
+	{
+		m_offset += m_limit;
+		m_pos = 0;
+		m_limit = 0;
+		int n = m_in.read(m_buf, 0, m_buf.length);
+		if (n <= 0)
+			return false;
+		m_limit = n;
+		return true;
+	}
+
+	private IOException malformed(String message)
+	{
+		return new IOException("Malformed JSON at byte " + (m_offset + m_pos) + ": " + message);
+	}
+}
@@ -0,0 +1,72 @@
+package com.trumedia.project;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.trumedia.project.CSVData.IndexType;
+
+class NumericIndex extends SortedIndex
+{
+	// string lookups behave like SortedIndex, values that parse as numbers are also kept in numeric order for range scans
+	private final NavigableMap<Double,IntList> m_numbers;
+
+	public NumericIndex(int colIndex)
+	{
+		super(colIndex);
+		m_numbers = new TreeMap<Double,IntList>();
+	}
+
+	@Override
+	public IndexType getType()
+	{
+		return IndexType.NUMERIC;
+	}
+
+	@Override
+	public void add(int row, String value)
+	{
+		super.add(row, value);
+		double number = Storage.parseDouble(value, Double.NaN);
+		if (!Double.isNaN(number))
+		{
+			// adding zero folds -0.0 into 0.0, which Double.compareTo would otherwise order apart
+			IntList matches = m_numbers.get(number + 0.0);
+			if (matches == null)
+			{
+				matches = new IntList(4);
+				m_numbers.put(number + 0.0, matches);
+			}
+			matches.add(row);
+		}
+	}
+
+	@Override
+	public void remove(int row, String value)
+	{
+		super.remove(row, value);
+		double number = Storage.parseDouble(value, Double.NaN);
+		if (!Double.isNaN(number))
+		{
+			IntList matches = m_numbers.get(number + 0.0);
+			if (matches != null)
+			{
+				matches.removeValue(row);
+				if (matches.isEmpty())
+					m_numbers.remove(number + 0.0);
+			}
+		}
+	}
+
+	// row ids with a numeric value in the range, in value order
+	public IntList findRange(double min, boolean minInclusive, double max, boolean maxInclusive)
+	{
+		IntList rows = new IntList();
+		if (min > max || (min == max && !(minInclusive && maxInclusive)))
+			return rows;
+		for (IntList matches : m_numbers.subMap(min + 0.0, minInclusive, max + 0.0, maxInclusive).values())
+		{
+			rows.addAll(matches);
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,411 @@
+package com.trumedia.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.trumedia.project.CSVData.ColumnType;
+
+class OffHeapStorage extends Storage
+{
+	private static final int ROW_CHUNK_SHIFT = 14;
+	private static final int ROWS_PER_CHUNK = 1 << ROW_CHUNK_SHIFT;
+	private static final int ROW_CHUNK_MASK = ROWS_PER_CHUNK - 1;
+	private static final int STRING_CHUNK_SIZE = 16 << 20;
+
+	// each row is a null bitmap, an integral-text bitmap for doubles, then one fixed-width slot per column,
+	// with string slots pointing into a separate off-heap string area as chunk << 32 | offset,
+	// and dictionary slots holding a code into the column's dictionary, which stays on the heap
+	private ColumnType[] m_types;
+	// parse and validate values exactly as the heap columns would, remember the boolean spelling and hold dictionaries
+	private Column[] m_probes;
+	private int[] m_slotOffsets;
+	private int m_flagBytes;
+	private int m_rowWidth;
+	private ByteBuffer[] m_rowChunks;
+	private ByteBuffer[] m_stringChunks;
+	private int m_stringChunkCount;
+	private int m_rowCount;
+
+	public OffHeapStorage(ColumnType[] types, int capacity)
+	{
+		m_types = types.clone();
+		m_probes = new Column[types.length];
+		m_slotOffsets = new int[types.length];
+		m_flagBytes = (types.length + 7) / 8;
+		int offset = m_flagBytes * 2;
+		for (int i = 0; i < types.length; i++)
+		{
+			if (m_types[i] != ColumnType.STRING)
+				m_probes[i] = Column.create(m_types[i], 1);
+			m_slotOffsets[i] = offset;
+			offset += slotWidth(m_types[i]);
+		}
+		m_rowWidth = offset;
+		m_rowChunks = new ByteBuffer[Math.max(1, (capacity + ROWS_PER_CHUNK - 1) >>> ROW_CHUNK_SHIFT)];
+		m_stringChunks = new ByteBuffer[4];
+	}
+
+	private static int slotWidth(ColumnType type)
+	{
+		switch (type)
+		{
+			case INT:
+			case DICTIONARY:
+				return 4;
+			case BOOLEAN:
+				return 1;
+			default:
+				return 8;
+		}
+	}
+
+	@Override
+	public int getRowCount()
+	{
+		return m_rowCount;
+	}
+
+	@Override
+	public int getColCount()
+	{
+		return m_types.length;
+	}
+
+	@Override
+	public ColumnType getColType(int col)
+	{
+		return m_types[col];
+	}
+
+	@Override
+	public int addRow(String[] values)
+	{
+		int row = m_rowCount;
+		int chunk = row >>> ROW_CHUNK_SHIFT;
+		if (chunk == m_rowChunks.length)
+			m_rowChunks = Arrays.copyOf(m_rowChunks, m_rowChunks.length * 2);
+		if (m_rowChunks[chunk] == null)
+			m_rowChunks[chunk] = allocateChunk(ROWS_PER_CHUNK * m_rowWidth);
+		// a new row starts out all null, so a column demoted part way through copies it safely
+		int pos = (row & ROW_CHUNK_MASK) * m_rowWidth;
+		for (int i = 0; i < m_flagBytes; i++)
+		{
+			m_rowChunks[chunk].put(pos + i, (byte)0xFF);
+		}
+		m_rowCount++;
+		for (int i = 0; i < m_types.length; i++)
+		{
+			if (i < values.length && values[i] != null && !values[i].isEmpty())
+				setValue(row, i, values[i]);
+		}
+		return row;
+	}
+
+	@Override
+	public String getValue(int row, int col)
+	{
+		ByteBuffer chunk = m_rowChunks[row >>> ROW_CHUNK_SHIFT];
+		int pos = (row & ROW_CHUNK_MASK) * m_rowWidth;
+		if (getFlag(chunk, pos, col))
+			return "";
+		int slot = pos + m_slotOffsets[col];
+		switch (m_types[col])
+		{
+			case INT:
+				return Integer.toString(chunk.getInt(slot));
+			case LONG:
+				return Long.toString(chunk.getLong(slot));
+			case DOUBLE:
+			{
+				double value = chunk.getDouble(slot);
+				return getFlag(chunk, pos + m_flagBytes, col) ? Long.toString((long)value) : Double.toString(value);
+			}
+			case BOOLEAN:
+			{
+				String[] spelling = ((Column.BooleanColumn)m_probes[col]).getSpelling();
+				return (chunk.get(slot) != 0) ? spelling[0] : spelling[1];
+			}
+			case DICTIONARY:
+				return ((Column.DictionaryColumn)m_probes[col]).decode(chunk.getInt(slot));
+			default:
+				return readString(chunk.getLong(slot));
+		}
+	}
+
+	@Override
+	public void setValue(int row, int col, String value)
+	{
+		ByteBuffer chunk = m_rowChunks[row >>> ROW_CHUNK_SHIFT];
+		int pos = (row & ROW_CHUNK_MASK) * m_rowWidth;
+		if (value == null || value.isEmpty())
+		{
+			setFlag(chunk, pos, col, true);
+			return;
+		}
+		int slot = pos + m_slotOffsets[col];
+		ColumnType type = m_types[col];
+		if (type == ColumnType.STRING)
+		{
+			// the old text stays in the string area until the storage is rebuilt by compact()
+			chunk.putLong(slot, appendString(value));
+			setFlag(chunk, pos, col, false);
+			return;
+		}
+		if (type == ColumnType.DICTIONARY)
+		{
+			chunk.putInt(slot, ((Column.DictionaryColumn)m_probes[col]).encode(value));
+			setFlag(chunk, pos, col, false);
+			return;
+		}
+		Column probe = m_probes[col];
+		if (!probe.set(0, value))
+		{
+			demote(col);
+			setValue(row, col, value);
+			return;
+		}
+		switch (type)
+		{
+			case INT:
+				chunk.putInt(slot, probe.getInt(0, 0));
+				break;
+			case LONG:
+				chunk.putLong(slot, probe.getLong(0, 0L));
+				break;
+			case DOUBLE:
+				chunk.putDouble(slot, probe.getDouble(0, 0.0));
+				setFlag(chunk, pos + m_flagBytes, col, ((Column.DoubleColumn)probe).isIntegralText(0));
+				break;
+			default:
+				chunk.put(slot, (byte)(((Column.BooleanColumn)probe).getSpelling()[0].equals(value) ? 1 : 0));
+				break;
+		}
+		setFlag(chunk, pos, col, false);
+	}
+
+	@Override
+	public boolean isEmpty(int row, int col)
+	{
+		ByteBuffer chunk = m_rowChunks[row >>> ROW_CHUNK_SHIFT];
+		int pos = (row & ROW_CHUNK_MASK) * m_rowWidth;
+		if (getFlag(chunk, pos, col))
+			return true;
+		return isText(m_types[col]) && isBlank(getValue(row, col));
+	}
+
+	@Override
+	public int getInt(int row, int col, int defValue)
+	{
+		ColumnType type = m_types[col];
+		if (isText(type) || type == ColumnType.BOOLEAN)
+			return super.getInt(row, col, defValue);
+		ByteBuffer chunk = m_rowChunks[row >>> ROW_CHUNK_SHIFT];
+		int pos = (row & ROW_CHUNK_MASK) * m_rowWidth;
+		if (getFlag(chunk, pos, col))
+			return defValue;
+		int slot = pos + m_slotOffsets[col];
+		if (type == ColumnType.INT)
+			return chunk.getInt(slot);
+		long value;
+		if (type == ColumnType.LONG)
+			value = chunk.getLong(slot);
+		else if (getFlag(chunk, pos + m_flagBytes, col))
+			value = (long)chunk.getDouble(slot);
+		else
+			return defValue;
+		return (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) ? (int)value : defValue;
+	}
+
+	@Override
+	public long getLong(int row, int col, long defValue)
+	{
+		ColumnType type = m_types[col];
+		if (isText(type) || type == ColumnType.BOOLEAN)
+			return super.getLong(row, col, defValue);
+		ByteBuffer chunk = m_rowChunks[row >>> ROW_CHUNK_SHIFT];
+		int pos = (row & ROW_CHUNK_MASK) * m_rowWidth;
+		if (getFlag(chunk, pos, col))
+			return defValue;
+		int slot = pos + m_slotOffsets[col];
+		if (type == ColumnType.INT)
+			return chunk.getInt(slot);
+		if (type == ColumnType.LONG)
+			return chunk.getLong(slot);
+		// doubles count as whole numbers only when written without a decimal point, as in DoubleColumn
+		return getFlag(chunk, pos + m_flagBytes, col) ? (long)chunk.getDouble(slot) : defValue;
+	}
+
+	@Override
+	public float getFloat(int row, int col, float defValue)
+	{
+		ColumnType type = m_types[col];
+		if (isText(type) || type == ColumnType.BOOLEAN)
+			return super.getFloat(row, col, defValue);
+		ByteBuffer chunk = m_rowChunks[row >>> ROW_CHUNK_SHIFT];
+		int pos = (row & ROW_CHUNK_MASK) * m_rowWidth;
+		if (getFlag(chunk, pos, col))
+			return defValue;
+		int slot = pos + m_slotOffsets[col];
+		if (type == ColumnType.INT)
+			return chunk.getInt(slot);
+		if (type == ColumnType.LONG)
+			return chunk.getLong(slot);
+		return (float)chunk.getDouble(slot);
+	}
+
+	@Override
+	public double getDouble(int row, int col, double defValue)
+	{
+		ColumnType type = m_types[col];
+		if (isText(type) || type == ColumnType.BOOLEAN)
+			return super.getDouble(row, col, defValue);
+		ByteBuffer chunk = m_rowChunks[row >>> ROW_CHUNK_SHIFT];
+		int pos = (row & ROW_CHUNK_MASK) * m_rowWidth;
+		if (getFlag(chunk, pos, col))
+			return defValue;
+		int slot = pos + m_slotOffsets[col];
+		if (type == ColumnType.INT)
+			return chunk.getInt(slot);
+		if (type == ColumnType.LONG)
+			return chunk.getLong(slot);
+		return chunk.getDouble(slot);
+	}
+
+	// a heap copy of a typed column, built on demand for code that works column by column
+	@Override
+	Column getColumn(int col)
+	{
+		if (isText(m_types[col]))
+			return null;
+		Column column = Column.create(m_types[col], m_rowCount);
+		for (int row = 0; row < m_rowCount; row++)
+		{
+			column.add(getValue(row, col));
+		}
+		return column;
+	}
+
+	@Override
+	Column.DictionaryColumn getDictionary(int col)
+	{
+		return (m_types[col] == ColumnType.DICTIONARY) ? (Column.DictionaryColumn)m_probes[col] : null;
+	}
+
+	@Override
+	int getCode(int row, int col)
+	{
+		ByteBuffer chunk = m_rowChunks[row >>> ROW_CHUNK_SHIFT];
+		int pos = (row & ROW_CHUNK_MASK) * m_rowWidth;
+		// a null cell keeps whatever code was there before, the empty value is always code 0
+		return getFlag(chunk, pos, col) ? 0 : chunk.getInt(pos + m_slotOffsets[col]);
+	}
+
+	@Override
+	public Storage createEmpty(int capacity)
+	{
+		return new OffHeapStorage(m_types, capacity);
+	}
+
+	private void demote(int col)
+	{
+		// slots are fixed width, so a value the typed column cannot hold exactly means laying every row out again;
+		// both layouts are mapped until the copy finishes, so this briefly needs twice the storage's size
+		ColumnType[] types = m_types.clone();
+		types[col] = ColumnType.STRING;
+		OffHeapStorage storage = new OffHeapStorage(types, m_rowCount);
+		String[] values = new String[m_types.length];
+		for (int row = 0; row < m_rowCount; row++)
+		{
+			for (int i = 0; i < values.length; i++)
+			{
+				values[i] = getValue(row, i);
+			}
+			storage.addRow(values);
+		}
+		m_types = storage.m_types;
+		m_probes = storage.m_probes;
+		m_slotOffsets = storage.m_slotOffsets;
+		m_flagBytes = storage.m_flagBytes;
+		m_rowWidth = storage.m_rowWidth;
+		m_rowChunks = storage.m_rowChunks;
+		m_stringChunks = storage.m_stringChunks;
+		m_stringChunkCount = storage.m_stringChunkCount;
+	}
+
+	private static ByteBuffer allocateChunk(int size)
+	{
+		// chunks are mapped from deleted temp files rather than allocated direct, so they are paged by the OS and
+		// not capped by -XX:MaxDirectMemorySize, which defaults to the heap size; the mapping lives until the buffer is collected
+		try
+		{
+			Path file = Files.createTempFile("csvdata", ".offheap");
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+			{
+				return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			finally
+			{
+				try
+				{
+					Files.delete(file);
+				}
+				catch (IOException e)
+				{
+					// filesystems that refuse to delete a mapped file get it removed at exit instead
+					file.toFile().deleteOnExit();
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static boolean getFlag(ByteBuffer chunk, int flags, int col)
+	{
+		return (chunk.get(flags + (col >>> 3)) & (1 << (col & 7))) != 0;
+	}
+
+	private static void setFlag(ByteBuffer chunk, int flags, int col, boolean set)
+	{
+		int index = flags + (col >>> 3);
+		int bits = chunk.get(index);
+		chunk.put(index, (byte)(set ? bits | (1 << (col & 7)) : bits & ~(1 << (col & 7))));
+	}
+
+	private long appendString(String value)
+	{
+		// length-prefixed UTF-8, never split across chunks; text longer than a chunk gets a chunk of its own
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		int needed = 4 + bytes.length;
+		ByteBuffer chunk = (m_stringChunkCount > 0) ? m_stringChunks[m_stringChunkCount - 1] : null;
+		if (chunk == null || chunk.remaining() < needed)
+		{
+			if (m_stringChunkCount == m_stringChunks.length)
+				m_stringChunks = Arrays.copyOf(m_stringChunks, m_stringChunks.length * 2);
+			chunk = allocateChunk(Math.max(STRING_CHUNK_SIZE, needed));
+			m_stringChunks[m_stringChunkCount++] = chunk;
+		}
+		int offset = chunk.position();
+		chunk.putInt(bytes.length);
+		chunk.put(bytes);
+		return ((long)(m_stringChunkCount - 1) << 32) | offset;
+	}
+
+	private String readString(long ref)
+	{
+		ByteBuffer chunk = m_stringChunks[(int)(ref >>> 32)];
+		int offset = (int)ref;
+		byte[] bytes = new byte[chunk.getInt(offset)];
+		chunk.get(offset + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
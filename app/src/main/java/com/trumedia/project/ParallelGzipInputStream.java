@@ -0,0 +1,228 @@
+package com.trumedia.project;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+// reads plain input unchanged and gzip input decompressed, inflating ParallelGzipOutputStream members in parallel
+public class ParallelGzipInputStream extends InputStream
+{
+	private static final int GZIP_MAGIC1 = 0x1f;
+	private static final int GZIP_MAGIC2 = 0x8b;
+	private static final int FEXTRA = 0x04;
+
+	private final PushbackInputStream m_in;
+	private final int m_maxPending;
+	private final ArrayDeque<Future<byte[]>> m_pending = new ArrayDeque<Future<byte[]>>();
+	private boolean m_detected;
+	private boolean m_membersDone;
+	// set when input turns out to be plain or ordinary gzip, used once pending members are drained
+	private InputStream m_fallback;
+	private byte[] m_current = new byte[0];
+	private int m_currentPos;
+
+	public ParallelGzipInputStream(InputStream in)
+	{
+		this(in, ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	public ParallelGzipInputStream(InputStream in, int threads)
+	{
+		m_in = new PushbackInputStream(in, ParallelGzipOutputStream.HEADER_SIZE);
+		m_maxPending = Math.max(threads, 1) * 2;
+	}
+
+	public static boolean isGzip(byte[] head, int len)
+	{
+		return len >= 2 && (head[0] & 0xFF) == GZIP_MAGIC1 && (head[1] & 0xFF) == GZIP_MAGIC2;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		byte[] one = new byte[1];
+		int n = read(one, 0, 1);
+		return (n <= 0) ? -1 : (one[0] & 0xFF);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+			return 0;
+		if (!m_detected)
+			detect();
+		while (m_currentPos == m_current.length)
+		{
+			if (!nextMember())
+				return (m_fallback != null) ? m_fallback.read(b, off, len) : -1;
+		}
+		int n = Math.min(len, m_current.length - m_currentPos);
+		System.arraycopy(m_current, m_currentPos, b, off, n);
+		m_currentPos += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException
+	{
+		return m_current.length - m_currentPos;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		for (Future<byte[]> future : m_pending)
+		{
+			future.cancel(true);
+		}
+		m_pending.clear();
+		if (m_fallback != null)
+			m_fallback.close();
+		m_in.close();
+	}
+
+	private void detect() throws IOException
+	{
+		m_detected = true;
+		byte[] head = new byte[2];
+		int n = m_in.readNBytes(head, 0, 2);
+		if (n > 0)
+			m_in.unread(head, 0, n);
+		if (!isGzip(head, n))
+		{
+			m_membersDone = true;
+			m_fallback = m_in;
+			return;
+		}
+		fillPending();
+	}
+
+	private boolean nextMember() throws IOException
+	{
+		if (m_pending.isEmpty())
+			return false;
+		Future<byte[]> future = m_pending.poll();
+		try
+		{
+			m_current = future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decompressing", e);
+		}
+		catch (ExecutionException e)
+		{
+			// the common pool hands a checked exception back wrapped in a RuntimeException
+			for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause())
+			{
+				if (cause instanceof IOException)
+					throw (IOException)cause;
+			}
+			throw new IOException("Failed decompressing block", e.getCause());
+		}
+		m_currentPos = 0;
+		fillPending();
+		return true;
+	}
+
+	private void fillPending() throws IOException
+	{
+		while (!m_membersDone && m_pending.size() < m_maxPending)
+		{
+			byte[] member = readMember();
+			if (member == null)
+			{
+				m_membersDone = true;
+				break;
+			}
+			m_pending.add(ForkJoinPool.commonPool().submit(() -> inflate(member)));
+		}
+	}
+
+	private byte[] readMember() throws IOException
+	{
+		int headerSize = ParallelGzipOutputStream.HEADER_SIZE;
+		byte[] header = new byte[headerSize];
+		int n = m_in.readNBytes(header, 0, headerSize);
+		if (n == 0)
+			return null;
+		boolean ours = n == headerSize && isGzip(header, n) && header[2] == 8 && (header[3] & 0xFF) == FEXTRA
+			&& readShort(header, 10) == 8 && header[12] == ParallelGzipOutputStream.SUBFIELD_ID1 && header[13] == ParallelGzipOutputStream.SUBFIELD_ID2 && readShort(header, 14) == 4;
+		if (!ours)
+		{
+			// an ordinary gzip member, e.g. from gzip itself: the rest of the input is inflated sequentially
+			m_fallback = new GZIPInputStream(new SequenceInputStream(new ByteArrayInputStream(header, 0, n), m_in), 64 * 1024);
+			return null;
+		}
+		int size = readInt(header, 16);
+		if (size < headerSize + ParallelGzipOutputStream.TRAILER_SIZE)
+			throw new IOException("Corrupt gzip block size " + size);
+		byte[] body = m_in.readNBytes(size - headerSize);
+		if (body.length != size - headerSize)
+			throw new EOFException("Truncated gzip block");
+		return body;
+	}
+
+	private static byte[] inflate(byte[] body) throws IOException
+	{
+		int trailer = body.length - ParallelGzipOutputStream.TRAILER_SIZE;
+		int expectedCrc = readInt(body, trailer);
+		int size = readInt(body, trailer + 4);
+		// a corrupt trailer must not allocate more than any writer produces in one block
+		if (size < 0 || size > ParallelGzipOutputStream.MAX_BLOCK_SIZE)
+			throw new IOException("Corrupt gzip block size " + size);
+		byte[] data = new byte[size];
+		Inflater inflater = new Inflater(true);
+		try
+		{
+			// the trailer stays in the input, which also gives the raw inflater the extra byte it may want
+			inflater.setInput(body, 0, body.length);
+			int pos = 0;
+			while (pos < size && !inflater.finished())
+			{
+				int n = inflater.inflate(data, pos, size - pos);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IOException("Corrupt gzip block");
+				pos += n;
+			}
+			if (pos != size)
+				throw new IOException("Corrupt gzip block");
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("Corrupt gzip block", e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, size);
+		if ((int)crc.getValue() != expectedCrc)
+			throw new IOException("gzip block CRC mismatch");
+		return data;
+	}
+
+	private static int readShort(byte[] buf, int pos)
+	{
+		return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8);
+	}
+
+	private static int readInt(byte[] buf, int pos)
+	{
+		return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8) | ((buf[pos + 2] & 0xFF) << 16) | ((buf[pos + 3] & 0xFF) << 24);
+	}
+}
@@ -0,0 +1,197 @@
+package com.trumedia.project;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class ParallelGzipOutputStream extends OutputStream
+{
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	// readers refuse members that claim to inflate to more than this
+	public static final int MAX_BLOCK_SIZE = 1 << 26;
+
+	// gzip header with FEXTRA set, carrying one "PG" subfield that holds the length of the whole member
+	static final int HEADER_SIZE = 10 + 2 + 4 + 4;
+	static final int TRAILER_SIZE = 8;
+	static final byte SUBFIELD_ID1 = 'P';
+	static final byte SUBFIELD_ID2 = 'G';
+
+	private final OutputStream m_out;
+	private final int m_blockSize;
+	private final int m_level;
+	private final int m_maxPending;
+	private final ArrayDeque<Future<byte[]>> m_pending = new ArrayDeque<Future<byte[]>>();
+	private byte[] m_block;
+	private int m_blockLen;
+	private boolean m_wroteMember;
+	private boolean m_closed;
+
+	public ParallelGzipOutputStream(OutputStream out)
+	{
+		this(out, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	public ParallelGzipOutputStream(OutputStream out, int blockSize, int level, int threads)
+	{
+		m_out = out;
+		m_blockSize = Math.min(Math.max(blockSize, 1024), MAX_BLOCK_SIZE);
+		m_level = level;
+		// enough blocks in flight to keep every thread busy while the oldest is written out
+		m_maxPending = Math.max(threads, 1) * 2;
+		m_block = new byte[m_blockSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		if (m_blockLen == m_blockSize)
+			submitBlock();
+		m_block[m_blockLen++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		while (len > 0)
+		{
+			if (m_blockLen == m_blockSize)
+				submitBlock();
+			int n = Math.min(len, m_blockSize - m_blockLen);
+			System.arraycopy(b, off, m_block, m_blockLen, n);
+			m_blockLen += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	// ends the current member early, so everything written so far can be decompressed
+	@Override
+	public void flush() throws IOException
+	{
+		if (m_blockLen > 0)
+			submitBlock();
+		while (!m_pending.isEmpty())
+		{
+			writeOldest();
+		}
+		m_out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (m_closed)
+			return;
+		m_closed = true;
+		try
+		{
+			// an empty input still needs one member to be a valid gzip file
+			if (m_blockLen > 0 || !m_wroteMember)
+				submitBlock();
+			while (!m_pending.isEmpty())
+			{
+				writeOldest();
+			}
+		}
+		finally
+		{
+			for (Future<byte[]> future : m_pending)
+			{
+				future.cancel(true);
+			}
+			m_out.close();
+		}
+	}
+
+	private void submitBlock() throws IOException
+	{
+		if (m_pending.size() >= m_maxPending)
+			writeOldest();
+		byte[] block = m_block;
+		int len = m_blockLen;
+		int level = m_level;
+		m_pending.add(ForkJoinPool.commonPool().submit(() -> compress(block, len, level)));
+		m_wroteMember = true;
+		m_block = new byte[m_blockSize];
+		m_blockLen = 0;
+	}
+
+	private void writeOldest() throws IOException
+	{
+		Future<byte[]> future = m_pending.poll();
+		try
+		{
+			m_out.write(future.get());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Failed compressing block", e.getCause());
+		}
+	}
+
+	static byte[] compress(byte[] data, int len, int level)
+	{
+		Deflater deflater = new Deflater(level, true);
+		try
+		{
+			deflater.setInput(data, 0, len);
+			deflater.finish();
+			// incompressible data grows by a few bytes per 16K stored block
+			byte[] member = new byte[HEADER_SIZE + len + (len >> 12) + 64 + TRAILER_SIZE];
+			int pos = HEADER_SIZE;
+			while (!deflater.finished())
+			{
+				if (pos == member.length - TRAILER_SIZE)
+					member = Arrays.copyOf(member, member.length * 2);
+				pos += deflater.deflate(member, pos, member.length - TRAILER_SIZE - pos);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, len);
+			int size = pos + TRAILER_SIZE;
+
+			member[0] = 0x1f;
+			member[1] = (byte)0x8b;
+			member[2] = Deflater.DEFLATED;
+			member[3] = 0x04;
+			// mtime 0, xfl 0, os unknown
+			member[9] = (byte)0xff;
+			writeShort(member, 10, 8);
+			member[12] = SUBFIELD_ID1;
+			member[13] = SUBFIELD_ID2;
+			writeShort(member, 14, 4);
+			writeInt(member, 16, size);
+			writeInt(member, pos, (int)crc.getValue());
+			writeInt(member, pos + 4, len);
+			return (size == member.length) ? member : Arrays.copyOf(member, size);
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	private static void writeShort(byte[] buf, int pos, int value)
+	{
+		buf[pos] = (byte)value;
+		buf[pos + 1] = (byte)(value >>> 8);
+	}
+
+	private static void writeInt(byte[] buf, int pos, int value)
+	{
+		buf[pos] = (byte)value;
+		buf[pos + 1] = (byte)(value >>> 8);
+		buf[pos + 2] = (byte)(value >>> 16);
+		buf[pos + 3] = (byte)(value >>> 24);
+	}
+}
@@ -0,0 +1,168 @@
+package com.trumedia.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import com.trumedia.project.CSVData.Header;
+import com.trumedia.project.CSVData.Line;
+
+public class PartitionedWriter
+{
+	// partitions are many and mostly small, so each writer gets a modest buffer
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	private final File m_dir;
+	private final String m_prefix;
+	private final String m_suffix;
+	private int m_threads = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+	private int m_maxOpenFiles = 64;
+
+	// each partition is written to prefix + key + suffix, e.g. "game_pitches_" + "717182" + ".csv"; a value that is not
+	// safe in a file name, or that would clash with another partition's file, gets a suffix so partitions never share a file
+	public PartitionedWriter(File dir, String prefix, String suffix)
+	{
+		m_dir = dir;
+		m_prefix = prefix;
+		m_suffix = suffix;
+	}
+
+	public void setThreads(int threads)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+		m_threads = threads;
+	}
+
+	public void setMaxOpenFiles(int maxOpenFiles)
+	{
+		if (maxOpenFiles < 1)
+			throw new IllegalArgumentException("Open file limit must be at least 1: " + maxOpenFiles);
+		m_maxOpenFiles = maxOpenFiles;
+	}
+
+	// returns each distinct partition value with the file its rows went to
+	public Map<String, File> write(CSVData csv, String partitionCol) throws IOException, InterruptedException
+	{
+		int col = csv.getHeader().getColIndex(partitionCol);
+		if (col < 0)
+			throw new IllegalArgumentException("Unknown partition column '" + partitionCol + "'");
+
+		// one pass over the rows, keeping partitions in the order their values first appear
+		Map<String, List<Line>> partitions = new LinkedHashMap<String, List<Line>>();
+		for (Line line : csv.getLines())
+		{
+			String value = line.getColValue(col);
+			List<Line> lines = partitions.get(value);
+			if (lines == null)
+			{
+				lines = new ArrayList<Line>();
+				partitions.put(value, lines);
+			}
+			lines.add(line);
+		}
+
+		Header header = csv.getHeader();
+		Map<String, File> files = new LinkedHashMap<String, File>();
+		Set<String> usedKeys = new HashSet<String>();
+		Semaphore openFiles = new Semaphore(m_maxOpenFiles);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(m_threads, Math.max(partitions.size(), 1)));
+		List<Future<?>> futures = new ArrayList<Future<?>>(partitions.size());
+		try
+		{
+			for (Map.Entry<String, List<Line>> partition : partitions.entrySet())
+			{
+				File file = new File(m_dir, m_prefix + toFileKey(partition.getKey(), usedKeys) + m_suffix);
+				files.put(partition.getKey(), file);
+				List<Line> lines = partition.getValue();
+				futures.add(executor.submit(() ->
+				{
+					openFiles.acquire();
+					try
+					{
+						FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+						new CSVWriter(channel, ',', '"', BUFFER_SIZE).write(header, lines, true, true);
+					}
+					finally
+					{
+						openFiles.release();
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof UncheckedIOException)
+				throw ((UncheckedIOException)cause).getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new IOException(cause);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		return files;
+	}
+
+	private static String toFileKey(String value, Set<String> usedKeys)
+	{
+		// a sanitized key carries a hash of the raw value, since "a/b", "a b" and "a_b" would otherwise share a file;
+		// keys are compared ignoring case for filesystems where "FF" and "ff" are the same file
+		String key = sanitize(value);
+		String hashed = key + "-" + Integer.toHexString(value.hashCode());
+		if (!key.equals(value))
+			key = hashed;
+		if (usedKeys.add(key.toLowerCase(Locale.ROOT)))
+			return key;
+		if (usedKeys.add(hashed.toLowerCase(Locale.ROOT)))
+			return hashed;
+		// two values with the same hash, or a raw value that happens to look like another's hashed key
+		for (int n = 2; ; n++)
+		{
+			String numbered = hashed + "-" + n;
+			if (usedKeys.add(numbered.toLowerCase(Locale.ROOT)))
+				return numbered;
+		}
+	}
+
+	private static String sanitize(String value)
+	{
+		// keys become part of a file name, so anything outside a safe set is replaced
+		if (value.isEmpty())
+			return "_";
+		StringBuilder sb = null;
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_' || (c == '.' && i > 0);
+			if (!safe && sb == null)
+				sb = new StringBuilder(value.substring(0, i));
+			if (sb != null)
+				sb.append(safe ? c : '_');
+		}
+		return (sb != null) ? sb.toString() : value;
+	}
+}
@@ -0,0 +1,480 @@
+package com.trumedia.project;
+
+import java.util.Arrays;
+
+public abstract class Predicate
+{
+	// comparisons against an empty or non-numeric value are false, NOT simply inverts its argument
+	private enum Op { LT, LE, GT, GE }
+
+	public static Predicate eq(String header, String value)
+	{
+		return in(header, value);
+	}
+
+	public static Predicate in(String header, String ... values)
+	{
+		// same matching as findMatchingLines: equal to the trimmed value ignoring case
+		if (values == null || values.length == 0)
+			throw new IllegalArgumentException("IN requires at least one value");
+		for (String value : values)
+		{
+			if (value == null)
+				throw new IllegalArgumentException("Null value for '" + header + "', use isNull instead");
+		}
+		return new In(header, values.clone());
+	}
+
+	public static Predicate lt(String header, double value)
+	{
+		return new Compare(header, Op.LT, value);
+	}
+
+	public static Predicate le(String header, double value)
+	{
+		return new Compare(header, Op.LE, value);
+	}
+
+	public static Predicate gt(String header, double value)
+	{
+		return new Compare(header, Op.GT, value);
+	}
+
+	public static Predicate ge(String header, double value)
+	{
+		return new Compare(header, Op.GE, value);
+	}
+
+	public static Predicate between(String header, double min, double max)
+	{
+		return and(ge(header, min), le(header, max));
+	}
+
+	public static Predicate isNull(String header)
+	{
+		return new IsNull(header);
+	}
+
+	public static Predicate notNull(String header)
+	{
+		return not(isNull(header));
+	}
+
+	public static Predicate and(Predicate ... predicates)
+	{
+		return new And(check(predicates));
+	}
+
+	public static Predicate or(Predicate ... predicates)
+	{
+		return new Or(check(predicates));
+	}
+
+	public static Predicate not(Predicate predicate)
+	{
+		return new Not(check(predicate)[0]);
+	}
+
+	// resolves column names and indexes against one data set, once per query
+	abstract Bound bind(CSVData csv);
+
+	abstract static class Bound
+	{
+		public abstract boolean test(int row);
+
+		// row ids that can match, possibly with extras and tombstoned rows, or null when every row has to be tested
+		public IntList candidates()
+		{
+			return null;
+		}
+
+		// exactly the live matching rows, when bitmap indexes can answer on their own
+		public Bitmap bitmap()
+		{
+			return null;
+		}
+	}
+
+	private static Predicate[] check(Predicate ... predicates)
+	{
+		if (predicates == null || predicates.length == 0)
+			throw new IllegalArgumentException("At least one predicate required");
+		for (Predicate predicate : predicates)
+		{
+			if (predicate == null)
+				throw new IllegalArgumentException("Null predicate");
+		}
+		return predicates.clone();
+	}
+
+	private static int colIndex(CSVData csv, String header)
+	{
+		int col = csv.getHeader().getColIndex(header);
+		if (col < 0)
+			throw new IllegalArgumentException("Unknown column '" + header + "'");
+		return col;
+	}
+
+	private static class In extends Predicate
+	{
+		private final String m_header;
+		private final String[] m_values;
+
+		public In(String header, String[] values)
+		{
+			m_header = header;
+			m_values = values;
+		}
+
+		@Override
+		Bound bind(CSVData csv)
+		{
+			int col = colIndex(csv, m_header);
+			CSVData.ValueMatcher[] matchers = new CSVData.ValueMatcher[m_values.length];
+			for (int i = 0; i < matchers.length; i++)
+			{
+				matchers[i] = csv.createMatcher(col, m_values[i]);
+			}
+			Index index = csv.getIndex(col);
+			return new Bound()
+			{
+				@Override
+				public boolean test(int row)
+				{
+					for (CSVData.ValueMatcher matcher : matchers)
+					{
+						if (matcher.matches(row))
+							return true;
+					}
+					return false;
+				}
+
+				@Override
+				public IntList candidates()
+				{
+					Bitmap bitmap = bitmap();
+					if (bitmap != null)
+						return bitmap.toIntList();
+					if (index == null)
+						return null;
+					IntList rows = new IntList();
+					for (String value : m_values)
+					{
+						rows.addAll(index.find(value));
+					}
+					return rows;
+				}
+
+				@Override
+				public Bitmap bitmap()
+				{
+					if (!(index instanceof BitmapIndex))
+						return null;
+					Bitmap rows = new Bitmap();
+					for (String value : m_values)
+					{
+						Bitmap matches = ((BitmapIndex)index).findBitmap(value);
+						if (matches != null)
+							rows = Bitmap.or(rows, matches);
+					}
+					return rows;
+				}
+			};
+		}
+
+		@Override
+		public String toString()
+		{
+			return (m_values.length == 1) ? m_header + " = " + m_values[0] : m_header + " IN " + Arrays.toString(m_values);
+		}
+	}
+
+	private static class Compare extends Predicate
+	{
+		private final String m_header;
+		private final Op m_op;
+		private final double m_value;
+
+		public Compare(String header, Op op, double value)
+		{
+			m_header = header;
+			m_op = op;
+			m_value = value;
+		}
+
+		@Override
+		Bound bind(CSVData csv)
+		{
+			int col = colIndex(csv, m_header);
+			Storage storage = csv.getStorage();
+			Index index = csv.getIndex(col);
+			return new Bound()
+			{
+				@Override
+				public boolean test(int row)
+				{
+					if (storage.isEmpty(row, col))
+						return false;
+					double value = storage.getDouble(row, col, Double.NaN);
+					switch (m_op)
+					{
+						case LT:
+							return value < m_value;
+						case LE:
+							return value <= m_value;
+						case GT:
+							return value > m_value;
+						default:
+							return value >= m_value;
+					}
+				}
+
+				@Override
+				public IntList candidates()
+				{
+					// only a numeric index knows value order, a sorted one orders text
+					if (!(index instanceof NumericIndex) || Double.isNaN(m_value))
+						return null;
+					NumericIndex numeric = (NumericIndex)index;
+					switch (m_op)
+					{
+						case LT:
+							return numeric.findRange(Double.NEGATIVE_INFINITY, true, m_value, false);
+						case LE:
+							return numeric.findRange(Double.NEGATIVE_INFINITY, true, m_value, true);
+						case GT:
+							return numeric.findRange(m_value, false, Double.POSITIVE_INFINITY, true);
+						default:
+							return numeric.findRange(m_value, true, Double.POSITIVE_INFINITY, true);
+					}
+				}
+			};
+		}
+
+		@Override
+		public String toString()
+		{
+			String[] symbols = { "<", "<=", ">", ">=" };
+			return m_header + " " + symbols[m_op.ordinal()] + " " + m_value;
+		}
+	}
+
+	private static class IsNull extends Predicate
+	{
+		private final String m_header;
+
+		public IsNull(String header)
+		{
+			m_header = header;
+		}
+
+		@Override
+		Bound bind(CSVData csv)
+		{
+			int col = colIndex(csv, m_header);
+			Storage storage = csv.getStorage();
+			return new Bound()
+			{
+				@Override
+				public boolean test(int row)
+				{
+					return storage.isEmpty(row, col);
+				}
+			};
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_header + " IS NULL";
+		}
+	}
+
+	private static class And extends Predicate
+	{
+		private final Predicate[] m_predicates;
+
+		public And(Predicate[] predicates)
+		{
+			m_predicates = predicates;
+		}
+
+		@Override
+		Bound bind(CSVData csv)
+		{
+			Bound[] bounds = bindAll(csv, m_predicates);
+			return new Bound()
+			{
+				@Override
+				public boolean test(int row)
+				{
+					for (Bound bound : bounds)
+					{
+						if (!bound.test(row))
+							return false;
+					}
+					return true;
+				}
+
+				@Override
+				public IntList candidates()
+				{
+					// terms with bitmaps are intersected, then the smallest candidate set wins and is tested against all terms
+					Bitmap intersection = null;
+					IntList best = null;
+					for (Bound bound : bounds)
+					{
+						Bitmap bitmap = bound.bitmap();
+						if (bitmap != null)
+						{
+							intersection = (intersection == null) ? bitmap : Bitmap.and(intersection, bitmap);
+							continue;
+						}
+						IntList rows = bound.candidates();
+						if (rows != null && (best == null || rows.size() < best.size()))
+							best = rows;
+					}
+					if (intersection != null && (best == null || intersection.getCardinality() < best.size()))
+						best = intersection.toIntList();
+					return best;
+				}
+
+				@Override
+				public Bitmap bitmap()
+				{
+					Bitmap intersection = null;
+					for (Bound bound : bounds)
+					{
+						Bitmap bitmap = bound.bitmap();
+						if (bitmap == null)
+							return null;
+						intersection = (intersection == null) ? bitmap : Bitmap.and(intersection, bitmap);
+					}
+					return intersection;
+				}
+			};
+		}
+
+		@Override
+		public String toString()
+		{
+			return join(m_predicates, " AND ");
+		}
+	}
+
+	private static class Or extends Predicate
+	{
+		private final Predicate[] m_predicates;
+
+		public Or(Predicate[] predicates)
+		{
+			m_predicates = predicates;
+		}
+
+		@Override
+		Bound bind(CSVData csv)
+		{
+			Bound[] bounds = bindAll(csv, m_predicates);
+			return new Bound()
+			{
+				@Override
+				public boolean test(int row)
+				{
+					for (Bound bound : bounds)
+					{
+						if (bound.test(row))
+							return true;
+					}
+					return false;
+				}
+
+				@Override
+				public IntList candidates()
+				{
+					// usable only when every branch can narrow its rows, otherwise it is a full scan anyway
+					IntList union = new IntList();
+					for (Bound bound : bounds)
+					{
+						IntList rows = bound.candidates();
+						if (rows == null)
+							return null;
+						union.addAll(rows);
+					}
+					return union;
+				}
+
+				@Override
+				public Bitmap bitmap()
+				{
+					Bitmap union = new Bitmap();
+					for (Bound bound : bounds)
+					{
+						Bitmap bitmap = bound.bitmap();
+						if (bitmap == null)
+							return null;
+						union = Bitmap.or(union, bitmap);
+					}
+					return union;
+				}
+			};
+		}
+
+		@Override
+		public String toString()
+		{
+			return join(m_predicates, " OR ");
+		}
+	}
+
+	private static class Not extends Predicate
+	{
+		private final Predicate m_predicate;
+
+		public Not(Predicate predicate)
+		{
+			m_predicate = predicate;
+		}
+
+		@Override
+		Bound bind(CSVData csv)
+		{
+			Bound bound = m_predicate.bind(csv);
+			return new Bound()
+			{
+				@Override
+				public boolean test(int row)
+				{
+					return !bound.test(row);
+				}
+			};
+		}
+
+		@Override
+		public String toString()
+		{
+			return "NOT (" + m_predicate + ")";
+		}
+	}
+
+	private static Bound[] bindAll(CSVData csv, Predicate[] predicates)
+	{
+		Bound[] bounds = new Bound[predicates.length];
+		for (int i = 0; i < predicates.length; i++)
+		{
+			bounds[i] = predicates[i].bind(csv);
+		}
+		return bounds;
+	}
+
+	private static String join(Predicate[] predicates, String separator)
+	{
+		StringBuilder str = new StringBuilder("(");
+		for (int i = 0; i < predicates.length; i++)
+		{
+			if (i > 0)
+				str.append(separator);
+			str.append(predicates[i]);
+		}
+		return str.append(")").toString();
+	}
+}
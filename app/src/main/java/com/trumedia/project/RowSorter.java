@@ -0,0 +1,110 @@
+package com.trumedia.project;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+class RowSorter
+{
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+	private static final int PARALLEL_GRAIN = 1 << 13;
+	public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	interface RowComparator
+	{
+		int compare(int a, int b);
+	}
+
+	// stable merge sort of int items, so equal keys keep their current order like Collections.sort
+	public static void sort(int[] items, int size, RowComparator cmp, boolean parallel)
+	{
+		if (size < 2)
+			return;
+		int[] aux = new int[size];
+		if (parallel && size >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1)
+			ForkJoinPool.commonPool().invoke(new SortTask(items, aux, 0, size, cmp));
+		else
+			mergeSort(items, aux, 0, size, cmp);
+	}
+
+	private static void mergeSort(int[] items, int[] aux, int from, int to, RowComparator cmp)
+	{
+		if (to - from <= INSERTION_SORT_THRESHOLD)
+		{
+			insertionSort(items, from, to, cmp);
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(items, aux, from, mid, cmp);
+		mergeSort(items, aux, mid, to, cmp);
+		merge(items, aux, from, mid, to, cmp);
+	}
+
+	private static void insertionSort(int[] items, int from, int to, RowComparator cmp)
+	{
+		for (int i = from + 1; i < to; i++)
+		{
+			int item = items[i];
+			int j = i - 1;
+			while (j >= from && cmp.compare(items[j], item) > 0)
+			{
+				items[j + 1] = items[j];
+				j--;
+			}
+			items[j + 1] = item;
+		}
+	}
+
+	private static void merge(int[] items, int[] aux, int from, int mid, int to, RowComparator cmp)
+	{
+		// already in order, nothing to merge
+		if (cmp.compare(items[mid - 1], items[mid]) <= 0)
+			return;
+		System.arraycopy(items, from, aux, from, to - from);
+		int left = from;
+		int right = mid;
+		for (int i = from; i < to; i++)
+		{
+			if (left >= mid)
+				items[i] = aux[right++];
+			else if (right >= to)
+				items[i] = aux[left++];
+			else if (cmp.compare(aux[right], aux[left]) < 0)
+				items[i] = aux[right++];
+			else
+				items[i] = aux[left++];
+		}
+	}
+
+	private static class SortTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int[] m_items;
+		private final int[] m_aux;
+		private final int m_from;
+		private final int m_to;
+		private final RowComparator m_cmp;
+
+		public SortTask(int[] items, int[] aux, int from, int to, RowComparator cmp)
+		{
+			m_items = items;
+			m_aux = aux;
+			m_from = from;
+			m_to = to;
+			m_cmp = cmp;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (m_to - m_from <= PARALLEL_GRAIN)
+			{
+				mergeSort(m_items, m_aux, m_from, m_to, m_cmp);
+				return;
+			}
+			int mid = (m_from + m_to) >>> 1;
+			invokeAll(new SortTask(m_items, m_aux, m_from, mid, m_cmp), new SortTask(m_items, m_aux, mid, m_to, m_cmp));
+			merge(m_items, m_aux, m_from, mid, m_to, m_cmp);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.trumedia.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.trumedia.project.CSVData.ColumnType;
+
+class RowStorage extends Storage
+{
+	private final int m_colCount;
+	private final List<String[]> m_rows;
+
+	public RowStorage(int colCount, int capacity)
+	{
+		m_colCount = colCount;
+		m_rows = new ArrayList<String[]>(capacity);
+	}
+
+	@Override
+	public int getRowCount()
+	{
+		return m_rows.size();
+	}
+
+	@Override
+	public int getColCount()
+	{
+		return m_colCount;
+	}
+
+	@Override
+	public ColumnType getColType(int col)
+	{
+		return ColumnType.STRING;
+	}
+
+	@Override
+	public int addRow(String[] values)
+	{
+		String[] cols = Arrays.copyOf(values, m_colCount);
+		for (int i = 0; i < cols.length; i++)
+		{
+			if (cols[i] == null)
+				cols[i] = "";
+		}
+		m_rows.add(cols);
+		return m_rows.size() - 1;
+	}
+
+	@Override
+	public String getValue(int row, int col)
+	{
+		return m_rows.get(row)[col];
+	}
+
+	@Override
+	public void setValue(int row, int col, String value)
+	{
+		m_rows.get(row)[col] = (value != null) ? value : "";
+	}
+
+	@Override
+	public Storage createEmpty(int capacity)
+	{
+		return new RowStorage(m_colCount, capacity);
+	}
+}
@@ -0,0 +1,540 @@
+package com.trumedia.project;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.trumedia.project.CSVData.ColumnType;
+import com.trumedia.project.CSVData.IndexType;
+
+// binary columnar file: one block per column and per saved index, located through a directory at the end of the file
+class Snapshot
+{
+	private static final int MAGIC = 0x43535644;
+	private static final int VERSION = 1;
+	private static final int FOOTER_SIZE = 8 + 4;
+	private static final byte PLAIN = 0;
+	private static final byte DICTIONARY = 1;
+
+	private final String[] m_names;
+	private final SnapshotStorage m_storage;
+	private final Index[] m_indexes;
+	private final List<CompositeIndex> m_compositeIndexes;
+
+	private Snapshot(String[] names, SnapshotStorage storage, Index[] indexes, List<CompositeIndex> compositeIndexes)
+	{
+		m_names = names;
+		m_storage = storage;
+		m_indexes = indexes;
+		m_compositeIndexes = compositeIndexes;
+	}
+
+	public String[] getColNames()
+	{
+		return m_names;
+	}
+
+	public SnapshotStorage getStorage()
+	{
+		return m_storage;
+	}
+
+	// per column, null where no index was saved
+	public Index[] getIndexes()
+	{
+		return m_indexes;
+	}
+
+	public List<CompositeIndex> getCompositeIndexes()
+	{
+		return m_compositeIndexes;
+	}
+
+	public static void write(Path path, String[] names, Storage storage, IntList order, Index[] indexes, List<CompositeIndex> compositeIndexes) throws IOException
+	{
+		// rows are renumbered to their position in the line order, tombstoned rows map to -1 and are left out
+		int rowCount = order.size();
+		int[] positions = new int[storage.getRowCount()];
+		Arrays.fill(positions, -1);
+		for (int i = 0; i < rowCount; i++)
+		{
+			positions[order.get(i)] = i;
+		}
+
+		// written next to the target and moved over it, so a snapshot that is mapped elsewhere is never truncated underneath
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			ColumnType[] types = new ColumnType[names.length];
+			long[] blocks = new long[names.length * 2];
+			long[] indexBlocks = new long[names.length * 2];
+			for (int col = 0; col < names.length; col++)
+			{
+				types[col] = storage.getColType(col);
+				long start = position(file, out);
+				writeColumn(out, storage, col, types[col], order);
+				blocks[col * 2] = start;
+				blocks[col * 2 + 1] = position(file, out) - start;
+				if (indexes != null && indexes[col] != null)
+				{
+					start = position(file, out);
+					writePostings(out, collectPostings(indexes[col]::forEach, positions));
+					indexBlocks[col * 2] = start;
+					indexBlocks[col * 2 + 1] = position(file, out) - start;
+				}
+			}
+			int compositeCount = (compositeIndexes != null) ? compositeIndexes.size() : 0;
+			long[] compositeBlocks = new long[compositeCount * 2];
+			for (int i = 0; i < compositeCount; i++)
+			{
+				long start = position(file, out);
+				writePostings(out, collectPostings(compositeIndexes.get(i)::forEach, positions));
+				compositeBlocks[i * 2] = start;
+				compositeBlocks[i * 2 + 1] = position(file, out) - start;
+			}
+
+			long directory = position(file, out);
+			out.writeInt(rowCount);
+			out.writeInt(names.length);
+			for (int col = 0; col < names.length; col++)
+			{
+				writeString(out, names[col]);
+				writeString(out, types[col].name());
+				out.writeLong(blocks[col * 2]);
+				out.writeLong(blocks[col * 2 + 1]);
+				boolean indexed = (indexes != null && indexes[col] != null);
+				writeString(out, indexed ? indexes[col].getType().name() : "");
+				out.writeLong(indexBlocks[col * 2]);
+				out.writeLong(indexBlocks[col * 2 + 1]);
+			}
+			out.writeInt(compositeCount);
+			for (int i = 0; i < compositeCount; i++)
+			{
+				int[] cols = compositeIndexes.get(i).getColIndexes();
+				out.writeInt(cols.length);
+				for (int col : cols)
+				{
+					out.writeInt(col);
+				}
+				out.writeLong(compositeBlocks[i * 2]);
+				out.writeLong(compositeBlocks[i * 2 + 1]);
+			}
+			out.writeLong(directory);
+			out.writeInt(MAGIC);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public static Snapshot read(Path path) throws IOException
+	{
+		// column blocks are only mapped here, their pages are read when a column is first used
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size < 8 + FOOTER_SIZE)
+				throw new IOException("Not a snapshot file: " + path);
+			ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, 8);
+			ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, size - FOOTER_SIZE, FOOTER_SIZE);
+			long directory = footer.getLong();
+			if (head.getInt() != MAGIC || footer.getInt() != MAGIC)
+				throw new IOException("Not a snapshot file: " + path);
+			int version = head.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported snapshot version " + version + ": " + path);
+			if (directory < 8 || directory > size - FOOTER_SIZE)
+				throw new IOException("Corrupt snapshot directory: " + path);
+
+			try
+			{
+				ByteBuffer dir = channel.map(FileChannel.MapMode.READ_ONLY, directory, size - FOOTER_SIZE - directory);
+				int rowCount = dir.getInt();
+				int colCount = dir.getInt();
+				String[] names = new String[colCount];
+				ColumnType[] types = new ColumnType[colCount];
+				ByteBuffer[] blocks = new ByteBuffer[colCount];
+				Index[] indexes = new Index[colCount];
+				for (int col = 0; col < colCount; col++)
+				{
+					names[col] = readString(dir);
+					types[col] = ColumnType.valueOf(readString(dir));
+					blocks[col] = map(channel, dir.getLong(), dir.getLong(), size);
+					String indexType = readString(dir);
+					long indexStart = dir.getLong();
+					long indexLength = dir.getLong();
+					if (!indexType.isEmpty())
+					{
+						Index index = Index.create(IndexType.valueOf(indexType), col, rowCount);
+						readPostings(map(channel, indexStart, indexLength, size), (row, key) -> index.add(row, key));
+						indexes[col] = index;
+					}
+				}
+				int compositeCount = dir.getInt();
+				List<CompositeIndex> compositeIndexes = new ArrayList<CompositeIndex>(compositeCount);
+				for (int i = 0; i < compositeCount; i++)
+				{
+					int[] cols = new int[dir.getInt()];
+					for (int c = 0; c < cols.length; c++)
+					{
+						cols[c] = dir.getInt();
+					}
+					CompositeIndex composite = new CompositeIndex(cols, rowCount);
+					readPostings(map(channel, dir.getLong(), dir.getLong(), size), (row, key) -> composite.add(row, key));
+					compositeIndexes.add(composite);
+				}
+				return new Snapshot(names, new SnapshotStorage(types, blocks, rowCount), indexes, compositeIndexes);
+			}
+			catch (BufferUnderflowException | IllegalArgumentException e)
+			{
+				throw new IOException("Corrupt snapshot directory: " + path, e);
+			}
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long start, long length, long size) throws IOException
+	{
+		if (start < 0 || length < 0 || start + length > size)
+			throw new IOException("Snapshot block out of range");
+		return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+	}
+
+	private static long position(FileOutputStream file, DataOutputStream out) throws IOException
+	{
+		out.flush();
+		return file.getChannel().position();
+	}
+
+	// column blocks
+
+	private static void writeColumn(DataOutputStream out, Storage storage, int col, ColumnType type, IntList order) throws IOException
+	{
+		// text columns are written through the storage, typed ones from their column
+		int rowCount = order.size();
+		Column column = Storage.isText(type) ? null : storage.getColumn(col);
+		switch (type)
+		{
+			case INT:
+			{
+				writeBits(out, nulls(column, order));
+				for (int i = 0; i < rowCount; i++)
+				{
+					out.writeInt(column.getInt(order.get(i), 0));
+				}
+				break;
+			}
+			case LONG:
+			{
+				writeBits(out, nulls(column, order));
+				for (int i = 0; i < rowCount; i++)
+				{
+					out.writeLong(column.getLong(order.get(i), 0L));
+				}
+				break;
+			}
+			case DOUBLE:
+			{
+				Column.DoubleColumn doubles = (Column.DoubleColumn)column;
+				BitSet integralText = new BitSet(rowCount);
+				for (int i = 0; i < rowCount; i++)
+				{
+					if (doubles.isIntegralText(order.get(i)))
+						integralText.set(i);
+				}
+				writeBits(out, nulls(column, order));
+				writeBits(out, integralText);
+				for (int i = 0; i < rowCount; i++)
+				{
+					out.writeDouble(column.getDouble(order.get(i), 0.0));
+				}
+				break;
+			}
+			case BOOLEAN:
+			{
+				String[] spelling = ((Column.BooleanColumn)column).getSpelling();
+				BitSet values = new BitSet(rowCount);
+				for (int i = 0; i < rowCount; i++)
+				{
+					if (spelling != null && spelling[0].equals(column.get(order.get(i))))
+						values.set(i);
+				}
+				out.writeBoolean(spelling != null);
+				if (spelling != null)
+				{
+					writeString(out, spelling[0]);
+					writeString(out, spelling[1]);
+				}
+				writeBits(out, nulls(column, order));
+				writeBits(out, values);
+				break;
+			}
+			default:
+				writeStrings(out, storage, col, order);
+				break;
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, Storage storage, int col, IntList order) throws IOException
+	{
+		// repeated values are stored once and referenced by code, unless the column is mostly distinct
+		int rowCount = order.size();
+		Map<String,Integer> codes = new HashMap<String,Integer>();
+		List<String> dictionary = new ArrayList<String>();
+		int[] rowCodes = new int[rowCount];
+		for (int i = 0; i < rowCount && rowCodes != null; i++)
+		{
+			String value = storage.getValue(order.get(i), col);
+			Integer code = codes.get(value);
+			if (code == null)
+			{
+				if (dictionary.size() >= rowCount / 2)
+				{
+					rowCodes = null;
+					break;
+				}
+				code = dictionary.size();
+				codes.put(value, code);
+				dictionary.add(value);
+			}
+			rowCodes[i] = code;
+		}
+
+		if (rowCodes == null)
+		{
+			out.writeByte(PLAIN);
+			for (int i = 0; i < rowCount; i++)
+			{
+				writeString(out, storage.getValue(order.get(i), col));
+			}
+			return;
+		}
+		out.writeByte(DICTIONARY);
+		out.writeInt(dictionary.size());
+		for (String value : dictionary)
+		{
+			writeString(out, value);
+		}
+		int width = codeWidth(dictionary.size());
+		for (int code : rowCodes)
+		{
+			if (width == 1)
+				out.writeByte(code);
+			else if (width == 2)
+				out.writeShort(code);
+			else
+				out.writeInt(code);
+		}
+	}
+
+	static Column readColumn(ColumnType type, ByteBuffer block, int rowCount)
+	{
+		switch (type)
+		{
+			case INT:
+			{
+				BitSet nulls = readBits(block);
+				int[] values = new int[rowCount];
+				block.asIntBuffer().get(values);
+				return new Column.IntColumn(values, nulls, rowCount);
+			}
+			case LONG:
+			{
+				BitSet nulls = readBits(block);
+				long[] values = new long[rowCount];
+				block.asLongBuffer().get(values);
+				return new Column.LongColumn(values, nulls, rowCount);
+			}
+			case DOUBLE:
+			{
+				BitSet nulls = readBits(block);
+				BitSet integralText = readBits(block);
+				double[] values = new double[rowCount];
+				block.asDoubleBuffer().get(values);
+				return new Column.DoubleColumn(values, nulls, integralText, rowCount);
+			}
+			case BOOLEAN:
+			{
+				String[] spelling = (block.get() != 0) ? new String[] { readString(block), readString(block) } : null;
+				BitSet nulls = readBits(block);
+				BitSet values = readBits(block);
+				return new Column.BooleanColumn(values, nulls, spelling, rowCount);
+			}
+			default:
+				return readStrings(block, rowCount, type == ColumnType.DICTIONARY);
+		}
+	}
+
+	private static Column readStrings(ByteBuffer block, int rowCount, boolean dictionaryColumn)
+	{
+		if (block.get() == PLAIN)
+		{
+			Column column = Column.create(dictionaryColumn ? ColumnType.DICTIONARY : ColumnType.STRING, rowCount);
+			for (int i = 0; i < rowCount; i++)
+			{
+				column.add(readString(block));
+			}
+			return column;
+		}
+		String[] dictionary = new String[block.getInt()];
+		for (int i = 0; i < dictionary.length; i++)
+		{
+			dictionary[i] = readString(block);
+		}
+		int width = codeWidth(dictionary.length);
+		int[] codes = new int[rowCount];
+		for (int i = 0; i < rowCount; i++)
+		{
+			codes[i] = (width == 1) ? (block.get() & 0xFF) : (width == 2) ? (block.getShort() & 0xFFFF) : block.getInt();
+		}
+		if (dictionaryColumn)
+			return new Column.DictionaryColumn(dictionary, codes, rowCount);
+		// every row shares the dictionary's string instance
+		String[] values = new String[rowCount];
+		for (int i = 0; i < rowCount; i++)
+		{
+			values[i] = dictionary[codes[i]];
+		}
+		return new Column.StringColumn(values, rowCount);
+	}
+
+	private static int codeWidth(int dictionarySize)
+	{
+		if (dictionarySize <= 1 << 8)
+			return 1;
+		return (dictionarySize <= 1 << 16) ? 2 : 4;
+	}
+
+	private static BitSet nulls(Column column, IntList order)
+	{
+		BitSet nulls = new BitSet(order.size());
+		for (int i = 0; i < order.size(); i++)
+		{
+			if (column.isNull(order.get(i)))
+				nulls.set(i);
+		}
+		return nulls;
+	}
+
+	private static void writeBits(DataOutputStream out, BitSet bits) throws IOException
+	{
+		byte[] bytes = bits.toByteArray();
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static BitSet readBits(ByteBuffer block)
+	{
+		int length = block.getInt();
+		ByteBuffer bytes = block.slice();
+		bytes.limit(length);
+		block.position(block.position() + length);
+		return BitSet.valueOf(bytes);
+	}
+
+	// index blocks
+
+	private interface PostingVisitor
+	{
+		void accept(int row, String key);
+	}
+
+	private static final class Posting
+	{
+		private final String m_key;
+		private final int[] m_rows;
+
+		public Posting(String key, int[] rows)
+		{
+			m_key = key;
+			m_rows = rows;
+		}
+	}
+
+	private static List<Posting> collectPostings(Consumer<BiConsumer<String,IntList>> index, int[] positions)
+	{
+		List<Posting> postings = new ArrayList<Posting>();
+		index.accept((key, rows) ->
+		{
+			int[] mapped = remap(rows, positions);
+			if (mapped.length > 0)
+				postings.add(new Posting(key, mapped));
+		});
+		return postings;
+	}
+
+	private static int[] remap(IntList rows, int[] positions)
+	{
+		// ascending positions, the order a rebuild over the loaded line order would produce
+		IntList mapped = new IntList(rows.size());
+		for (int i = 0; i < rows.size(); i++)
+		{
+			int row = rows.get(i);
+			if (row < positions.length && positions[row] >= 0)
+				mapped.add(positions[row]);
+		}
+		int[] sorted = mapped.toArray();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private static void writePostings(DataOutputStream out, List<Posting> postings) throws IOException
+	{
+		out.writeInt(postings.size());
+		for (Posting posting : postings)
+		{
+			writeString(out, posting.m_key);
+			out.writeInt(posting.m_rows.length);
+			for (int row : posting.m_rows)
+			{
+				out.writeInt(row);
+			}
+		}
+	}
+
+	private static void readPostings(ByteBuffer block, PostingVisitor visitor)
+	{
+		int keyCount = block.getInt();
+		for (int k = 0; k < keyCount; k++)
+		{
+			String key = readString(block);
+			int count = block.getInt();
+			for (int i = 0; i < count; i++)
+			{
+				visitor.accept(block.getInt(), key);
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,148 @@
+package com.trumedia.project;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.trumedia.project.CSVData.ColumnType;
+
+class SnapshotStorage extends Storage
+{
+	// columns stay as mapped blocks until first used, then behave like ColumnarStorage
+	private final ColumnType[] m_types;
+	private final ByteBuffer[] m_blocks;
+	private final AtomicReferenceArray<Column> m_columns;
+	private int m_rowCount;
+
+	public SnapshotStorage(ColumnType[] types, ByteBuffer[] blocks, int rowCount)
+	{
+		m_types = types;
+		m_blocks = blocks;
+		m_columns = new AtomicReferenceArray<Column>(types.length);
+		m_rowCount = rowCount;
+	}
+
+	@Override
+	public int getRowCount()
+	{
+		return m_rowCount;
+	}
+
+	@Override
+	public int getColCount()
+	{
+		return m_types.length;
+	}
+
+	@Override
+	public ColumnType getColType(int col)
+	{
+		Column column = m_columns.get(col);
+		return (column != null) ? column.getType() : m_types[col];
+	}
+
+	@Override
+	public int addRow(String[] values)
+	{
+		for (int i = 0; i < m_types.length; i++)
+		{
+			String value = (i < values.length && values[i] != null) ? values[i] : "";
+			if (!getColumn(i).add(value))
+			{
+				demote(i);
+				getColumn(i).add(value);
+			}
+		}
+		return m_rowCount++;
+	}
+
+	@Override
+	public String getValue(int row, int col)
+	{
+		return getColumn(col).get(row);
+	}
+
+	@Override
+	public void setValue(int row, int col, String value)
+	{
+		if (!getColumn(col).set(row, value))
+		{
+			demote(col);
+			getColumn(col).set(row, value);
+		}
+	}
+
+	@Override
+	public boolean isEmpty(int row, int col)
+	{
+		Column column = getColumn(col);
+		return isText(column.getType()) ? isBlank(column.get(row)) : column.isNull(row);
+	}
+
+	@Override
+	public int getInt(int row, int col, int defValue)
+	{
+		return getColumn(col).getInt(row, defValue);
+	}
+
+	@Override
+	public long getLong(int row, int col, long defValue)
+	{
+		return getColumn(col).getLong(row, defValue);
+	}
+
+	@Override
+	public float getFloat(int row, int col, float defValue)
+	{
+		return getColumn(col).getFloat(row, defValue);
+	}
+
+	@Override
+	public double getDouble(int row, int col, double defValue)
+	{
+		return getColumn(col).getDouble(row, defValue);
+	}
+
+	@Override
+	Column getColumn(int col)
+	{
+		Column column = m_columns.get(col);
+		if (column != null)
+			return column;
+		// readers may race to decode the same block, only the first result is kept
+		column = Snapshot.readColumn(m_types[col], m_blocks[col].duplicate(), m_rowCount);
+		if (!m_columns.compareAndSet(col, null, column))
+			column = m_columns.get(col);
+		return column;
+	}
+
+	@Override
+	Column.DictionaryColumn getDictionary(int col)
+	{
+		if (getColType(col) != ColumnType.DICTIONARY)
+			return null;
+		Column column = getColumn(col);
+		return (column instanceof Column.DictionaryColumn) ? (Column.DictionaryColumn)column : null;
+	}
+
+	@Override
+	int getCode(int row, int col)
+	{
+		return ((Column.DictionaryColumn)getColumn(col)).getCode(row);
+	}
+
+	@Override
+	public Storage createEmpty(int capacity)
+	{
+		ColumnType[] types = new ColumnType[m_types.length];
+		for (int i = 0; i < types.length; i++)
+		{
+			types[i] = getColType(i);
+		}
+		return new ColumnarStorage(types, capacity);
+	}
+
+	private void demote(int col)
+	{
+		m_columns.set(col, getColumn(col).toStringColumn());
+	}
+}
@@ -0,0 +1,86 @@
+package com.trumedia.project;
+
+import java.util.BitSet;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+import com.trumedia.project.CSVData.IndexType;
+
+class SortedIndex extends Index
+{
+	private final NavigableMap<String,IntList> m_values;
+
+	public SortedIndex(int colIndex)
+	{
+		super(colIndex);
+		m_values = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	}
+
+	@Override
+	public IndexType getType()
+	{
+		return IndexType.SORTED;
+	}
+
+	@Override
+	public void add(int row, String value)
+	{
+		IntList matches = m_values.get(value);
+		if (matches == null)
+		{
+			matches = new IntList(4);
+			m_values.put(value, matches);
+		}
+		matches.add(row);
+	}
+
+	@Override
+	public void remove(int row, String value)
+	{
+		IntList matches = m_values.get(value);
+		if (matches != null)
+		{
+			matches.removeValue(row);
+			if (matches.isEmpty())
+				m_values.remove(value);
+		}
+	}
+
+	@Override
+	public IntList find(String value)
+	{
+		IntList matches = m_values.get(value);
+		return (matches != null) ? matches : new IntList(0);
+	}
+
+	@Override
+	public void forEach(BiConsumer<String,IntList> action)
+	{
+		m_values.forEach(action);
+	}
+
+	@Override
+	public IntList findFirst(BitSet deleted)
+	{
+		return firstLive(m_values, deleted);
+	}
+
+	@Override
+	public IntList findLast(BitSet deleted)
+	{
+		return firstLive(m_values.descendingMap(), deleted);
+	}
+
+	private static IntList firstLive(NavigableMap<String,IntList> values, BitSet deleted)
+	{
+		// skip over keys whose rows are all tombstoned
+		for (IntList rows : values.values())
+		{
+			IntList live = exclude(rows, deleted);
+			if (!live.isEmpty())
+				return live;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,408 @@
+package com.trumedia.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class StatsApiFetcher implements AutoCloseable
+{
+	public interface FeedParser<T>
+	{
+		T parse(int gamePk, InputStream body) throws IOException;
+	}
+
+	private interface FeedTask<T>
+	{
+		T fetch(int gamePk, String path) throws IOException, InterruptedException;
+	}
+
+	public static final URI DEFAULT_BASE_URI = URI.create("https://statsapi.mlb.com/");
+	public static final int DEFAULT_MAX_CONCURRENCY = 16;
+	public static final double DEFAULT_REQUESTS_PER_SECOND = 20;
+
+	private static final HttpResponse.ResponseInfo CACHED_RESPONSE = new HttpResponse.ResponseInfo()
+	{
+		@Override
+		public int statusCode()
+		{
+			return 200;
+		}
+
+		@Override
+		public HttpHeaders headers()
+		{
+			return HttpHeaders.of(Map.of(), (name, value) -> true);
+		}
+
+		@Override
+		public HttpClient.Version version()
+		{
+			return HttpClient.Version.HTTP_1_1;
+		}
+	};
+
+	private final URI m_baseUri;
+	private final HttpClient m_client;
+	private final Semaphore m_permits;
+	private final TokenBucket m_rateLimit;
+	private final ExecutorService m_executor;
+	private Duration m_timeout = Duration.ofSeconds(30);
+	private volatile HttpCache m_cache;
+
+	public StatsApiFetcher()
+	{
+		this(DEFAULT_BASE_URI, DEFAULT_MAX_CONCURRENCY, DEFAULT_REQUESTS_PER_SECOND);
+	}
+
+	public StatsApiFetcher(URI baseUri, int maxConcurrency, double requestsPerSecond)
+	{
+		this(baseUri, HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build(), maxConcurrency, requestsPerSecond);
+	}
+
+	public StatsApiFetcher(URI baseUri, HttpClient client, int maxConcurrency, double requestsPerSecond)
+	{
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("Concurrency must be at least 1: " + maxConcurrency);
+		m_baseUri = baseUri.toString().endsWith("/") ? baseUri : URI.create(baseUri + "/");
+		m_client = client;
+		m_permits = new Semaphore(maxConcurrency);
+		m_rateLimit = new TokenBucket(requestsPerSecond, maxConcurrency);
+		m_executor = newExecutor(maxConcurrency);
+	}
+
+	public void setTimeout(Duration timeout)
+	{
+		m_timeout = timeout;
+	}
+
+	public URI getBaseUri()
+	{
+		return m_baseUri;
+	}
+
+	public void setCache(HttpCache cache)
+	{
+		m_cache = cache;
+	}
+
+	public HttpCache getCache()
+	{
+		return m_cache;
+	}
+
+	public <T> T get(String path, BodyHandler<T> bodyHandler) throws IOException, InterruptedException
+	{
+		URI uri = m_baseUri.resolve(path);
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(m_timeout).header("Accept-Encoding", "identity");
+		HttpCache cache = m_cache;
+		if (cache == null)
+		{
+			HttpResponse<T> response = send(request.build(), bodyHandler);
+			if (response.statusCode() != 200)
+			{
+				closeBody(response.body());
+				throw new IOException("GET " + uri + " returned HTTP " + response.statusCode());
+			}
+			return response.body();
+		}
+
+		HttpCache.Entry entry = cache.lookup(uri);
+		if (entry != null && cache.isFresh(entry))
+		{
+			InputStream cached = cache.openBody(entry);
+			if (cached != null)
+				return replay(cached, bodyHandler);
+			entry = null;
+		}
+		if (entry != null)
+		{
+			if (entry.getETag() != null)
+				request.header("If-None-Match", entry.getETag());
+			if (entry.getLastModified() != null)
+				request.header("If-Modified-Since", entry.getLastModified());
+		}
+		// a 200 streams to the caller and into the cache at once, anything else leaves the body unread
+		HttpResponse<T> response = send(request.build(), info ->
+		{
+			if (info.statusCode() != 200)
+				return HttpResponse.BodySubscribers.replacing(null);
+			String etag = info.headers().firstValue("ETag").orElse(null);
+			String lastModified = info.headers().firstValue("Last-Modified").orElse(null);
+			try
+			{
+				return new TeeSubscriber<T>(bodyHandler.apply(info), cache.newWriter(uri, etag, lastModified));
+			}
+			catch (IOException e)
+			{
+				// a cache that cannot be written to must not fail the request
+				return bodyHandler.apply(info);
+			}
+		});
+		if (response.statusCode() == 304 && entry != null)
+		{
+			cache.revalidated(entry, response.headers().firstValue("ETag").orElse(null), response.headers().firstValue("Last-Modified").orElse(null));
+			InputStream cached = cache.openBody(entry);
+			if (cached != null)
+				return replay(cached, bodyHandler);
+			// evicted between the lookup and the 304, fetch it again without validators
+			return get(path, bodyHandler);
+		}
+		if (response.statusCode() != 200)
+			throw new IOException("GET " + uri + " returned HTTP " + response.statusCode());
+		return response.body();
+	}
+
+	public JSONObject getJSON(String path) throws IOException, InterruptedException
+	{
+		return new JSONObject(get(path, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)));
+	}
+
+	public JSONObject fetchSchedule(LocalDate date) throws IOException, InterruptedException
+	{
+		return getJSON(schedulePath(date, date));
+	}
+
+	public JSONObject fetchSchedule(LocalDate startDate, LocalDate endDate) throws IOException, InterruptedException
+	{
+		return getJSON(schedulePath(startDate, endDate));
+	}
+
+	public static List<Integer> getGamePks(JSONObject schedule)
+	{
+		// a doubleheader or suspended game can list the same game under two dates
+		Set<Integer> gamePks = new LinkedHashSet<Integer>();
+		JSONArray dates = schedule.optJSONArray("dates");
+		if (dates == null)
+			return new ArrayList<Integer>();
+		for (int i = 0; i < dates.length(); i++)
+		{
+			JSONArray games = dates.getJSONObject(i).optJSONArray("games");
+			if (games == null)
+				continue;
+			for (int j = 0; j < games.length(); j++)
+			{
+				gamePks.add(games.getJSONObject(j).getInt("gamePk"));
+			}
+		}
+		return new ArrayList<Integer>(gamePks);
+	}
+
+	public <T> Map<Integer, T> fetchGameFeeds(Collection<Integer> gamePks, BodyHandler<T> bodyHandler) throws IOException, InterruptedException
+	{
+		return fetchEachGame(gamePks, (gamePk, path) -> get(path, bodyHandler));
+	}
+
+	public <T> Map<Integer, T> fetchGameFeeds(Collection<Integer> gamePks, FeedParser<T> parser) throws IOException, InterruptedException
+	{
+		// each feed is parsed on its fetch thread as the body streams in, rather than buffered whole
+		return fetchEachGame(gamePks, (gamePk, path) ->
+		{
+			try (InputStream body = get(path, HttpResponse.BodyHandlers.ofInputStream()))
+			{
+				return parser.parse(gamePk, body);
+			}
+		});
+	}
+
+	public GameFeed fetchGames(Collection<Integer> gamePks) throws IOException, InterruptedException
+	{
+		GameFeed games = new GameFeed();
+		for (GameFeed feed : fetchGameFeeds(gamePks, (gamePk, body) -> GameFeed.parse(body)).values())
+		{
+			games.append(feed);
+		}
+		return games;
+	}
+
+	public Map<Integer, JSONObject> fetchGameFeeds(Collection<Integer> gamePks) throws IOException, InterruptedException
+	{
+		Map<Integer, String> bodies = fetchGameFeeds(gamePks, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+		Map<Integer, JSONObject> feeds = new LinkedHashMap<Integer, JSONObject>();
+		for (Map.Entry<Integer, String> entry : bodies.entrySet())
+		{
+			feeds.put(entry.getKey(), new JSONObject(entry.getValue()));
+		}
+		return feeds;
+	}
+
+	public <T> Map<Integer, T> fetchSeason(LocalDate startDate, LocalDate endDate, BodyHandler<T> bodyHandler) throws IOException, InterruptedException
+	{
+		// one schedule request per date fans out first, then every game on every date
+		List<Callable<JSONObject>> tasks = new ArrayList<Callable<JSONObject>>();
+		for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1))
+		{
+			LocalDate scheduleDate = date;
+			tasks.add(() -> fetchSchedule(scheduleDate));
+		}
+		Set<Integer> gamePks = new LinkedHashSet<Integer>();
+		for (JSONObject schedule : invokeAll(tasks))
+		{
+			gamePks.addAll(getGamePks(schedule));
+		}
+		return fetchGameFeeds(gamePks, bodyHandler);
+	}
+
+	public static String schedulePath(LocalDate startDate, LocalDate endDate)
+	{
+		if (startDate.equals(endDate))
+			return "api/v1/schedule?sportId=1&date=" + startDate;
+		return "api/v1/schedule?sportId=1&startDate=" + startDate + "&endDate=" + endDate;
+	}
+
+	public static String gameFeedPath(int gamePk)
+	{
+		return "api/v1.1/game/" + gamePk + "/feed/live";
+	}
+
+	private <T> Map<Integer, T> fetchEachGame(Collection<Integer> gamePks, FeedTask<T> task) throws IOException, InterruptedException
+	{
+		List<Integer> keys = new ArrayList<Integer>(gamePks);
+		List<Callable<T>> tasks = new ArrayList<Callable<T>>(keys.size());
+		for (int gamePk : keys)
+		{
+			tasks.add(() -> task.fetch(gamePk, gameFeedPath(gamePk)));
+		}
+		List<T> results = invokeAll(tasks);
+		Map<Integer, T> feeds = new LinkedHashMap<Integer, T>();
+		for (int i = 0; i < keys.size(); i++)
+		{
+			feeds.put(keys.get(i), results.get(i));
+		}
+		return feeds;
+	}
+
+	private <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> bodyHandler) throws IOException, InterruptedException
+	{
+		// the permit bounds requests in flight, the bucket bounds how fast new ones start
+		m_permits.acquire();
+		try
+		{
+			m_rateLimit.acquire();
+			return m_client.send(request, bodyHandler);
+		}
+		finally
+		{
+			m_permits.release();
+		}
+	}
+
+	private static <T> T replay(InputStream body, BodyHandler<T> bodyHandler) throws IOException, InterruptedException
+	{
+		// hands a cached body to the caller's body handler as if it were arriving, read as the handler asks for it
+		BodySubscriber<T> subscriber = bodyHandler.apply(CACHED_RESPONSE);
+		subscriber.onSubscribe(new StreamSubscription(body, subscriber));
+		try
+		{
+			return subscriber.getBody().toCompletableFuture().get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException(e.getCause());
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		m_executor.shutdownNow();
+	}
+
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException, InterruptedException
+	{
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for (Callable<T> task : tasks)
+		{
+			futures.add(m_executor.submit(task));
+		}
+		List<T> results = new ArrayList<T>(futures.size());
+		try
+		{
+			for (Future<T> future : futures)
+			{
+				results.add(future.get());
+			}
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof UncheckedIOException)
+				throw ((UncheckedIOException)cause).getCause();
+			if (cause instanceof InterruptedException)
+				throw (InterruptedException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new IOException(cause);
+		}
+		finally
+		{
+			// on failure the remaining requests are abandoned rather than left running
+			for (Future<T> future : futures)
+			{
+				if (!future.isDone())
+					future.cancel(true);
+			}
+		}
+		return results;
+	}
+
+	private static void closeBody(Object body)
+	{
+		if (body instanceof AutoCloseable)
+		{
+			try
+			{
+				((AutoCloseable)body).close();
+			}
+			catch (Exception e)
+			{
+				// nothing more to do with a rejected response
+			}
+		}
+	}
+
+	private static ExecutorService newExecutor(int maxConcurrency)
+	{
+		// virtual threads when the runtime has them (JDK 21+), otherwise a fixed pool of daemon threads no larger than the requests allowed in flight
+		try
+		{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newFixedThreadPool(maxConcurrency, runnable ->
+			{
+				Thread thread = new Thread(runnable, "statsapi-fetch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
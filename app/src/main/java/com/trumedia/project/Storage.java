@@ -0,0 +1,257 @@
+package com.trumedia.project;
+
+import com.trumedia.project.CSVData.ColumnType;
+
+abstract class Storage
+{
+	private static final long NOT_PLAIN = Long.MAX_VALUE;
+	private static final long MANTISSA_MASK = (1L << 55) - 1;
+	private static final float[] FLOAT_POWERS_OF_TEN = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f };
+	private static final double[] DOUBLE_POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
+
+	public abstract int getRowCount();
+
+	public abstract int getColCount();
+
+	public abstract ColumnType getColType(int col);
+
+	public abstract int addRow(String[] values);
+
+	public abstract String getValue(int row, int col);
+
+	public abstract void setValue(int row, int col, String value);
+
+	public abstract Storage createEmpty(int capacity);
+
+	// the typed column behind a column index, or null when values are only kept as text
+	Column getColumn(int col)
+	{
+		return null;
+	}
+
+	// the dictionary of a dictionary-encoded column, or null
+	Column.DictionaryColumn getDictionary(int col)
+	{
+		return null;
+	}
+
+	// the dictionary code of a cell, for columns that have a dictionary
+	int getCode(int row, int col)
+	{
+		return -1;
+	}
+
+	static boolean isText(ColumnType type)
+	{
+		return type == ColumnType.STRING || type == ColumnType.DICTIONARY;
+	}
+
+	public boolean isEmpty(int row, int col)
+	{
+		return isBlank(getValue(row, col));
+	}
+
+	public int getInt(int row, int col, int defValue)
+	{
+		return parseInt(getValue(row, col), defValue);
+	}
+
+	public long getLong(int row, int col, long defValue)
+	{
+		return parseLong(getValue(row, col), defValue);
+	}
+
+	public float getFloat(int row, int col, float defValue)
+	{
+		return parseFloat(getValue(row, col), defValue);
+	}
+
+	public double getDouble(int row, int col, double defValue)
+	{
+		return parseDouble(getValue(row, col), defValue);
+	}
+
+	static boolean isBlank(String str)
+	{
+		return (str == null || str.length() == 0 || str.trim().length() == 0);
+	}
+
+	// parsers that match Integer.parseInt and friends on trimmed text but return the default instead of throwing
+
+	static int parseInt(String str, int defValue)
+	{
+		long val = parseLong(str, Long.MIN_VALUE);
+		if (val < Integer.MIN_VALUE || val > Integer.MAX_VALUE)
+			return defValue;
+		return (int)val;
+	}
+
+	static long parseLong(String str, long defValue)
+	{
+		if (str == null)
+			return defValue;
+		int start = trimStart(str);
+		int end = trimEnd(str, start);
+		if (start >= end)
+			return defValue;
+
+		boolean negative = false;
+		char first = str.charAt(start);
+		if (first == '-' || first == '+')
+		{
+			negative = (first == '-');
+			start++;
+			if (start >= end)
+				return defValue;
+		}
+		// accumulate negatively so Long.MIN_VALUE is representable
+		long val = 0;
+		for (int i = start; i < end; i++)
+		{
+			int digit = Character.digit(str.charAt(i), 10);
+			if (digit < 0)
+				return defValue;
+			if (val < Long.MIN_VALUE / 10)
+				return defValue;
+			val *= 10;
+			if (val < Long.MIN_VALUE + digit)
+				return defValue;
+			val -= digit;
+		}
+		if (!negative)
+		{
+			if (val == Long.MIN_VALUE)
+				return defValue;
+			return -val;
+		}
+		return val;
+	}
+
+	static float parseFloat(String str, float defValue)
+	{
+		if (str == null)
+			return defValue;
+		int start = trimStart(str);
+		int end = trimEnd(str, start);
+		if (start >= end)
+			return defValue;
+
+		// mantissa and power of ten both exact in float, so a single float division rounds correctly
+		long decimal = parsePlainDecimal(str, start, end, 7);
+		if (decimal != NOT_PLAIN)
+		{
+			float val = (float)(decimal >>> 8 & MANTISSA_MASK) / FLOAT_POWERS_OF_TEN[(int)(decimal & 0xFF)];
+			return (decimal < 0) ? -val : val;
+		}
+		if (!mayBeNumber(str, start, end))
+			return defValue;
+		try
+		{
+			return Float.parseFloat(str);
+		}
+		catch (NumberFormatException e)
+		{
+			return defValue;
+		}
+	}
+
+	static double parseDouble(String str, double defValue)
+	{
+		if (str == null)
+			return defValue;
+		int start = trimStart(str);
+		int end = trimEnd(str, start);
+		if (start >= end)
+			return defValue;
+
+		// mantissa below 2^53 and power of ten up to 1e15 are both exact, so a single division rounds correctly
+		long decimal = parsePlainDecimal(str, start, end, 15);
+		if (decimal != NOT_PLAIN)
+		{
+			double val = (double)(decimal >>> 8 & MANTISSA_MASK) / DOUBLE_POWERS_OF_TEN[(int)(decimal & 0xFF)];
+			return (decimal < 0) ? -val : val;
+		}
+		if (!mayBeNumber(str, start, end))
+			return defValue;
+		try
+		{
+			return Double.parseDouble(str);
+		}
+		catch (NumberFormatException e)
+		{
+			return defValue;
+		}
+	}
+
+	private static long parsePlainDecimal(String str, int start, int end, int maxDigits)
+	{
+		// packs sign, mantissa and fraction digit count into a long, or NOT_PLAIN for anything but [sign]digits[.digits]
+		int i = start;
+		boolean negative = false;
+		char first = str.charAt(i);
+		if (first == '-' || first == '+')
+		{
+			negative = (first == '-');
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean seenPoint = false;
+		for (; i < end; i++)
+		{
+			char c = str.charAt(i);
+			if (c >= '0' && c <= '9')
+			{
+				if (++digits > maxDigits)
+					return NOT_PLAIN;
+				mantissa = mantissa * 10 + (c - '0');
+				if (seenPoint)
+					fractionDigits++;
+			}
+			else if (c == '.' && !seenPoint)
+			{
+				seenPoint = true;
+			}
+			else
+			{
+				return NOT_PLAIN;
+			}
+		}
+		if (digits == 0)
+			return NOT_PLAIN;
+		long packed = (mantissa << 8) | fractionDigits;
+		return negative ? packed | Long.MIN_VALUE : packed;
+	}
+
+	private static boolean mayBeNumber(String str, int start, int end)
+	{
+		// Double.parseDouble needs a digit unless the text spells NaN or Infinity
+		for (int i = start; i < end; i++)
+		{
+			char c = str.charAt(i);
+			if ((c >= '0' && c <= '9') || c == 'N' || c == 'I')
+				return true;
+		}
+		return false;
+	}
+
+	private static int trimStart(String str)
+	{
+		int start = 0;
+		int len = str.length();
+		while (start < len && str.charAt(start) <= ' ')
+			start++;
+		return start;
+	}
+
+	private static int trimEnd(String str, int start)
+	{
+		int end = str.length();
+		while (end > start && str.charAt(end - 1) <= ' ')
+			end--;
+		return end;
+	}
+}
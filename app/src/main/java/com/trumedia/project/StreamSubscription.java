@@ -0,0 +1,99 @@
+package com.trumedia.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+class StreamSubscription implements Flow.Subscription
+{
+	// feeds a stream to a body subscriber one chunk per requested item, read on whichever thread asks for more
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	private final InputStream m_in;
+	private final BodySubscriber<?> m_subscriber;
+	private long m_demand;
+	private boolean m_emitting;
+	private boolean m_done;
+
+	public StreamSubscription(InputStream in, BodySubscriber<?> subscriber)
+	{
+		m_in = in;
+		m_subscriber = subscriber;
+	}
+
+	@Override
+	public void request(long n)
+	{
+		if (n <= 0)
+		{
+			if (finish())
+				m_subscriber.onError(new IllegalArgumentException("Demand must be positive: " + n));
+			return;
+		}
+		synchronized (this)
+		{
+			if (m_done)
+				return;
+			m_demand = (m_demand + n < 0) ? Long.MAX_VALUE : m_demand + n;
+			// a subscriber asking for more from inside onNext just raises the demand the outer loop is serving
+			if (m_emitting)
+				return;
+			m_emitting = true;
+		}
+		try
+		{
+			while (true)
+			{
+				synchronized (this)
+				{
+					if (m_done || m_demand == 0)
+					{
+						m_emitting = false;
+						return;
+					}
+					m_demand--;
+				}
+				byte[] chunk = m_in.readNBytes(CHUNK_SIZE);
+				if (chunk.length == 0)
+				{
+					if (finish())
+						m_subscriber.onComplete();
+					return;
+				}
+				m_subscriber.onNext(List.of(ByteBuffer.wrap(chunk)));
+			}
+		}
+		catch (IOException e)
+		{
+			if (finish())
+				m_subscriber.onError(e);
+		}
+	}
+
+	@Override
+	public void cancel()
+	{
+		finish();
+	}
+
+	private synchronized boolean finish()
+	{
+		// true for the one caller that actually ended the subscription
+		if (m_done)
+			return false;
+		m_done = true;
+		m_emitting = false;
+		try
+		{
+			m_in.close();
+		}
+		catch (IOException e)
+		{
+			// nothing left to read from it anyway
+		}
+		return true;
+	}
+}
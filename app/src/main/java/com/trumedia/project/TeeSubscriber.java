@@ -0,0 +1,89 @@
+package com.trumedia.project;
+
+import java.io.IOException;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+class TeeSubscriber<T> implements BodySubscriber<T>
+{
+	// hands the body to the caller's subscriber as it arrives and copies it into the cache on the way,
+	// the entry is committed at end of body and dropped if the body fails or the caller stops reading early
+	private final BodySubscriber<T> m_downstream;
+	private final HttpCache.Writer m_writer;
+
+	public TeeSubscriber(BodySubscriber<T> downstream, HttpCache.Writer writer)
+	{
+		m_downstream = downstream;
+		m_writer = writer;
+	}
+
+	@Override
+	public CompletionStage<T> getBody()
+	{
+		return m_downstream.getBody();
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription)
+	{
+		m_downstream.onSubscribe(new Flow.Subscription()
+		{
+			@Override
+			public void request(long n)
+			{
+				subscription.request(n);
+			}
+
+			@Override
+			public void cancel()
+			{
+				m_writer.abort();
+				subscription.cancel();
+			}
+		});
+	}
+
+	@Override
+	public void onNext(List<ByteBuffer> items)
+	{
+		// copied before the caller sees the buffers, since reading them moves their position
+		try
+		{
+			for (ByteBuffer item : items)
+			{
+				m_writer.write(item);
+			}
+		}
+		catch (IOException e)
+		{
+			// a cache that cannot be written to must not fail the response
+			m_writer.abort();
+		}
+		m_downstream.onNext(items);
+	}
+
+	@Override
+	public void onError(Throwable throwable)
+	{
+		m_writer.abort();
+		m_downstream.onError(throwable);
+	}
+
+	@Override
+	public void onComplete()
+	{
+		try
+		{
+			m_writer.commit();
+		}
+		catch (IOException | IllegalStateException e)
+		{
+			// already dropped, or the commit failed; either way the caller still gets the body
+			m_writer.abort();
+		}
+		m_downstream.onComplete();
+	}
+}
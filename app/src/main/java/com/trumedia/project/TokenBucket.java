@@ -0,0 +1,42 @@
+package com.trumedia.project;
+
+import java.util.concurrent.TimeUnit;
+
+class TokenBucket
+{
+	private final double m_capacity;
+	private final double m_tokensPerNano;
+	private double m_tokens;
+	private long m_lastRefill;
+
+	public TokenBucket(double tokensPerSecond, int burst)
+	{
+		if (tokensPerSecond <= 0)
+			throw new IllegalArgumentException("Rate must be positive: " + tokensPerSecond);
+		m_capacity = Math.max(burst, 1);
+		m_tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+		m_tokens = m_capacity;
+		m_lastRefill = System.nanoTime();
+	}
+
+	public void acquire() throws InterruptedException
+	{
+		long waitNanos;
+		synchronized (this)
+		{
+			refill();
+			// take the token now, possibly going negative, so concurrent callers queue up behind each other
+			m_tokens -= 1;
+			waitNanos = (m_tokens >= 0) ? 0 : (long)Math.ceil(-m_tokens / m_tokensPerNano);
+		}
+		if (waitNanos > 0)
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+	}
+
+	private void refill()
+	{
+		long now = System.nanoTime();
+		m_tokens = Math.min(m_capacity, m_tokens + (now - m_lastRefill) * m_tokensPerNano);
+		m_lastRefill = now;
+	}
+}
@@ -0,0 +1,77 @@
+package com.trumedia.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.trumedia.project.CSVData.IndexType;
+import com.trumedia.project.CSVData.Line;
+import com.trumedia.project.CSVData.SortCriteria;
+import com.trumedia.project.CSVData.SortType;
+
+public class CSVDataTest
+{
+	private static final String[] HEADER = { "team", "hand", "pitch_speed" };
+
+	@Test
+	public void nullCriterionMatchesNothingWithCompositeIndex()
+	{
+		CSVData csv = new CSVData(new String[] { "a", "b", "c" });
+		csv.addLine(new String[] { "1", "2", "3" });
+		csv.addLine(new String[] { "", "2", "3" });
+		Pair<String,String>[] criteria = criteria(new Pair<String,String>("a", null), new Pair<String,String>("b", "2"), new Pair<String,String>("c", "3"));
+		assertEquals(0, csv.findMatchingLines(criteria).size());
+		csv.addCompositeIndex("b", "c");
+		assertEquals(0, csv.findMatchingLines(criteria).size());
+		assertEquals(0, csv.findMatchingLines(criteria, 0, 1).size());
+	}
+
+	@Test
+	public void bitmapMatchesKeepSortedLineOrder()
+	{
+		// the same sorted rows with and without bitmap indexes must page identically
+		Random random = new Random(20240614L);
+		CSVData plain = new CSVData(HEADER);
+		CSVData indexed = new CSVData(HEADER);
+		for (int i = 0; i < 20000; i++)
+		{
+			String[] row = { "T" + random.nextInt(4), (random.nextInt(3) == 0) ? "L" : "R", Integer.toString(random.nextInt(100000)) };
+			plain.addLine(row);
+			indexed.addLine(row);
+		}
+		SortCriteria bySpeed = new SortCriteria("pitch_speed", SortType.NUMBER, false);
+		plain.sort(bySpeed);
+		indexed.sort(bySpeed);
+		indexed.addIndex("team", IndexType.BITMAP);
+		indexed.addIndex("hand", IndexType.BITMAP);
+
+		for (int q = 0; q < 200; q++)
+		{
+			Pair<String,String>[] criteria = criteria(new Pair<String,String>("team", "T" + random.nextInt(4)), new Pair<String,String>("hand", random.nextBoolean() ? "L" : "R"));
+			int start = random.nextInt(50);
+			int num = random.nextInt(30);
+			assertSameLines(plain.findMatchingLines(criteria, start, num), indexed.findMatchingLines(criteria, start, num));
+			assertSameLines(plain.findMatchingLines(criteria(criteria[0]), start, num), indexed.findMatchingLines(criteria(criteria[0]), start, num));
+			assertSameLines(plain.findMatchingLines("hand", criteria[1].getB(), start, num), indexed.findMatchingLines("hand", criteria[1].getB(), start, num));
+			assertEquals(plain.findFirstMatch("team", criteria[0].getB()).getValues(), indexed.findFirstMatch("team", criteria[0].getB()).getValues());
+		}
+	}
+
+	private static void assertSameLines(List<Line> expected, List<Line> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i).getValues(), actual.get(i).getValues());
+		}
+	}
+
+	@SafeVarargs
+	private static Pair<String,String>[] criteria(Pair<String,String> ... criteria)
+	{
+		return criteria;
+	}
+}
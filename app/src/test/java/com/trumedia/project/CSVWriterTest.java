@@ -0,0 +1,145 @@
+package com.trumedia.project;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class CSVWriterTest
+{
+	private static final int SAMPLES = 200000;
+	// small enough that values straddle buffer flushes
+	private static final int BUFFER_SIZE = 1024;
+
+	@Test
+	public void doublesMatchStringValueOf()
+	{
+		Random random = new Random(20240611L);
+		double[] values = new double[SAMPLES];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = randomDouble(random, i);
+		}
+		assertWrittenAsStringValueOf(values);
+	}
+
+	@Test
+	public void floatsMatchStringValueOf()
+	{
+		Random random = new Random(20240612L);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CSVWriter writer = new CSVWriter(bytes, StandardCharsets.UTF_8, ',', '"', BUFFER_SIZE);
+		float[] values = new float[SAMPLES];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = randomFloat(random, i);
+			writer.write(values[i]);
+			writer.endLine();
+		}
+		writer.close();
+		String[] lines = lines(bytes, values.length);
+		for (int i = 0; i < values.length; i++)
+		{
+			assertEquals(String.valueOf(values[i]), lines[i], "bits " + Integer.toHexString(Float.floatToRawIntBits(values[i])));
+		}
+	}
+
+	@Test
+	public void edgeValuesMatchStringValueOf()
+	{
+		assertWrittenAsStringValueOf(new double[] { 0.0, -0.0, 0.001, -0.001, 0.000999, 95.0, -95.0, 0.25, 0.333, 0.1, 0.2, 0.1 + 0.2, 1.0 / 3,
+			9999999.0, 9999999.999999998, 1.0e7, -1.0e7, Double.MIN_VALUE, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN });
+	}
+
+	@Test
+	public void channelEncodesLikeStreamWriter()
+	{
+		// random text across one to four byte UTF-8 sequences, lone surrogates and characters that need quoting
+		Random random = new Random(20240613L);
+		char[] pool = { 'a', 'Z', '7', ',', '"', '\r', '\n', '\u00e9', '\u00f1', '\u4e2d', '\u20ac', '\ud83d', '\ude00', '\ud800' };
+		ByteArrayOutputStream streamBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+		CSVWriter stream = new CSVWriter(streamBytes, StandardCharsets.UTF_8, ',', '"', BUFFER_SIZE);
+		CSVWriter channel = new CSVWriter(Channels.newChannel(channelBytes), ',', '"', BUFFER_SIZE);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < SAMPLES / 10; i++)
+		{
+			sb.setLength(0);
+			int len = random.nextInt(40);
+			for (int j = 0; j < len; j++)
+			{
+				sb.append(pool[random.nextInt(pool.length)]);
+			}
+			stream.write(sb.toString());
+			channel.write(sb.toString());
+			if (random.nextInt(5) == 0)
+			{
+				stream.endLine();
+				channel.endLine();
+			}
+		}
+		stream.close();
+		channel.close();
+		assertArrayEquals(streamBytes.toByteArray(), channelBytes.toByteArray());
+	}
+
+	private static void assertWrittenAsStringValueOf(double[] values)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CSVWriter writer = new CSVWriter(bytes, StandardCharsets.UTF_8, ',', '"', BUFFER_SIZE);
+		for (double value : values)
+		{
+			writer.write(value);
+			writer.endLine();
+		}
+		writer.close();
+		String[] lines = lines(bytes, values.length);
+		for (int i = 0; i < values.length; i++)
+		{
+			assertEquals(String.valueOf(values[i]), lines[i], "bits " + Long.toHexString(Double.doubleToRawLongBits(values[i])));
+		}
+	}
+
+	private static String[] lines(ByteArrayOutputStream bytes, int count)
+	{
+		String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator());
+		assertEquals(count, lines.length);
+		return lines;
+	}
+
+	private static double randomDouble(Random random, int i)
+	{
+		// raw bit patterns, uniform magnitudes around the plain range, and the short decimals stats tables are full of
+		switch (i % 4)
+		{
+			case 0:
+				return Double.longBitsToDouble(random.nextLong());
+			case 1:
+				return (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(14) - 5);
+			case 2:
+				return Math.round(random.nextDouble() * 1.0e6) / 1000.0;
+			default:
+				return random.nextInt(1000000) / Math.pow(10, random.nextInt(8));
+		}
+	}
+
+	private static float randomFloat(Random random, int i)
+	{
+		switch (i % 4)
+		{
+			case 0:
+				return Float.intBitsToFloat(random.nextInt());
+			case 1:
+				return (float)((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(14) - 5));
+			case 2:
+				return Math.round(random.nextDouble() * 1.0e6) / 1000.0f;
+			default:
+				return (float)(random.nextInt(1000000) / Math.pow(10, random.nextInt(8)));
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package com.trumedia.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.trumedia.project.CSVData.ColumnType;
+import com.trumedia.project.CSVData.Line;
+
+public class OffHeapStorageTest
+{
+	private static final String[] HEADER = { "name", "team", "pitches", "total", "speed", "lefty" };
+	private static final ColumnType[] TYPES = { ColumnType.STRING, ColumnType.DICTIONARY, ColumnType.INT, ColumnType.LONG, ColumnType.DOUBLE, ColumnType.BOOLEAN };
+	private static final int OPERATIONS = 4000;
+	// values that demote a typed column only show up late, so the typed slots are exercised first
+	private static final int DEMOTE_AFTER = OPERATIONS * 3 / 4;
+
+	@Test
+	public void createdOffHeapMatchesRowStorage()
+	{
+		CSVData rows = new CSVData(HEADER);
+		CSVData columns = new CSVData(HEADER, TYPES);
+		CSVData offHeap = CSVData.createOffHeap(HEADER, TYPES);
+		assertTrue(offHeap.isOffHeap());
+		runOperations(new Random(20240630L), rows, columns, offHeap, 0);
+	}
+
+	@Test
+	public void movedOffHeapMatchesRowStorage()
+	{
+		// half the operations run on the heap columns, the rest after the move
+		CSVData rows = new CSVData(HEADER);
+		CSVData columns = new CSVData(HEADER, TYPES);
+		CSVData moved = new CSVData(HEADER, TYPES);
+		runOperations(new Random(20240631L), rows, columns, moved, OPERATIONS / 2);
+	}
+
+	private static void runOperations(Random random, CSVData rows, CSVData columns, CSVData offHeap, int moveAt)
+	{
+		CSVData[] all = { rows, columns, offHeap };
+		for (int op = 0; op < OPERATIONS; op++)
+		{
+			if (op == moveAt && !offHeap.isOffHeap())
+			{
+				offHeap.moveOffHeap();
+				assertTrue(offHeap.isOffHeap());
+				assertSameData(rows, columns, offHeap);
+			}
+			int kind = random.nextInt(20);
+			int lineCount = rows.getLineCount();
+			if (kind < 12 || lineCount == 0)
+			{
+				String[] row = randomRow(random, op);
+				for (CSVData csv : all)
+				{
+					csv.addLine(row);
+				}
+			}
+			else if (kind < 17)
+			{
+				int line = random.nextInt(lineCount);
+				int col = random.nextInt(HEADER.length);
+				String value = randomValue(random, col, op);
+				for (CSVData csv : all)
+				{
+					csv.getLines().get(line).setValue(col, value);
+				}
+			}
+			else if (kind < 19)
+			{
+				int line = random.nextInt(lineCount);
+				for (CSVData csv : all)
+				{
+					assertTrue(csv.removeLine(csv.getLines().get(line)));
+				}
+			}
+			else if (random.nextInt(10) == 0)
+			{
+				for (CSVData csv : all)
+				{
+					csv.compact();
+				}
+			}
+			if (op % 500 == 0)
+				assertSameData(rows, columns, offHeap);
+		}
+		assertSameData(rows, columns, offHeap);
+		for (CSVData csv : all)
+		{
+			csv.compact();
+		}
+		assertSameData(rows, columns, offHeap);
+		// the late values did demote the integer, long and boolean columns
+		assertEquals(ColumnType.STRING, offHeap.getColType(2));
+		assertEquals(ColumnType.STRING, offHeap.getColType(3));
+		assertEquals(ColumnType.STRING, offHeap.getColType(5));
+	}
+
+	private static String[] randomRow(Random random, int op)
+	{
+		String[] row = new String[HEADER.length];
+		for (int col = 0; col < row.length; col++)
+		{
+			row[col] = randomValue(random, col, op);
+		}
+		return row;
+	}
+
+	private static String randomValue(Random random, int col, int op)
+	{
+		// mostly values the typed column holds, now and then one that demotes it to text, and some empty ones
+		int r = random.nextInt(400);
+		if (r < 20)
+			return "";
+		boolean demote = (op >= DEMOTE_AFTER && r < 23);
+		if (demote && r == 20)
+			return "n/a";
+		switch (col)
+		{
+			case 0:
+				// text long enough to need more than a small string slot
+				return (r == 21) ? "x".repeat(5000 + random.nextInt(5000)) : "Player " + op + " " + random.nextInt(1000);
+			case 1:
+				return "T" + random.nextInt(12);
+			case 2:
+				return (demote && r == 22) ? Long.toString(1L << 40) : Integer.toString(random.nextInt(200) - 20);
+			case 3:
+				return (demote && r == 22) ? "1.5" : Long.toString(random.nextLong() >> random.nextInt(48));
+			case 4:
+				return random.nextBoolean() ? Integer.toString(70 + random.nextInt(30)) : Double.toString(70 + random.nextInt(300) / 10.0);
+			default:
+				return (demote && r == 22) ? "yes" : Boolean.toString(random.nextBoolean());
+		}
+	}
+
+	private static void assertSameData(CSVData rows, CSVData columns, CSVData offHeap)
+	{
+		// off heap columns demote exactly when the heap columns do
+		for (int col = 0; col < HEADER.length; col++)
+		{
+			assertEquals(columns.getColType(col), offHeap.getColType(col), HEADER[col]);
+		}
+		List<Line> expected = new ArrayList<Line>(rows.getLines());
+		List<Line> actual = new ArrayList<Line>(offHeap.getLines());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			Line e = expected.get(i);
+			Line a = actual.get(i);
+			assertEquals(e.getValues(), a.getValues());
+			for (int col = 0; col < HEADER.length; col++)
+			{
+				String message = HEADER[col] + " on line " + i;
+				assertEquals(e.isNull(col), a.isNull(col), message);
+				assertEquals(e.getIntColValue(col, -1), a.getIntColValue(col, -1), message);
+				assertEquals(e.getLongColValue(col, -1L), a.getLongColValue(col, -1L), message);
+				assertEquals(Float.valueOf(e.getFloatColValue(col, -1f)), Float.valueOf(a.getFloatColValue(col, -1f)), message);
+				assertEquals(Double.valueOf(e.getDoubleColValue(col, -1.0)), Double.valueOf(a.getDoubleColValue(col, -1.0)), message);
+				assertEquals(e.getBooleanColValue(HEADER[col], false), a.getBooleanColValue(HEADER[col], false), message);
+			}
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.trumedia.project;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+public class ParallelGzipTest
+{
+	private static final int BLOCK_SIZE = 4096;
+
+	@Test
+	public void emptyInputRoundTrips() throws IOException
+	{
+		byte[] compressed = compress(new byte[0]);
+		assertArrayEquals(new byte[0], decompress(compressed));
+		// still a valid gzip file for ordinary readers
+		assertArrayEquals(new byte[0], new GZIPInputStream(new ByteArrayInputStream(compressed)).readAllBytes());
+	}
+
+	@Test
+	public void blockSizedInputsRoundTrip() throws IOException
+	{
+		Random random = new Random(20240701L);
+		// exactly one block, one byte either side of it and a few blocks
+		for (int len : new int[] { BLOCK_SIZE, BLOCK_SIZE - 1, BLOCK_SIZE + 1, BLOCK_SIZE * 3 })
+		{
+			byte[] data = randomText(random, len);
+			byte[] compressed = compress(data);
+			assertArrayEquals(data, decompress(compressed), "length " + len);
+			assertArrayEquals(data, new GZIPInputStream(new ByteArrayInputStream(compressed)).readAllBytes(), "length " + len);
+		}
+	}
+
+	@Test
+	public void readsPlainGzipAndPlainText() throws IOException
+	{
+		byte[] data = randomText(new Random(20240702L), BLOCK_SIZE * 5 + 17);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(bytes))
+		{
+			out.write(data);
+		}
+		assertArrayEquals(data, decompress(bytes.toByteArray()));
+		assertArrayEquals(data, decompress(data));
+	}
+
+	@Test
+	public void corruptMembersAreRejected() throws IOException
+	{
+		byte[] data = randomText(new Random(20240703L), BLOCK_SIZE * 2);
+		byte[] compressed = compress(data);
+		// the first member ends with its CRC and size
+		int trailer = readInt(compressed, 16) - ParallelGzipOutputStream.TRAILER_SIZE;
+
+		byte[] badCrc = compressed.clone();
+		badCrc[trailer] ^= 0x01;
+		assertThrows(IOException.class, () -> decompress(badCrc));
+
+		byte[] badSize = compressed.clone();
+		badSize[trailer + 4] ^= 0x01;
+		assertThrows(IOException.class, () -> decompress(badSize));
+
+		// a size no writer produces fails before anything is allocated for it
+		byte[] hugeSize = compressed.clone();
+		hugeSize[trailer + 7] = 0x7f;
+		assertThrows(IOException.class, () -> decompress(hugeSize));
+	}
+
+	private static byte[] compress(byte[] data) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new ParallelGzipOutputStream(bytes, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, 4))
+		{
+			out.write(data);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] decompress(byte[] data) throws IOException
+	{
+		try (InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(data), 4))
+		{
+			return in.readAllBytes();
+		}
+	}
+
+	private static byte[] randomText(Random random, int len)
+	{
+		// csv-like text so the blocks actually compress
+		byte[] data = new byte[len];
+		for (int i = 0; i < len; i++)
+		{
+			int r = random.nextInt(16);
+			data[i] = (byte)((r == 0) ? '\n' : (r == 1) ? ',' : '0' + r % 10);
+		}
+		return data;
+	}
+
+	private static int readInt(byte[] buf, int pos)
+	{
+		return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8) | ((buf[pos + 2] & 0xFF) << 16) | ((buf[pos + 3] & 0xFF) << 24);
+	}
+}
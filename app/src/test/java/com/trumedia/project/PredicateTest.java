@@ -0,0 +1,215 @@
+package com.trumedia.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.trumedia.project.CSVData.ColumnType;
+import com.trumedia.project.CSVData.IndexType;
+import com.trumedia.project.CSVData.Line;
+import com.trumedia.project.CSVData.SortCriteria;
+import com.trumedia.project.CSVData.SortType;
+
+public class PredicateTest
+{
+	private static final String[] HEADER = { "team", "pitcher", "speed", "inning" };
+	private static final ColumnType[] TYPES = { ColumnType.DICTIONARY, ColumnType.STRING, ColumnType.DOUBLE, ColumnType.INT };
+	private static final int ROWS = 20000;
+
+	// the reference each query is checked against, evaluated line by line
+	private interface Scan
+	{
+		boolean matches(Line line);
+	}
+
+	private static class Query
+	{
+		private final Predicate m_predicate;
+		private final Scan m_scan;
+
+		public Query(Predicate predicate, Scan scan)
+		{
+			m_predicate = predicate;
+			m_scan = scan;
+		}
+	}
+
+	@Test
+	public void rowStorageMatchesFullScan()
+	{
+		assertPlansMatchScan(null);
+	}
+
+	@Test
+	public void columnarStorageMatchesFullScan()
+	{
+		assertPlansMatchScan(TYPES);
+	}
+
+	private static void assertPlansMatchScan(ColumnType[] types)
+	{
+		// the same rows with no indexes, with bitmap and numeric indexes, and with hash indexes
+		Random random = new Random(20240625L);
+		CSVData plain = new CSVData(HEADER, types);
+		CSVData bitmaps = new CSVData(HEADER, types);
+		CSVData hashes = new CSVData(HEADER, types);
+		CSVData[] all = { plain, bitmaps, hashes };
+		List<List<Line>> added = new ArrayList<List<Line>>();
+		for (CSVData csv : all)
+		{
+			added.add(new ArrayList<Line>(ROWS));
+		}
+		for (int i = 0; i < ROWS; i++)
+		{
+			String[] row = randomRow(random);
+			for (int c = 0; c < all.length; c++)
+			{
+				added.get(c).add(all[c].addLine(row));
+			}
+		}
+		bitmaps.addIndex("team", IndexType.BITMAP);
+		bitmaps.addIndex("pitcher", IndexType.BITMAP);
+		bitmaps.addIndex("speed", IndexType.NUMERIC);
+		bitmaps.addIndex("inning", IndexType.NUMERIC);
+		hashes.addIndex("team", IndexType.HASH);
+		hashes.addIndex("pitcher", IndexType.HASH);
+		hashes.addIndex("inning", IndexType.HASH);
+		// tombstoned rows and a sorted line order, which the index paths have to respect
+		for (int c = 0; c < all.length; c++)
+		{
+			for (int i = 0; i < ROWS; i += 11)
+			{
+				all[c].removeLine(added.get(c).get(i));
+			}
+			all[c].sort(new SortCriteria("speed", SortType.NUMBER, true));
+		}
+
+		for (int q = 0; q < 150; q++)
+		{
+			Query query = randomQuery(random, 2);
+			List<Line> expected = scan(plain, query.m_scan);
+			int start = random.nextInt(expected.size() + 1);
+			int num = 1 + random.nextInt(40);
+			List<Line> expectedPage = expected.subList(start, Math.min(expected.size(), start + num));
+			for (CSVData csv : all)
+			{
+				String message = query.m_predicate + " on " + csv.getLineCount() + " lines";
+				assertSameLines(expected, csv.findMatchingLines(query.m_predicate), message);
+				assertEquals(expected.size(), csv.countMatchingLines(query.m_predicate), message);
+				assertSameLines(expectedPage, csv.findMatchingLines(query.m_predicate, start, num), message);
+			}
+		}
+	}
+
+	private static String[] randomRow(Random random)
+	{
+		// a few values differ only by case or padding, and a few do not parse as numbers
+		String team = random.nextInt(50) == 0 ? "nyy" : "T" + random.nextInt(8);
+		String pitcher = "P" + random.nextInt(300);
+		String speed = (random.nextInt(20) == 0) ? "" : (random.nextInt(200) == 0) ? "n/a" : Double.toString(75 + random.nextInt(250) / 10.0);
+		String inning = (random.nextInt(30) == 0) ? "" : (random.nextInt(40) == 0) ? " " + (1 + random.nextInt(9)) : Integer.toString(1 + random.nextInt(9));
+		return new String[] { team, pitcher, speed, inning };
+	}
+
+	private static Query randomQuery(Random random, int depth)
+	{
+		int kind = random.nextInt(depth > 0 ? 7 : 3);
+		switch (kind)
+		{
+			case 0:
+			{
+				String team = random.nextBoolean() ? "NYY" : "t" + random.nextInt(9);
+				return new Query(Predicate.eq("team", team), line -> line.getColValue("team").trim().equalsIgnoreCase(team));
+			}
+			case 1:
+			{
+				String[] pitchers = { "P" + random.nextInt(300), "P" + random.nextInt(300), "nobody" };
+				return new Query(Predicate.in("pitcher", pitchers), line ->
+				{
+					String value = line.getColValue("pitcher").trim();
+					for (String pitcher : pitchers)
+					{
+						if (value.equalsIgnoreCase(pitcher))
+							return true;
+					}
+					return false;
+				});
+			}
+			case 2:
+			{
+				String col = random.nextBoolean() ? "speed" : "inning";
+				double min = random.nextBoolean() ? 75 + random.nextInt(25) : 1 + random.nextInt(9);
+				double max = min + random.nextInt(10);
+				switch (random.nextInt(3))
+				{
+					case 0:
+						return new Query(Predicate.lt(col, max), line -> number(line, col) < max);
+					case 1:
+						return new Query(Predicate.ge(col, min), line -> number(line, col) >= min);
+					default:
+						return new Query(Predicate.between(col, min, max), line -> number(line, col) >= min && number(line, col) <= max);
+				}
+			}
+			case 3:
+			{
+				Query a = randomQuery(random, depth - 1);
+				Query b = randomQuery(random, depth - 1);
+				return new Query(Predicate.and(a.m_predicate, b.m_predicate), line -> a.m_scan.matches(line) && b.m_scan.matches(line));
+			}
+			case 4:
+			{
+				Query a = randomQuery(random, depth - 1);
+				Query b = randomQuery(random, depth - 1);
+				return new Query(Predicate.or(a.m_predicate, b.m_predicate), line -> a.m_scan.matches(line) || b.m_scan.matches(line));
+			}
+			case 5:
+			{
+				Query a = randomQuery(random, depth - 1);
+				return new Query(Predicate.not(a.m_predicate), line -> !a.m_scan.matches(line));
+			}
+			default:
+			{
+				Query a = randomQuery(random, depth - 1);
+				return new Query(Predicate.and(a.m_predicate, Predicate.notNull("speed")), line -> a.m_scan.matches(line) && !line.getColValue("speed").trim().isEmpty());
+			}
+		}
+	}
+
+	private static double number(Line line, String col)
+	{
+		// empty or non-numeric values compare false both ways
+		String value = line.getColValue(col).trim();
+		try
+		{
+			return value.isEmpty() ? Double.NaN : Double.parseDouble(value);
+		}
+		catch (NumberFormatException e)
+		{
+			return Double.NaN;
+		}
+	}
+
+	private static List<Line> scan(CSVData csv, Scan scan)
+	{
+		List<Line> lines = new ArrayList<Line>();
+		for (Line line : csv.getLines())
+		{
+			if (scan.matches(line))
+				lines.add(line);
+		}
+		return lines;
+	}
+
+	private static void assertSameLines(List<Line> expected, List<Line> actual, String message)
+	{
+		assertEquals(expected.size(), actual.size(), message);
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i).getValues(), actual.get(i).getValues(), message);
+		}
+	}
+}
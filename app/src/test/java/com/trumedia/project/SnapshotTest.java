@@ -0,0 +1,215 @@
+package com.trumedia.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.trumedia.project.CSVData.ColumnType;
+import com.trumedia.project.CSVData.IndexType;
+import com.trumedia.project.CSVData.Line;
+import com.trumedia.project.CSVData.SortCriteria;
+import com.trumedia.project.CSVData.SortType;
+
+public class SnapshotTest
+{
+	// one column per ColumnType
+	private static final String[] HEADER = { "id", "team", "pitches", "total", "speed", "lefty" };
+	private static final ColumnType[] TYPES = { ColumnType.STRING, ColumnType.DICTIONARY, ColumnType.INT, ColumnType.LONG, ColumnType.DOUBLE, ColumnType.BOOLEAN };
+	private static final int ROWS = 5000;
+
+	private Path m_dir;
+
+	@BeforeEach
+	public void createDir() throws IOException
+	{
+		m_dir = Files.createTempDirectory("snapshot-test");
+	}
+
+	@AfterEach
+	public void deleteDir() throws IOException
+	{
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(m_dir))
+		{
+			files = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+		for (Path file : files)
+		{
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void roundTripKeepsValuesOrderAndIndexes() throws IOException
+	{
+		Random random = new Random(20240620L);
+		CSVData csv = createData(random);
+		Path path = m_dir.resolve("data.snap");
+		csv.saveSnapshot(path);
+
+		// the indexes come back with the types they were saved with
+		Snapshot snapshot = Snapshot.read(path);
+		Index[] indexes = snapshot.getIndexes();
+		assertEquals(IndexType.HASH, indexes[0].getType());
+		assertEquals(IndexType.BITMAP, indexes[1].getType());
+		assertEquals(IndexType.NUMERIC, indexes[2].getType());
+		assertEquals(IndexType.SORTED, indexes[5].getType());
+		assertEquals(null, indexes[3]);
+		assertEquals(null, indexes[4]);
+		assertEquals(1, snapshot.getCompositeIndexes().size());
+
+		CSVData loaded = CSVData.loadSnapshot(path);
+		assertEquals(csv.getLineCount(), loaded.getLineCount());
+		for (int col = 0; col < HEADER.length; col++)
+		{
+			assertEquals(TYPES[col], loaded.getColType(col), HEADER[col]);
+		}
+		assertSameData(csv, loaded);
+		assertSameQueries(random, csv, loaded);
+
+		// without indexes the loaded copy still answers the same, by scanning
+		Path bare = m_dir.resolve("bare.snap");
+		csv.saveSnapshot(bare, false);
+		CSVData loadedBare = CSVData.loadSnapshot(bare);
+		assertEquals(null, Snapshot.read(bare).getIndexes()[1]);
+		assertSameData(csv, loadedBare);
+		assertSameQueries(random, csv, loadedBare);
+	}
+
+	@Test
+	public void appendAndResaveOverSamePath() throws IOException
+	{
+		Random random = new Random(20240621L);
+		CSVData csv = createData(random);
+		Path path = m_dir.resolve("data.snap");
+		csv.saveSnapshot(path);
+
+		// the loaded copy still maps the file it is saved over
+		CSVData loaded = CSVData.loadSnapshot(path);
+		for (int i = 0; i < 500; i++)
+		{
+			String[] row = randomRow(random, ROWS + i);
+			csv.addLine(row);
+			loaded.addLine(row);
+		}
+		// a value that no longer fits the typed column
+		csv.addLine(new String[] { "x", "T1", "many", "1", "1.5", "true" });
+		loaded.addLine(new String[] { "x", "T1", "many", "1", "1.5", "true" });
+		loaded.saveSnapshot(path);
+		assertSameData(csv, loaded);
+
+		CSVData reloaded = CSVData.loadSnapshot(path);
+		assertEquals(ColumnType.STRING, reloaded.getColType(2));
+		assertSameData(csv, reloaded);
+		assertSameQueries(random, csv, reloaded);
+		assertEquals(csv.getLineCount(), reloaded.getLineCount());
+		assertTrue(Files.notExists(m_dir.resolve("data.snap.tmp")));
+	}
+
+	private static CSVData createData(Random random)
+	{
+		CSVData csv = new CSVData(HEADER, TYPES);
+		List<Line> lines = new ArrayList<Line>(ROWS);
+		for (int i = 0; i < ROWS; i++)
+		{
+			lines.add(csv.addLine(randomRow(random, i)));
+		}
+		csv.sort(new SortCriteria("speed", SortType.NUMBER, false));
+		csv.addIndex("id", IndexType.HASH);
+		csv.addIndex("team", IndexType.BITMAP);
+		csv.addIndex("pitches", IndexType.NUMERIC);
+		csv.addIndex("lefty", IndexType.SORTED);
+		csv.addCompositeIndex("team", "lefty");
+		// tombstoned rows are left out of the snapshot and out of its indexes
+		for (int i = 0; i < ROWS; i += 7)
+		{
+			assertTrue(csv.removeLine(lines.get(i)));
+		}
+		return csv;
+	}
+
+	private static String[] randomRow(Random random, int i)
+	{
+		// every typed column gets some empty values, and speed mixes whole and fractional text
+		String pitches = (random.nextInt(10) == 0) ? "" : Integer.toString(random.nextInt(120) - 10);
+		String total = (random.nextInt(10) == 0) ? "" : Long.toString(random.nextLong() >> random.nextInt(40));
+		String speed = (random.nextInt(10) == 0) ? "" : random.nextBoolean() ? Integer.toString(70 + random.nextInt(30)) : Double.toString(70 + random.nextInt(300) / 10.0);
+		String lefty = (random.nextInt(10) == 0) ? "" : Boolean.toString(random.nextBoolean());
+		return new String[] { "P" + i, "T" + random.nextInt(6), pitches, total, speed, lefty };
+	}
+
+	private static void assertSameData(CSVData expected, CSVData actual)
+	{
+		List<Line> expectedLines = new ArrayList<Line>(expected.getLines());
+		List<Line> actualLines = new ArrayList<Line>(actual.getLines());
+		assertEquals(expectedLines.size(), actualLines.size());
+		for (int i = 0; i < expectedLines.size(); i++)
+		{
+			Line e = expectedLines.get(i);
+			Line a = actualLines.get(i);
+			assertEquals(e.getValues(), a.getValues());
+			for (String col : HEADER)
+			{
+				assertEquals(e.isNull(col), a.isNull(col), col);
+			}
+			assertEquals(e.getIntColValue("pitches", -1), a.getIntColValue("pitches", -1));
+			assertEquals(e.getLongColValue("total", -1L), a.getLongColValue("total", -1L));
+			assertEquals(Double.valueOf(e.getDoubleColValue("speed", -1.0)), Double.valueOf(a.getDoubleColValue("speed", -1.0)));
+			assertEquals(e.getBooleanColValue("lefty", false), a.getBooleanColValue("lefty", false));
+		}
+	}
+
+	private static void assertSameQueries(Random random, CSVData expected, CSVData actual)
+	{
+		for (int q = 0; q < 100; q++)
+		{
+			String team = "T" + random.nextInt(7);
+			String lefty = random.nextBoolean() ? "true" : "FALSE";
+			String id = "P" + random.nextInt(ROWS);
+			String pitches = Integer.toString(random.nextInt(120) - 10);
+			assertSameLines(expected.findMatchingLines("team", team), actual.findMatchingLines("team", team));
+			assertSameLines(expected.findMatchingLines("id", id), actual.findMatchingLines("id", id));
+			assertSameLines(expected.findMatchingLines("pitches", pitches), actual.findMatchingLines("pitches", pitches));
+
+			Pair<String,String>[] criteria = criteria(new Pair<String,String>("team", team), new Pair<String,String>("lefty", lefty));
+			assertSameLines(expected.findMatchingLines(criteria), actual.findMatchingLines(criteria));
+			int count = expected.countMatchingLines(criteria);
+			assertEquals(count, actual.countMatchingLines(criteria));
+			int start = random.nextInt(count + 1);
+			int num = random.nextInt(20);
+			assertSameLines(expected.findMatchingLines(criteria, start, num), actual.findMatchingLines(criteria, start, num));
+
+			Predicate predicate = Predicate.and(Predicate.eq("team", team), Predicate.ge("pitches", random.nextInt(100)));
+			assertSameLines(expected.findMatchingLines(predicate), actual.findMatchingLines(predicate));
+			assertEquals(expected.countMatchingLines(predicate), actual.countMatchingLines(predicate));
+		}
+	}
+
+	private static void assertSameLines(List<Line> expected, List<Line> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i).getValues(), actual.get(i).getValues());
+		}
+	}
+
+	@SafeVarargs
+	private static Pair<String,String>[] criteria(Pair<String,String> ... criteria)
+	{
+		return criteria;
+	}
+}
@@ -0,0 +1,297 @@
+package com.trumedia.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class StatsApiFetcherTest
+{
+	private static final long RESPONSE_DELAY_MILLIS = 50;
+	private static final String LIVE_BODY = "{\"gameData\":{\"status\":{\"abstractGameState\":\"Live\"}}}";
+
+	private HttpServer m_server;
+	private ExecutorService m_serverThreads;
+	private final AtomicInteger m_inFlight = new AtomicInteger();
+	private final AtomicInteger m_maxInFlight = new AtomicInteger();
+	private final AtomicInteger m_requests = new AtomicInteger();
+	private final CountDownLatch m_firstChunkRead = new CountDownLatch(1);
+	private volatile boolean m_streamed;
+	private Path m_cacheDir;
+
+	@BeforeEach
+	public void startServer() throws IOException
+	{
+		// answers every game feed with its gamePk after a short delay, counting how many requests overlap
+		m_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		m_server.createContext("/api/v1.1/game/", exchange ->
+		{
+			int inFlight = m_inFlight.incrementAndGet();
+			m_maxInFlight.accumulateAndGet(inFlight, Math::max);
+			m_requests.incrementAndGet();
+			try
+			{
+				Thread.sleep(RESPONSE_DELAY_MILLIS);
+				String[] parts = exchange.getRequestURI().getPath().split("/");
+				byte[] body = parts[4].getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody())
+				{
+					out.write(body);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				m_inFlight.decrementAndGet();
+				exchange.close();
+			}
+		});
+		// sends half a final game feed, and the rest only once the client has read the first half
+		m_server.createContext("/stream/", exchange ->
+		{
+			m_requests.incrementAndGet();
+			try
+			{
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream out = exchange.getResponseBody())
+				{
+					out.write(streamedBody(0));
+					out.flush();
+					m_streamed = m_firstChunkRead.await(5, TimeUnit.SECONDS);
+					out.write(streamedBody(1));
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				exchange.close();
+			}
+		});
+		// a live game that has not changed since the client's copy
+		m_server.createContext("/etag/", exchange ->
+		{
+			m_requests.incrementAndGet();
+			exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+			{
+				exchange.sendResponseHeaders(304, -1);
+			}
+			else
+			{
+				byte[] body = LIVE_BODY.getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody())
+				{
+					out.write(body);
+				}
+			}
+			exchange.close();
+		});
+		m_serverThreads = Executors.newCachedThreadPool();
+		m_server.setExecutor(m_serverThreads);
+		m_server.start();
+	}
+
+	@AfterEach
+	public void stopServer() throws IOException
+	{
+		m_server.stop(0);
+		m_serverThreads.shutdownNow();
+		if (m_cacheDir != null)
+		{
+			List<Path> files;
+			try (Stream<Path> walk = Files.walk(m_cacheDir))
+			{
+				files = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+			}
+			for (Path file : files)
+			{
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void fetchGameFeedsNeverExceedsMaxConcurrency() throws Exception
+	{
+		List<Integer> gamePks = gamePks(40);
+		try (StatsApiFetcher fetcher = new StatsApiFetcher(baseUri(), 4, 1000))
+		{
+			Map<Integer, String> feeds = fetcher.fetchGameFeeds(gamePks, HttpResponse.BodyHandlers.ofString());
+			assertEquals(gamePks, new ArrayList<Integer>(feeds.keySet()));
+			for (Map.Entry<Integer, String> feed : feeds.entrySet())
+			{
+				assertEquals(feed.getKey().toString(), feed.getValue());
+			}
+			// without virtual threads the fallback pool must not grow a thread per game
+			assertTrue(fetchThreads() <= 4, "fetch threads: " + fetchThreads());
+		}
+		assertEquals(gamePks.size(), m_requests.get());
+		assertTrue(m_maxInFlight.get() <= 4, "requests in flight: " + m_maxInFlight.get());
+		// with 40 slow responses the limit should actually be reached
+		assertEquals(4, m_maxInFlight.get());
+	}
+
+	@Test
+	public void fetchGameFeedsHonorsRateLimit() throws Exception
+	{
+		// the bucket starts with one token per permit, every request after that waits 1/rate seconds
+		int games = 12;
+		int maxConcurrency = 2;
+		double requestsPerSecond = 20;
+		try (StatsApiFetcher fetcher = new StatsApiFetcher(baseUri(), maxConcurrency, requestsPerSecond))
+		{
+			long start = System.nanoTime();
+			Map<Integer, String> feeds = fetcher.fetchGameFeeds(gamePks(games), HttpResponse.BodyHandlers.ofString());
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertEquals(games, feeds.size());
+			long minimumMillis = (long)((games - maxConcurrency) * 1000 / requestsPerSecond);
+			assertTrue(elapsedMillis >= minimumMillis * 9 / 10, "finished in " + elapsedMillis + " ms, expected at least " + minimumMillis);
+		}
+		assertTrue(m_maxInFlight.get() <= maxConcurrency, "requests in flight: " + m_maxInFlight.get());
+	}
+
+	@Test
+	public void cachedGetStreamsBodyAndCommitsAtEnd() throws Exception
+	{
+		m_cacheDir = Files.createTempDirectory("statsapi-cache");
+		HttpCache cache = new HttpCache(m_cacheDir);
+		byte[] expected = concat(streamedBody(0), streamedBody(1));
+		try (StatsApiFetcher fetcher = new StatsApiFetcher(baseUri(), 4, 1000))
+		{
+			fetcher.setCache(cache);
+			try (InputStream body = fetcher.get("stream/feed", HttpResponse.BodyHandlers.ofInputStream()))
+			{
+				byte[] first = body.readNBytes(streamedBody(0).length);
+				assertEquals(0, cache.size());
+				m_firstChunkRead.countDown();
+				byte[] rest = body.readAllBytes();
+				assertTrue(m_streamed, "the body was buffered before the caller could read it");
+				assertEquals(new String(expected, StandardCharsets.UTF_8), new String(concat(first, rest), StandardCharsets.UTF_8));
+			}
+			assertEquals(1, cache.size());
+			assertTrue(cache.lookup(baseUri().resolve("stream/feed")).isPinned());
+
+			// a final game is served from disk without another request
+			String cached = fetcher.get("stream/feed", HttpResponse.BodyHandlers.ofString());
+			assertEquals(new String(expected, StandardCharsets.UTF_8), cached);
+			assertEquals(1, m_requests.get());
+		}
+	}
+
+	@Test
+	public void cachedGetDropsBodyClosedEarly() throws Exception
+	{
+		m_cacheDir = Files.createTempDirectory("statsapi-cache");
+		HttpCache cache = new HttpCache(m_cacheDir);
+		try (StatsApiFetcher fetcher = new StatsApiFetcher(baseUri(), 4, 1000))
+		{
+			fetcher.setCache(cache);
+			try (InputStream body = fetcher.get("stream/feed", HttpResponse.BodyHandlers.ofInputStream()))
+			{
+				body.readNBytes(16);
+			}
+			m_firstChunkRead.countDown();
+		}
+		assertEquals(0, cache.size());
+		try (Stream<Path> files = Files.list(m_cacheDir))
+		{
+			assertEquals(0, files.count());
+		}
+	}
+
+	@Test
+	public void staleEntryIsReplayedAfterNotModified() throws Exception
+	{
+		m_cacheDir = Files.createTempDirectory("statsapi-cache");
+		HttpCache cache = new HttpCache(m_cacheDir);
+		cache.setLiveTTL(Duration.ZERO);
+		try (StatsApiFetcher fetcher = new StatsApiFetcher(baseUri(), 4, 1000))
+		{
+			fetcher.setCache(cache);
+			assertEquals(LIVE_BODY, fetcher.get("etag/feed", HttpResponse.BodyHandlers.ofString()));
+			assertFalse(cache.lookup(baseUri().resolve("etag/feed")).isPinned());
+			assertEquals(LIVE_BODY, fetcher.get("etag/feed", HttpResponse.BodyHandlers.ofString()));
+		}
+		assertEquals(2, m_requests.get());
+		assertEquals(1, cache.size());
+	}
+
+	private static byte[] streamedBody(int part)
+	{
+		// big enough that the first half cannot sit in one socket buffer with the second
+		StringBuilder sb = new StringBuilder();
+		if (part == 0)
+			sb.append("{\"gameData\":{\"status\":{\"abstractGameState\":\"Final\"}},\"pad\":\"");
+		for (int i = 0; i < 64 * 1024; i++)
+		{
+			sb.append((char)('a' + (i + part) % 26));
+		}
+		if (part == 1)
+			sb.append("\"}");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] concat(byte[] a, byte[] b)
+	{
+		byte[] joined = new byte[a.length + b.length];
+		System.arraycopy(a, 0, joined, 0, a.length);
+		System.arraycopy(b, 0, joined, a.length, b.length);
+		return joined;
+	}
+
+	private URI baseUri()
+	{
+		return URI.create("http://127.0.0.1:" + m_server.getAddress().getPort() + "/");
+	}
+
+	private static long fetchThreads()
+	{
+		return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals("statsapi-fetch")).count();
+	}
+
+	private static List<Integer> gamePks(int count)
+	{
+		List<Integer> gamePks = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; i++)
+		{
+			gamePks.add(700000 + i);
+		}
+		return gamePks;
+	}
+}